@@ -0,0 +1,38 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import griffon.annotations.core.Nonnull;
+import griffon.util.AbstractMapResourceBundle;
+
+import java.util.Map;
+
+import static griffon.util.CollectionUtils.map;
+
+/**
+ * Persistence unit settings used by the benchmarks.
+ *
+ * @author Andres Almiray
+ */
+public class Jpa extends AbstractMapResourceBundle {
+    @Override
+    protected void initialize(@Nonnull Map<String, Object> entries) {
+        map(entries)
+            .e("persistenceUnits", map()
+                .e("perCall", map()
+                    .e("entityManagerScope", "perCall")));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.benchmarks;
+
+import griffon.core.GriffonApplication;
+import griffon.plugins.jpa.EntityManagerHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of many threads hitting the same persistence unit through {@code EntityManagerHandler}.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class EntityManagerHandlerContentionBenchmark {
+    private GriffonApplication application;
+    private EntityManagerHandler entityManagerHandler;
+    private Long id;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        application = BenchmarkApplication.start();
+        entityManagerHandler = BenchmarkApplication.getInstance(application, EntityManagerHandler.class);
+        id = entityManagerHandler.withTransaction("perCall", (persistenceUnitName, entityManager) -> {
+            BenchmarkEntity entity = new BenchmarkEntity("contention", 1L);
+            entityManager.persist(entity);
+            entityManager.flush();
+            return entity.getId();
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkApplication.stop(application);
+    }
+
+    @Benchmark
+    public BenchmarkEntity findPerCall() {
+        return entityManagerHandler.withEntityManager("perCall", (persistenceUnitName, entityManager) -> entityManager.find(BenchmarkEntity.class, id));
+    }
+
+    @Benchmark
+    public BenchmarkEntity findInReadOnlyTransactionPerCall() {
+        return entityManagerHandler.withTransaction("perCall", true, (persistenceUnitName, entityManager) -> entityManager.find(BenchmarkEntity.class, id));
+    }
+
+    @Benchmark
+    public Long countInTransactionPerCall() {
+        return entityManagerHandler.withTransaction("perCall", (persistenceUnitName, entityManager) ->
+            entityManager.createQuery("select count(e) from BenchmarkEntity e", Long.class).getSingleResult());
+    }
+}
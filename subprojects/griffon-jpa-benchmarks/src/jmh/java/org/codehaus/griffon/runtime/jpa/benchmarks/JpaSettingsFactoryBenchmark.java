@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.benchmarks;
+
+import griffon.core.GriffonApplication;
+import griffon.plugins.jpa.JpaSettings;
+import griffon.plugins.jpa.JpaSettingsFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cold creation of a persistence unit by {@code JpaSettingsFactory}, including
+ * the provider bootstrap, {@code JpaBootstrap} instances and connection events.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+public class JpaSettingsFactoryBenchmark {
+    private GriffonApplication application;
+    private JpaSettingsFactory jpaSettingsFactory;
+    private JpaSettings jpaSettings;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        application = BenchmarkApplication.start();
+        jpaSettingsFactory = BenchmarkApplication.getInstance(application, JpaSettingsFactory.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void destroy() {
+        if (jpaSettings != null) {
+            jpaSettingsFactory.destroy("perCall", jpaSettings);
+            jpaSettings = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkApplication.stop(application);
+    }
+
+    @Benchmark
+    public JpaSettings create() {
+        jpaSettings = jpaSettingsFactory.create("perCall");
+        return jpaSettings;
+    }
+}
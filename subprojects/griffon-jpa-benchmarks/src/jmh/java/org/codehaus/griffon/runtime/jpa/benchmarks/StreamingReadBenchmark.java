@@ -0,0 +1,94 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.benchmarks;
+
+import griffon.core.GriffonApplication;
+import griffon.plugins.jpa.EntityManagerHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading a large result set, either materialized as a list or consumed as a stream.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamingReadBenchmark {
+    private static final String QUERY = "select e from BenchmarkEntity e";
+
+    @Param({"10000"})
+    private int rows;
+
+    private GriffonApplication application;
+    private EntityManagerHandler entityManagerHandler;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        application = BenchmarkApplication.start();
+        entityManagerHandler = BenchmarkApplication.getInstance(application, EntityManagerHandler.class);
+        entityManagerHandler.withTransaction("perCall", (persistenceUnitName, entityManager) -> {
+            entityManager.createQuery("delete from BenchmarkEntity e").executeUpdate();
+            for (int i = 0; i < rows; i++) {
+                entityManager.persist(new BenchmarkEntity("row-" + i, i));
+                if ((i + 1) % 100 == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            return null;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkApplication.stop(application);
+    }
+
+    @Benchmark
+    public void resultList(Blackhole blackhole) {
+        entityManagerHandler.withTransaction("perCall", true, (persistenceUnitName, entityManager) -> {
+            for (BenchmarkEntity entity : entityManager.createQuery(QUERY, BenchmarkEntity.class).getResultList()) {
+                blackhole.consume(entity.getAmount());
+            }
+            return null;
+        });
+    }
+
+    @Benchmark
+    public void resultStream(Blackhole blackhole) {
+        entityManagerHandler.withTransaction("perCall", true, (persistenceUnitName, entityManager) -> {
+            entityManager.createQuery(QUERY, BenchmarkEntity.class)
+                .getResultStream()
+                .forEach(entity -> blackhole.consume(entity.getAmount()));
+            return null;
+        });
+    }
+}
@@ -20,6 +20,11 @@ package griffon.plugins.jpa;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
 /**
  * @author Andres Almiray
  */
@@ -31,6 +36,62 @@ public interface EntityManagerHandler {
     @Nullable
     <R> R withEntityManager(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback);
 
+    @Nullable
+    <R> R withTransaction(@Nonnull EntityManagerCallback<R> callback);
+
+    @Nullable
+    <R> R withTransaction(boolean readOnly, @Nonnull EntityManagerCallback<R> callback);
+
+    @Nullable
+    <R> R withTransaction(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback);
+
+    @Nullable
+    <R> R withTransaction(@Nonnull String persistenceUnitName, boolean readOnly, @Nonnull EntityManagerCallback<R> callback);
+
+    @Nonnull
+    EntityManagerTransaction beginTransaction(boolean readOnly);
+
+    @Nonnull
+    EntityManagerTransaction beginTransaction(@Nonnull String persistenceUnitName, boolean readOnly);
+
+    @Nonnull
+    <R> CompletableFuture<R> withEntityManagerAsync(@Nonnull EntityManagerCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withEntityManagerAsync(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withTransactionAsync(@Nonnull EntityManagerCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withTransactionAsync(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback);
+
+    @Nonnull
+    <T> Stream<T> streamResults(@Nonnull QueryCallback<T> callback);
+
+    @Nonnull
+    <T> Stream<T> streamResults(@Nonnull String persistenceUnitName, @Nonnull QueryCallback<T> callback);
+
+    @Nonnull
+    <T> List<T> getCachedResultList(@Nonnull String query, @Nonnull Class<T> resultType, @Nonnull Map<String, ?> parameters);
+
+    @Nonnull
+    <T> List<T> getCachedResultList(@Nonnull String persistenceUnitName, @Nonnull String query, @Nonnull Class<T> resultType, @Nonnull Map<String, ?> parameters);
+
+    @Nonnull
+    <T> CompletableFuture<T> findAsync(@Nonnull Class<T> type, @Nonnull Object id);
+
+    @Nonnull
+    <T> CompletableFuture<T> findAsync(@Nonnull String persistenceUnitName, @Nonnull Class<T> type, @Nonnull Object id);
+
+    long persistAll(@Nonnull Iterable<?> entities);
+
+    long persistAll(@Nonnull String persistenceUnitName, @Nonnull Iterable<?> entities);
+
+    long persistAll(@Nonnull String persistenceUnitName, @Nonnull Iterable<?> entities, int batchSize, boolean commitEachBatch);
+
+    long persistAll(@Nonnull String persistenceUnitName, @Nonnull Stream<?> entities, int batchSize, boolean commitEachBatch);
+
     void closeEntityManager();
 
     void closeEntityManager(@Nonnull String persistenceUnitName);
@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Defines how {@code EntityManager} instances are handed out to callbacks for a given persistence unit.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public enum EntityManagerScope {
+    /**
+     * A single {@code EntityManager} is shared by all callers. This is the default.
+     */
+    SHARED("shared"),
+    /**
+     * A fresh {@code EntityManager} is opened for every outermost callback and closed once it completes.
+     */
+    PER_CALL("perCall"),
+    /**
+     * Every thread gets its own {@code EntityManager}, reused across callbacks on that thread.
+     */
+    PER_THREAD("perThread"),
+    /**
+     * {@code EntityManager}s are leased from a bounded pool for the duration of the outermost callback
+     * and cleared when returned. Callers wait for a free instance once the pool is exhausted.
+     */
+    POOLED("pooled");
+
+    private final String name;
+
+    EntityManagerScope(@Nonnull String name) {
+        this.name = name;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public static EntityManagerScope of(@Nonnull String name) {
+        requireNonBlank(name, "Argument 'name' must not be blank");
+        for (EntityManagerScope scope : values()) {
+            if (scope.name.equalsIgnoreCase(name) || scope.name().equalsIgnoreCase(name)) {
+                return scope;
+            }
+        }
+        throw new IllegalArgumentException("Unknown entityManagerScope '" + name + "'");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import javax.persistence.EntityManager;
+
+/**
+ * A transaction demarcated programmatically with {@link EntityManagerHandler#beginTransaction(String, boolean)}.
+ * Nested callbacks made by the same thread before the transaction completes share its {@code EntityManager}.
+ * Exactly one of {@link #complete()} or {@link #fail(Throwable)} must be called, from the thread that began it.
+ *
+ * <pre>
+ * EntityManagerTransaction transaction = handler.beginTransaction("people", false);
+ * try {
+ *     transaction.getEntityManager().persist(person);
+ * } catch (Throwable t) {
+ *     transaction.fail(t);
+ *     throw t;
+ * } finally {
+ *     transaction.complete();
+ * }
+ * </pre>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface EntityManagerTransaction {
+    @Nonnull
+    String getPersistenceUnitName();
+
+    @Nonnull
+    EntityManager getEntityManager();
+
+    boolean isReadOnly();
+
+    boolean isCompleted();
+
+    /**
+     * Marks the transaction so that it is rolled back once completed.
+     */
+    void setRollbackOnly();
+
+    /**
+     * Commits the transaction, unless it is read-only or has been marked as rollback-only, and releases its
+     * {@code EntityManager}. Joined transactions are left for their owner to complete. Does nothing if the
+     * transaction has already been completed.
+     */
+    void complete();
+
+    /**
+     * Rolls back the transaction, or marks it as rollback-only when joined, and releases its {@code EntityManager}.
+     * Failures while rolling back are added as suppressed exceptions of {@code failure}. Does nothing if the
+     * transaction has already been completed.
+     */
+    void fail(@Nonnull Throwable failure);
+}
@@ -0,0 +1,96 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.Collections;
+import java.util.Map;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Applies the fetch profiles declared by the {@code fetchProfiles} block of a persistence unit. Profiles are turned
+ * into named {@code EntityGraph}s once, when the persistence unit is created, and may be applied either as a fetch
+ * graph, where attributes outside of the profile are loaded lazily, or as a load graph, where they keep the fetch
+ * type given by their mapping.
+ * <pre>
+ * Person person = entityManager.find(Person.class, id, FetchProfiles.loadGraph(entityManager, "personWithAddresses"));
+ * List&lt;Person&gt; people = FetchProfiles.withFetchGraph(entityManager.createQuery(jpql, Person.class), entityManager, "personWithAddresses")
+ *     .getResultList();
+ * </pre>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class FetchProfiles {
+    public static final String FETCH_GRAPH = "javax.persistence.fetchgraph";
+    public static final String LOAD_GRAPH = "javax.persistence.loadgraph";
+
+    private FetchProfiles() {
+        // prevent instantiation
+    }
+
+    /**
+     * @throws IllegalArgumentException if the persistence unit declares no such profile.
+     */
+    @Nonnull
+    public static EntityGraph<?> getEntityGraph(@Nonnull EntityManager entityManager, @Nonnull String profile) {
+        requireNonNull(entityManager, "Argument 'entityManager' must not be null");
+        requireNonBlank(profile, "Argument 'profile' must not be blank");
+        try {
+            return entityManager.getEntityGraph(profile);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown fetch profile '" + profile + "'", e);
+        }
+    }
+
+    /**
+     * @return hints applying the profile as a fetch graph, suitable for {@code EntityManager.find}.
+     */
+    @Nonnull
+    public static Map<String, Object> fetchGraph(@Nonnull EntityManager entityManager, @Nonnull String profile) {
+        return Collections.singletonMap(FETCH_GRAPH, getEntityGraph(entityManager, profile));
+    }
+
+    /**
+     * @return hints applying the profile as a load graph, suitable for {@code EntityManager.find}.
+     */
+    @Nonnull
+    public static Map<String, Object> loadGraph(@Nonnull EntityManager entityManager, @Nonnull String profile) {
+        return Collections.singletonMap(LOAD_GRAPH, getEntityGraph(entityManager, profile));
+    }
+
+    @Nonnull
+    public static <Q extends Query> Q withFetchGraph(@Nonnull Q query, @Nonnull EntityManager entityManager, @Nonnull String profile) {
+        requireNonNull(query, "Argument 'query' must not be null");
+        query.setHint(FETCH_GRAPH, getEntityGraph(entityManager, profile));
+        return query;
+    }
+
+    @Nonnull
+    public static <Q extends Query> Q withLoadGraph(@Nonnull Q query, @Nonnull EntityManager entityManager, @Nonnull String profile) {
+        requireNonNull(query, "Argument 'query' must not be null");
+        query.setHint(LOAD_GRAPH, getEntityGraph(entityManager, profile));
+        return query;
+    }
+}
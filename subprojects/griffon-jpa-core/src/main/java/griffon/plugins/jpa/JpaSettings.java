@@ -18,8 +18,12 @@
 package griffon.plugins.jpa;
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static java.util.Objects.requireNonNull;
 
@@ -29,20 +33,68 @@ import static java.util.Objects.requireNonNull;
 public final class JpaSettings {
     private final EntityManagerFactory entityManagerFactory;
     private final EntityManager entityManager;
+    private final EntityManagerScope entityManagerScope;
+    private final Map<String, Object> entityManagerProperties;
 
     public JpaSettings(@Nonnull EntityManagerFactory entityManagerFactory, @Nonnull EntityManager entityManager) {
+        this(entityManagerFactory, requireNonNull(entityManager, "Argument 'entityManager' must not be null"), EntityManagerScope.SHARED, Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param entityManagerFactory    the factory for this persistence unit.
+     * @param entityManager           the shared {@code EntityManager}. Required when {@code entityManagerScope} is {@code SHARED}, ignored otherwise.
+     * @param entityManagerScope      how {@code EntityManager} instances are handed out to callbacks.
+     * @param entityManagerProperties properties used when creating additional {@code EntityManager} instances.
+     * @since 3.0.0
+     */
+    public JpaSettings(@Nonnull EntityManagerFactory entityManagerFactory, @Nullable EntityManager entityManager, @Nonnull EntityManagerScope entityManagerScope, @Nonnull Map<String, Object> entityManagerProperties) {
         this.entityManagerFactory = requireNonNull(entityManagerFactory, "Argument 'entityManagerFactory' must not be null");
-        this.entityManager = requireNonNull(entityManager, "Argument 'entityManager' must not be null");
+        this.entityManagerScope = requireNonNull(entityManagerScope, "Argument 'entityManagerScope' must not be null");
+        this.entityManagerProperties = Collections.unmodifiableMap(new LinkedHashMap<>(requireNonNull(entityManagerProperties, "Argument 'entityManagerProperties' must not be null")));
+        if (entityManagerScope == EntityManagerScope.SHARED) {
+            this.entityManager = requireNonNull(entityManager, "Argument 'entityManager' must not be null");
+        } else {
+            this.entityManager = null;
+        }
     }
 
     public EntityManagerFactory getEntityManagerFactory() {
         return entityManagerFactory;
     }
 
+    /**
+     * Returns the shared {@code EntityManager}.
+     *
+     * @return the shared {@code EntityManager} or {@code null} if the scope is other than {@code SHARED}.
+     */
+    @Nullable
     public EntityManager getEntityManager() {
         return entityManager;
     }
 
+    @Nonnull
+    public EntityManagerScope getEntityManagerScope() {
+        return entityManagerScope;
+    }
+
+    @Nonnull
+    public Map<String, Object> getEntityManagerProperties() {
+        return entityManagerProperties;
+    }
+
+    /**
+     * Opens a new {@code EntityManager} using the configured properties. Callers are responsible for closing it.
+     *
+     * @return a new {@code EntityManager}.
+     * @since 3.0.0
+     */
+    @Nonnull
+    public EntityManager createEntityManager() {
+        return entityManagerFactory.createEntityManager(entityManagerProperties);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -50,13 +102,16 @@ public final class JpaSettings {
 
         JpaSettings that = (JpaSettings) o;
 
-        return entityManager.equals(that.entityManager) && entityManagerFactory.equals(that.entityManagerFactory);
+        return entityManagerScope == that.entityManagerScope &&
+            entityManagerFactory.equals(that.entityManagerFactory) &&
+            (entityManager != null ? entityManager.equals(that.entityManager) : that.entityManager == null);
     }
 
     @Override
     public int hashCode() {
         int result = entityManagerFactory.hashCode();
-        result = 31 * result + entityManager.hashCode();
+        result = 31 * result + (entityManager != null ? entityManager.hashCode() : 0);
+        result = 31 * result + entityManagerScope.hashCode();
         return result;
     }
 }
@@ -20,6 +20,7 @@ package griffon.plugins.jpa;
 import griffon.core.storage.ObjectFactory;
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import java.util.Map;
 import java.util.Set;
 
@@ -32,4 +33,22 @@ public interface JpaSettingsFactory extends ObjectFactory<JpaSettings> {
 
     @Nonnull
     Map<String, Object> getConfigurationFor(@Nonnull String persistenceUnitName);
+
+    /**
+     * Returns the names of all groups declared in the {@code persistenceUnitGroups} block.
+     *
+     * @since 3.0.0
+     */
+    @Nonnull
+    Set<String> getPersistenceUnitGroupNames();
+
+    /**
+     * Finds a persistence unit group by name.
+     *
+     * @param groupName the name of the group.
+     * @return the matching group or {@code null} if there is no group with that name.
+     * @since 3.0.0
+     */
+    @Nullable
+    PersistenceUnitGroup getPersistenceUnitGroup(@Nonnull String groupName);
 }
@@ -0,0 +1,498 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A read-only {@code List} over the instances of an entity that loads them in pages as they are accessed.
+ * <p>
+ * Pages are read by asynchronous callbacks of the {@code EntityManagerHandler}, thus {@link #get(int)} never blocks and
+ * returns {@code null} for elements whose page is not loaded yet. Listeners are notified with an indexed
+ * {@value #PROPERTY_PAGE} event once a page arrives and with a {@value #PROPERTY_SIZE} event whenever the number of
+ * elements changes; set {@code async.completeOnUIThread} on the persistence unit to receive them inside the UI thread.
+ * <p>
+ * Pages are located by keyset rather than by offset: a page starts right after the sort key of the last element of the
+ * previous page, which keeps every page as fast as the first one. The sort attribute is always complemented with the id
+ * attribute so that keys are unique; it must not be nullable. Only the most recently used {@code maxPages} pages are
+ * kept in memory, while the keys locating them are kept for as long as the list lives. Pages are read through
+ * {@code streamResults}, on an {@code EntityManager} of their own regardless of the scope of the persistence unit, thus
+ * their elements are detached and evicted pages can be reclaimed.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class KeysetPagedList<T> extends AbstractList<T> {
+    public static final String PROPERTY_SIZE = "size";
+    public static final String PROPERTY_PAGE = "page";
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeysetPagedList.class);
+    private static final String ALIAS = "e";
+    private static final String KEY_PARAMETER = "keysetKey";
+
+    private final EntityManagerHandler entityManagerHandler;
+    private final String persistenceUnitName;
+    private final Class<T> entityType;
+    private final String orderBy;
+    private final boolean ascending;
+    private final String where;
+    private final Map<String, Object> parameters;
+    private final int pageSize;
+    private final boolean prefetch;
+    private final PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
+
+    private final Map<Integer, List<T>> pages;
+    // the key of the element preceding each page, null for the first one
+    private final NavigableMap<Integer, Object[]> boundaries = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private final Set<Integer> failed = new HashSet<>();
+    private int size;
+    private int generation;
+    private int lastPage;
+    private volatile Queries queries;
+
+    private KeysetPagedList(@Nonnull Builder<T> builder) {
+        this.entityManagerHandler = builder.entityManagerHandler;
+        this.persistenceUnitName = builder.persistenceUnitName;
+        this.entityType = builder.entityType;
+        this.orderBy = builder.orderBy;
+        this.ascending = builder.ascending;
+        this.where = builder.where;
+        this.parameters = Collections.unmodifiableMap(new LinkedHashMap<>(builder.parameters));
+        this.pageSize = builder.pageSize;
+        this.prefetch = builder.prefetch;
+        int maxPages = builder.maxPages;
+        this.pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > maxPages;
+            }
+        };
+        this.boundaries.put(0, null);
+    }
+
+    @Nonnull
+    public static <T> Builder<T> builder(@Nonnull EntityManagerHandler entityManagerHandler, @Nonnull Class<T> entityType) {
+        return new Builder<>(entityManagerHandler, entityType);
+    }
+
+    /**
+     * @return the number of elements as counted by the last refresh, {@code 0} until counted.
+     */
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the element at the given position or {@code null} if its page has not been loaded yet,
+     * in which case the page is loaded in the background.
+     */
+    @Nullable
+    @Override
+    public T get(int index) {
+        T element = null;
+        List<Integer> toLoad = new ArrayList<>(2);
+        int currentGeneration;
+        synchronized (this) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            currentGeneration = generation;
+            int page = index / pageSize;
+            List<T> rows = pages.get(page);
+            if (rows != null) {
+                int offset = index % pageSize;
+                element = offset < rows.size() ? rows.get(offset) : null;
+            } else {
+                requestPage(page, toLoad);
+            }
+
+            if (prefetch) {
+                // the page next in the direction of scrolling, once past half of the current one
+                int offset = index % pageSize;
+                if (page >= lastPage && offset >= pageSize / 2 && (page + 1) * pageSize < size) {
+                    requestPage(page + 1, toLoad);
+                } else if (page < lastPage && offset < pageSize / 2 && page > 0) {
+                    requestPage(page - 1, toLoad);
+                }
+            }
+            lastPage = page;
+        }
+
+        for (Integer page : toLoad) {
+            loadPage(currentGeneration, page);
+        }
+        return element;
+    }
+
+    public synchronized boolean isLoaded(int index) {
+        return index >= 0 && index < size && pages.containsKey(index / pageSize);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Discards every loaded page and counts the elements again.
+     */
+    public void refresh() {
+        int currentGeneration;
+        synchronized (this) {
+            currentGeneration = ++generation;
+            pages.clear();
+            boundaries.clear();
+            boundaries.put(0, null);
+            loading.clear();
+            failed.clear();
+        }
+
+        entityManagerHandler.withEntityManagerAsync(persistenceUnitName, (name, ignored) -> {
+            try (Stream<Long> count = entityManagerHandler.streamResults(persistenceUnitName, (unit, entityManager) -> {
+                TypedQuery<Long> query = entityManager.createQuery(queries(entityManager).count, Long.class);
+                parameters.forEach(query::setParameter);
+                return query;
+            })) {
+                return count.findFirst().orElse(0L);
+            }
+        }).whenComplete((count, failure) -> {
+            if (failure != null) {
+                LOG.warn("Could not count instances of {} in '{}'", entityType.getName(), persistenceUnitName, failure);
+                return;
+            }
+            int oldSize;
+            int newSize;
+            synchronized (this) {
+                if (currentGeneration != generation) {
+                    return;
+                }
+                oldSize = size;
+                newSize = size = count.intValue();
+            }
+            propertyChangeSupport.firePropertyChange(PROPERTY_SIZE, oldSize, newSize);
+        });
+    }
+
+    public void addPropertyChangeListener(@Nullable PropertyChangeListener listener) {
+        propertyChangeSupport.addPropertyChangeListener(listener);
+    }
+
+    public void addPropertyChangeListener(@Nullable String propertyName, @Nullable PropertyChangeListener listener) {
+        propertyChangeSupport.addPropertyChangeListener(propertyName, listener);
+    }
+
+    public void removePropertyChangeListener(@Nullable PropertyChangeListener listener) {
+        propertyChangeSupport.removePropertyChangeListener(listener);
+    }
+
+    public void removePropertyChangeListener(@Nullable String propertyName, @Nullable PropertyChangeListener listener) {
+        propertyChangeSupport.removePropertyChangeListener(propertyName, listener);
+    }
+
+    @Nonnull
+    public PropertyChangeListener[] getPropertyChangeListeners() {
+        return propertyChangeSupport.getPropertyChangeListeners();
+    }
+
+    @Nonnull
+    public PropertyChangeListener[] getPropertyChangeListeners(@Nullable String propertyName) {
+        return propertyChangeSupport.getPropertyChangeListeners(propertyName);
+    }
+
+    private void requestPage(int page, @Nonnull List<Integer> toLoad) {
+        if (!pages.containsKey(page) && !failed.contains(page) && loading.add(page)) {
+            toLoad.add(page);
+        }
+    }
+
+    private void loadPage(int currentGeneration, int page) {
+        Map.Entry<Integer, Object[]> boundary;
+        synchronized (this) {
+            boundary = boundaries.floorEntry(page);
+        }
+        int startPage = boundary.getKey();
+        Object[] startKey = boundary.getValue();
+
+        entityManagerHandler.withEntityManagerAsync(persistenceUnitName, (name, ignored) ->
+            fetchPage(startKey, (page - startPage) * pageSize)
+        ).whenComplete((rows, failure) -> {
+            synchronized (this) {
+                if (currentGeneration != generation) {
+                    return;
+                }
+                loading.remove(page);
+                if (failure != null) {
+                    // not retried until refreshed, views would otherwise query on every repaint
+                    failed.add(page);
+                } else {
+                    pages.put(page, rows.elements);
+                    if (rows.startKey != null) {
+                        boundaries.put(page, rows.startKey);
+                    }
+                    if (rows.endKey != null) {
+                        boundaries.put(page + 1, rows.endKey);
+                    }
+                }
+            }
+            if (failure != null) {
+                LOG.warn("Could not load page {} of {} in '{}'", page, entityType.getName(), persistenceUnitName, failure);
+            } else {
+                propertyChangeSupport.fireIndexedPropertyChange(PROPERTY_PAGE, page, null, rows.elements);
+            }
+        });
+    }
+
+    /**
+     * Pages not directly preceded by a known key are reached by skipping elements from the closest known key,
+     * starting one element early to learn the key preceding the page.
+     */
+    @Nonnull
+    private Rows<T> fetchPage(@Nullable Object[] startKey, int skip) {
+        List<Object[]> results;
+        try (Stream<Object[]> rows = entityManagerHandler.streamResults(persistenceUnitName, (unit, entityManager) -> {
+            Queries q = queries(entityManager);
+            TypedQuery<Object[]> query = entityManager.createQuery(startKey != null ? q.next : q.first, Object[].class);
+            parameters.forEach(query::setParameter);
+            if (startKey != null) {
+                for (int i = 0; i < startKey.length; i++) {
+                    query.setParameter(KEY_PARAMETER + i, startKey[i]);
+                }
+            }
+            query.setFirstResult(skip > 0 ? skip - 1 : 0);
+            query.setMaxResults(skip > 0 ? pageSize + 1 : pageSize);
+            return query;
+        })) {
+            results = rows.collect(Collectors.toList());
+        }
+
+        Object[] pageStartKey = null;
+        if (skip > 0 && !results.isEmpty()) {
+            pageStartKey = keyOf(results.get(0));
+            results = results.subList(1, results.size());
+        }
+        List<T> elements = new ArrayList<>(results.size());
+        for (Object[] result : results) {
+            elements.add(entityType.cast(result[0]));
+        }
+        Object[] pageEndKey = results.size() == pageSize ? keyOf(results.get(results.size() - 1)) : null;
+        return new Rows<>(Collections.unmodifiableList(elements), pageStartKey, pageEndKey);
+    }
+
+    @Nonnull
+    private static Object[] keyOf(@Nonnull Object[] result) {
+        return Arrays.copyOfRange(result, 1, result.length);
+    }
+
+    @Nonnull
+    private Queries queries(@Nonnull EntityManager entityManager) {
+        if (queries == null) {
+            queries = new Queries(entityManager.getMetamodel().entity(entityType));
+        }
+        return queries;
+    }
+
+    private static final class Rows<T> {
+        private final List<T> elements;
+        private final Object[] startKey;
+        private final Object[] endKey;
+
+        private Rows(@Nonnull List<T> elements, @Nullable Object[] startKey, @Nullable Object[] endKey) {
+            this.elements = elements;
+            this.startKey = startKey;
+            this.endKey = endKey;
+        }
+    }
+
+    private final class Queries {
+        private final String count;
+        private final String first;
+        private final String next;
+
+        private Queries(@Nonnull EntityType<T> type) {
+            String id = null;
+            if (type.hasSingleIdAttribute()) {
+                for (SingularAttribute<? super T, ?> attribute : type.getSingularAttributes()) {
+                    if (attribute.isId()) {
+                        id = attribute.getName();
+                    }
+                }
+            }
+            if (id == null) {
+                throw new IllegalArgumentException("Entity " + type.getName() + " must have a single id attribute to be paged by keyset");
+            }
+
+            List<String> keys = new ArrayList<>(2);
+            if (orderBy != null && !orderBy.equals(id)) {
+                keys.add(ALIAS + "." + orderBy);
+            }
+            keys.add(ALIAS + "." + id);
+
+            String from = " from " + type.getName() + " " + ALIAS;
+            String filter = where != null ? "(" + where + ")" : null;
+            String direction = ascending ? " asc" : " desc";
+            StringBuilder order = new StringBuilder(" order by ");
+            for (int i = 0; i < keys.size(); i++) {
+                order.append(i > 0 ? ", " : "").append(keys.get(i)).append(direction);
+            }
+            String select = "select " + ALIAS + ", " + String.join(", ", keys) + from;
+
+            this.count = "select count(" + ALIAS + ")" + from + (filter != null ? " where " + filter : "");
+            this.first = select + (filter != null ? " where " + filter : "") + order;
+            this.next = select + " where " + (filter != null ? filter + " and " : "") + keyset(keys) + order;
+        }
+
+        /**
+         * Elements following a key, e.g. {@code (e.name > :k0 or (e.name = :k0 and e.id > :k1))}.
+         */
+        @Nonnull
+        private String keyset(@Nonnull List<String> keys) {
+            String operator = ascending ? " > " : " < ";
+            StringBuilder predicate = new StringBuilder("(");
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) {
+                    predicate.append(" or (");
+                    for (int j = 0; j < i; j++) {
+                        predicate.append(keys.get(j)).append(" = :").append(KEY_PARAMETER).append(j).append(" and ");
+                    }
+                }
+                predicate.append(keys.get(i)).append(operator).append(':').append(KEY_PARAMETER).append(i);
+                if (i > 0) {
+                    predicate.append(')');
+                }
+            }
+            return predicate.append(')').toString();
+        }
+    }
+
+    public static final class Builder<T> {
+        private final EntityManagerHandler entityManagerHandler;
+        private final Class<T> entityType;
+        private final Map<String, Object> parameters = new LinkedHashMap<>();
+        private String persistenceUnitName = "default";
+        private String orderBy;
+        private boolean ascending = true;
+        private String where;
+        private int pageSize = 100;
+        private int maxPages = 10;
+        private boolean prefetch = true;
+
+        private Builder(@Nonnull EntityManagerHandler entityManagerHandler, @Nonnull Class<T> entityType) {
+            this.entityManagerHandler = requireNonNull(entityManagerHandler, "Argument 'entityManagerHandler' must not be null");
+            this.entityType = requireNonNull(entityType, "Argument 'entityType' must not be null");
+        }
+
+        @Nonnull
+        public Builder<T> persistenceUnit(@Nonnull String persistenceUnitName) {
+            this.persistenceUnitName = requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+            return this;
+        }
+
+        /**
+         * @param attribute a non nullable attribute of the entity, the id attribute breaks ties.
+         */
+        @Nonnull
+        public Builder<T> orderBy(@Nonnull String attribute, boolean ascending) {
+            requireNonBlank(attribute, "Argument 'attribute' must not be blank");
+            for (String part : attribute.split("\\.", -1)) {
+                if (part.isEmpty() || !Character.isJavaIdentifierStart(part.charAt(0)) || !part.chars().allMatch(Character::isJavaIdentifierPart)) {
+                    throw new IllegalArgumentException("Argument 'attribute' must be a path of attribute names: " + attribute);
+                }
+            }
+            this.orderBy = attribute;
+            this.ascending = ascending;
+            return this;
+        }
+
+        /**
+         * @param condition a JPQL condition on the entity aliased as {@code e}, e.g. {@code e.lastname = :lastname}.
+         */
+        @Nonnull
+        public Builder<T> where(@Nonnull String condition) {
+            this.where = requireNonBlank(condition, "Argument 'condition' must not be blank");
+            return this;
+        }
+
+        @Nonnull
+        public Builder<T> parameter(@Nonnull String name, @Nonnull Object value) {
+            requireNonBlank(name, "Argument 'name' must not be blank");
+            parameters.put(name, requireNonNull(value, "Argument 'value' must not be null"));
+            return this;
+        }
+
+        @Nonnull
+        public Builder<T> pageSize(int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("Argument 'pageSize' must be greater than zero");
+            }
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        @Nonnull
+        public Builder<T> maxPages(int maxPages) {
+            if (maxPages < 1) {
+                throw new IllegalArgumentException("Argument 'maxPages' must be greater than zero");
+            }
+            this.maxPages = maxPages;
+            return this;
+        }
+
+        @Nonnull
+        public Builder<T> prefetch(boolean prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        /**
+         * @return a new list, its elements being counted in the background.
+         */
+        @Nonnull
+        public KeysetPagedList<T> build() {
+            KeysetPagedList<T> list = new KeysetPagedList<>(this);
+            list.refresh();
+            return list;
+        }
+    }
+}
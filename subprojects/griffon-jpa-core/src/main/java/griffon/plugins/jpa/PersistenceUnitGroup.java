@@ -0,0 +1,91 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A set of persistence units holding the same data: a single writer plus any number of read replicas.
+ * Callbacks addressed to the group are routed by {@code EntityManagerHandler}; read-only transactions
+ * go to the readers, everything else goes to the writer.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class PersistenceUnitGroup {
+    private final String name;
+    private final String writer;
+    private final List<String> readers;
+
+    public PersistenceUnitGroup(@Nonnull String name, @Nonnull String writer, @Nonnull List<String> readers) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.writer = requireNonBlank(writer, "Argument 'writer' must not be blank");
+        requireNonNull(readers, "Argument 'readers' must not be null");
+        for (String reader : readers) {
+            requireNonBlank(reader, "Argument 'readers' must not contain blank names");
+        }
+        this.readers = Collections.unmodifiableList(new ArrayList<>(readers));
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public String getWriter() {
+        return writer;
+    }
+
+    @Nonnull
+    public List<String> getReaders() {
+        return readers;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PersistenceUnitGroup that = (PersistenceUnitGroup) o;
+
+        return name.equals(that.name) &&
+            writer.equals(that.writer) &&
+            readers.equals(that.readers);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name.hashCode();
+        result = 31 * result + writer.hashCode();
+        result = 31 * result + readers.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PersistenceUnitGroup[name=" + name + ", writer=" + writer + ", readers=" + readers + "]";
+    }
+}
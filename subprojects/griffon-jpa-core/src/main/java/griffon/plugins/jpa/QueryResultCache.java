@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Caches query results of a single persistence unit.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface QueryResultCache {
+    /**
+     * Looks up cached results.
+     *
+     * @param key the key of the query, comprised of query, result type and parameters.
+     * @return the cached results or {@code null} if there are none or they have expired.
+     */
+    @Nullable
+    List<?> get(@Nonnull Object key);
+
+    /**
+     * Stores query results.
+     *
+     * @param key         the key of the query.
+     * @param results     the results to be cached.
+     * @param entityNames the names of the entities the query depends on.
+     */
+    void put(@Nonnull Object key, @Nonnull List<?> results, @Nonnull Set<String> entityNames);
+
+    /**
+     * Discards all results that depend on any of the given entities.
+     *
+     * @param entityNames the names of entities that have changed.
+     */
+    void invalidate(@Nonnull Collection<String> entityNames);
+
+    void clear();
+
+    int size();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    long getInvalidationCount();
+}
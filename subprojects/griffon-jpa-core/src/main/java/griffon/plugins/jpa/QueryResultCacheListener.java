@@ -0,0 +1,66 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jpa;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Entity listener that records which entity types were written by the current thread, allowing
+ * {@code EntityManagerHandler} to invalidate only the affected entries of a {@code QueryResultCache}
+ * when a transaction commits. Register it as a default entity listener in {@code META-INF/orm.xml}
+ * and set {@code queryCache.invalidation} to {@code entity}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class QueryResultCacheListener {
+    private static final ThreadLocal<Set<Class<?>>> CHANGED_TYPES = ThreadLocal.withInitial(LinkedHashSet::new);
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void entityChanged(Object entity) {
+        if (entity != null) {
+            CHANGED_TYPES.get().add(entity.getClass());
+        }
+    }
+
+    /**
+     * Returns and forgets the entity types written by the current thread.
+     *
+     * @return the entity types written since the last call.
+     */
+    public static Set<Class<?>> drain() {
+        Set<Class<?>> types = CHANGED_TYPES.get();
+        if (types.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<Class<?>> drained = new LinkedHashSet<>(types);
+        types.clear();
+        return drained;
+    }
+
+    public static void reset() {
+        CHANGED_TYPES.get().clear();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collector;
+
+/**
+ * Routes callbacks across persistence units that share the same schema but hold disjoint data (shards).
+ * Shard groups are declared in the {@code shards} block of the {@code Jpa} configuration; a shard key is mapped
+ * to one of the group's persistence units by consistent hashing, thus adding a unit only relocates a fraction of the keys.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface ShardedEntityManagerHandler {
+    // tag::methods[]
+    @Nonnull
+    Set<String> getShardGroupNames();
+
+    @Nonnull
+    List<String> getShards(@Nonnull String shardGroup);
+
+    @Nonnull
+    String shardFor(@Nonnull String shardGroup, @Nonnull Object shardKey);
+
+    @Nullable
+    <R> R withEntityManager(@Nonnull String shardGroup, @Nonnull Object shardKey, @Nonnull EntityManagerCallback<R> callback);
+
+    @Nullable
+    <R> R withTransaction(@Nonnull String shardGroup, @Nonnull Object shardKey, @Nonnull EntityManagerCallback<R> callback);
+
+    /**
+     * Runs the callback on every shard of the group in parallel and waits for all of them to complete.
+     *
+     * @return the result of every shard, keyed by persistence unit name, in declaration order.
+     */
+    @Nonnull
+    <R> Map<String, R> withEachShard(@Nonnull String shardGroup, @Nonnull EntityManagerCallback<R> callback);
+
+    /**
+     * Runs the callback on every shard of the group in parallel and merges their results with the given collector.
+     */
+    @Nullable
+    <R, A> A withEachShard(@Nonnull String shardGroup, @Nonnull EntityManagerCallback<R> callback, @Nonnull Collector<? super R, ?, A> collector);
+    // end::methods[]
+}
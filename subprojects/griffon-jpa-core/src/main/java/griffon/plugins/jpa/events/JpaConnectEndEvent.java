@@ -34,11 +34,17 @@ public class JpaConnectEndEvent extends Event {
     private final String name;
     private final Map<String, Object> config;
     private final EntityManager entityManager;
+    private final long warmupTime;
 
     public JpaConnectEndEvent(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull EntityManager entityManager) {
+        this(name, config, entityManager, 0L);
+    }
+
+    public JpaConnectEndEvent(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull EntityManager entityManager, long warmupTime) {
         this.name = requireNonBlank(name, "Argument 'name' must not be blank");
         this.config = requireNonNull(config, "Argument 'config' must not be null");
         this.entityManager = requireNonNull(entityManager, "Argument 'entityManager' must not be null");
+        this.warmupTime = warmupTime;
     }
 
     @Nonnull
@@ -51,13 +57,29 @@ public class JpaConnectEndEvent extends Event {
         return config;
     }
 
+    /**
+     * @return the {@code EntityManager} used while the persistence unit is being connected. It is closed once the event has been
+     * delivered unless the persistence unit is {@code SHARED}, thus it must not be kept nor handed over to another thread.
+     */
     @Nonnull
     public EntityManager getEntityManager() {
         return entityManager;
     }
 
+    /**
+     * @return milliseconds spent warming up the persistence unit, {@code 0} if warm-up is disabled.
+     */
+    public long getWarmupTime() {
+        return warmupTime;
+    }
+
     @Nonnull
     public static JpaConnectEndEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull EntityManager entityManager) {
         return new JpaConnectEndEvent(name, config, entityManager);
     }
+
+    @Nonnull
+    public static JpaConnectEndEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull EntityManager entityManager, long warmupTime) {
+        return new JpaConnectEndEvent(name, config, entityManager, warmupTime);
+    }
 }
@@ -51,6 +51,10 @@ public class JpaDisconnectStartEvent extends Event {
         return config;
     }
 
+    /**
+     * @return the {@code EntityManager} used while the persistence unit is being disconnected. It is closed once the event has been
+     * delivered unless the persistence unit is {@code SHARED}, thus it must not be kept nor handed over to another thread.
+     */
     @Nonnull
     public EntityManager getEntityManager() {
         return entityManager;
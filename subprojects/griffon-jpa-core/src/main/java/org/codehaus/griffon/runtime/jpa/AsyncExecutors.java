@@ -0,0 +1,141 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps one {@code ExecutorService} per persistence unit for asynchronous callbacks.
+ * Executors run on virtual threads when available (JDK 21+) or on a bounded thread pool otherwise,
+ * as configured by the {@code async} block of each persistence unit.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class AsyncExecutors {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncExecutors.class);
+    private static final String EXECUTOR_AUTO = "auto";
+    private static final String EXECUTOR_VIRTUAL = "virtual";
+    private static final String EXECUTOR_POOL = "pool";
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+
+    private final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+
+    @Nonnull
+    ExecutorService get(@Nonnull String persistenceUnitName, @Nonnull Map<String, Object> config) {
+        requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+        requireNonNull(config, "Argument 'config' must not be null");
+        return executors.computeIfAbsent(persistenceUnitName, k -> createExecutorService(k, config));
+    }
+
+    void shutdown(@Nonnull String persistenceUnitName) {
+        ExecutorService executorService = executors.remove(persistenceUnitName);
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    void shutdown() {
+        for (String persistenceUnitName : executors.keySet()) {
+            shutdown(persistenceUnitName);
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    private static ExecutorService createExecutorService(@Nonnull String persistenceUnitName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> async = getConfigValue(config, "async", Collections.<String, Object>emptyMap());
+        String type = getConfigValueAsString(async, "executor", EXECUTOR_AUTO);
+
+        if (EXECUTOR_VIRTUAL.equals(type) || EXECUTOR_AUTO.equals(type)) {
+            ExecutorService executorService = newVirtualThreadPerTaskExecutor();
+            if (executorService != null) {
+                LOG.debug("Using virtual threads for asynchronous callbacks on persistence unit '{}'", persistenceUnitName);
+                return executorService;
+            }
+            if (EXECUTOR_VIRTUAL.equals(type)) {
+                LOG.warn("Virtual threads are not available; persistence unit '{}' falls back to a bounded thread pool", persistenceUnitName);
+            }
+        } else if (!EXECUTOR_POOL.equals(type)) {
+            throw new IllegalArgumentException("Unknown async executor '" + type + "' for persistence unit '" + persistenceUnitName + "'");
+        }
+
+        int poolSize = Math.max(1, getConfigValueAsInt(async, "poolSize", Math.max(4, Runtime.getRuntime().availableProcessors())));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), new AsyncThreadFactory(persistenceUnitName));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception | LinkageError e) {
+            // virtual threads may be a disabled preview feature
+            LOG.trace("Virtual threads are not available", e);
+            return null;
+        }
+    }
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static final class AsyncThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        private AsyncThreadFactory(@Nonnull String persistenceUnitName) {
+            this.prefix = "jpa-" + persistenceUnitName + "-";
+        }
+
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
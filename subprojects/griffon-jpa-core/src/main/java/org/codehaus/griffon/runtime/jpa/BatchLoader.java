@@ -0,0 +1,305 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Coalesces lookups by id made on a persistence unit. Lookups of the same entity type arriving within the
+ * {@code window} of the first one are served by a single query on the id attribute, which is sent earlier once
+ * {@code maxBatchSize} distinct ids have been collected. Both settings are read from the {@code batchLoader}
+ * block of the persistence unit.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class BatchLoader {
+    private final int maxBatchSize;
+    private final long window;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<Batch<?>> dispatcher;
+    private final Map<Class<?>, Batch<?>> pending = new HashMap<>();
+    private volatile boolean closed;
+
+    private BatchLoader(int maxBatchSize, long window, @Nonnull ScheduledExecutorService scheduler, @Nonnull Consumer<Batch<?>> dispatcher) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.window = Math.max(0L, window);
+        this.scheduler = requireNonNull(scheduler, "Argument 'scheduler' must not be null");
+        this.dispatcher = requireNonNull(dispatcher, "Argument 'dispatcher' must not be null");
+    }
+
+    /**
+     * @param dispatcher runs the query of a batch and completes it, it must not block the calling thread.
+     */
+    @Nonnull
+    static BatchLoader of(@Nonnull Map<String, Object> config, @Nonnull ScheduledExecutorService scheduler, @Nonnull Consumer<Batch<?>> dispatcher) {
+        Map<String, Object> batchLoader = getConfigValue(config, "batchLoader", Collections.<String, Object>emptyMap());
+        return new BatchLoader(
+            getConfigValueAsInt(batchLoader, "maxBatchSize", 100),
+            getConfigValue(batchLoader, "window", (Number) 2L).longValue(),
+            scheduler,
+            dispatcher);
+    }
+
+    @Nonnull
+    <T> CompletableFuture<T> load(@Nonnull Class<T> type, @Nonnull Object id) {
+        Batch<T> batch;
+        CompletableFuture<T> future;
+        boolean created;
+        boolean full;
+        synchronized (this) {
+            batch = pendingBatch(type);
+            created = batch.isEmpty();
+            future = batch.add(id);
+            full = batch.size() >= maxBatchSize;
+            if (full) {
+                pending.remove(type);
+            }
+        }
+
+        if (full) {
+            dispatch(batch);
+        } else if (created) {
+            try {
+                scheduler.schedule(() -> flush(batch), window, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flush(batch);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Sends every pending batch right away.
+     */
+    void flush() {
+        List<Batch<?>> batches;
+        synchronized (this) {
+            batches = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        batches.forEach(this::dispatch);
+    }
+
+    /**
+     * Fails every pending batch with the given failure. Batches dispatched already report themselves as closed,
+     * thus the dispatcher must fail them instead of running their query.
+     */
+    void close(@Nonnull RuntimeException failure) {
+        List<Batch<?>> batches;
+        synchronized (this) {
+            closed = true;
+            batches = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        batches.forEach(batch -> batch.fail(failure));
+    }
+
+    private void flush(@Nonnull Batch<?> batch) {
+        synchronized (this) {
+            // the batch may have been sent already for being full
+            if (pending.get(batch.type) != batch) {
+                return;
+            }
+            pending.remove(batch.type);
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(@Nonnull Batch<?> batch) {
+        try {
+            dispatcher.accept(batch);
+        } catch (RuntimeException e) {
+            batch.fail(e);
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private <T> Batch<T> pendingBatch(@Nonnull Class<T> type) {
+        return (Batch<T>) pending.computeIfAbsent(type, k -> new Batch<>(this, k));
+    }
+
+    /**
+     * Lookups of a single entity type; callers asking for the same id share the same result.
+     */
+    static final class Batch<T> {
+        private final BatchLoader loader;
+        private final Class<T> type;
+        private final Map<Object, List<CompletableFuture<T>>> requests = new LinkedHashMap<>();
+        private final Map<Object, RuntimeException> rejected = new HashMap<>();
+
+        private Batch(@Nonnull BatchLoader loader, @Nonnull Class<T> type) {
+            this.loader = loader;
+            this.type = type;
+        }
+
+        /**
+         * @return {@code true} if the persistence unit of this batch was closed after the batch was sent.
+         */
+        boolean isClosed() {
+            return loader.closed;
+        }
+
+        @Nonnull
+        Class<T> getType() {
+            return type;
+        }
+
+        int size() {
+            return requests.size();
+        }
+
+        private boolean isEmpty() {
+            return requests.isEmpty();
+        }
+
+        @Nonnull
+        private CompletableFuture<T> add(@Nonnull Object id) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            requests.computeIfAbsent(id, k -> new ArrayList<>(1)).add(future);
+            return future;
+        }
+
+        /**
+         * Loads every requested instance with a single query. Ids that do not match the type of the id attribute are
+         * rejected, as {@code EntityManager.find} would do, without failing the lookups of other callers.
+         *
+         * @return found instances indexed by id.
+         */
+        @Nonnull
+        Map<Object, T> find(@Nonnull EntityManager entityManager) {
+            EntityType<T> entityType = entityManager.getMetamodel().entity(type);
+            SingularAttribute<? super T, ?> idAttribute = findIdAttribute(entityType);
+            if (idAttribute == null) {
+                // composite ids are looked up one by one
+                Map<Object, T> found = new HashMap<>();
+                for (Object id : requests.keySet()) {
+                    found.put(id, entityManager.find(type, id));
+                }
+                return found;
+            }
+
+            Class<?> idType = wrap(idAttribute.getJavaType());
+            List<Object> ids = new ArrayList<>(requests.size());
+            for (Object id : requests.keySet()) {
+                if (idType.isInstance(id)) {
+                    ids.add(id);
+                } else {
+                    rejected.put(id, new IllegalArgumentException("Id " + id + " of type " + id.getClass().getName() +
+                        " does not match the id type " + idType.getName() + " of " + type.getName()));
+                }
+            }
+
+            Map<Object, T> found = new HashMap<>();
+            if (ids.isEmpty()) {
+                return found;
+            }
+            CriteriaQuery<T> query = entityManager.getCriteriaBuilder().createQuery(type);
+            Root<T> root = query.from(entityType);
+            query.select(root).where(root.get(idAttribute).in(ids));
+            PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+            for (T instance : entityManager.createQuery(query).getResultList()) {
+                found.put(persistenceUnitUtil.getIdentifier(instance), instance);
+            }
+            return found;
+        }
+
+        /**
+         * Completes every lookup, those whose id was not found with {@code null}.
+         */
+        void complete(@Nonnull Map<Object, T> found) {
+            for (Map.Entry<Object, List<CompletableFuture<T>>> request : requests.entrySet()) {
+                RuntimeException failure = rejected.get(request.getKey());
+                T instance = found.get(request.getKey());
+                for (CompletableFuture<T> future : request.getValue()) {
+                    if (failure != null) {
+                        future.completeExceptionally(failure);
+                    } else {
+                        future.complete(instance);
+                    }
+                }
+            }
+        }
+
+        void fail(@Nonnull Throwable failure) {
+            for (List<CompletableFuture<T>> futures : requests.values()) {
+                futures.forEach(future -> future.completeExceptionally(failure));
+            }
+        }
+
+        @Nullable
+        private static <T> SingularAttribute<? super T, ?> findIdAttribute(@Nonnull EntityType<T> entityType) {
+            if (!entityType.hasSingleIdAttribute()) {
+                return null;
+            }
+            for (SingularAttribute<? super T, ?> attribute : entityType.getSingularAttributes()) {
+                if (attribute.isId()) {
+                    return attribute;
+                }
+            }
+            return null;
+        }
+
+        @Nonnull
+        private static Class<?> wrap(@Nonnull Class<?> type) {
+            if (!type.isPrimitive()) {
+                return type;
+            }
+            if (type == long.class) {
+                return Long.class;
+            } else if (type == int.class) {
+                return Integer.class;
+            } else if (type == short.class) {
+                return Short.class;
+            } else if (type == byte.class) {
+                return Byte.class;
+            } else if (type == char.class) {
+                return Character.class;
+            } else if (type == boolean.class) {
+                return Boolean.class;
+            } else if (type == double.class) {
+                return Double.class;
+            }
+            return Float.class;
+        }
+    }
+}
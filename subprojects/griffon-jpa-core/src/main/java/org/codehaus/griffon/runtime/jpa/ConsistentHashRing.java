@@ -0,0 +1,88 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Maps keys to nodes on a hash ring where every node owns {@code virtualNodes} points, spreading keys evenly and
+ * keeping most assignments stable when nodes are added or removed. Keys are hashed by their {@code String} form.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class ConsistentHashRing {
+    private final List<String> nodes;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(@Nonnull List<String> nodes, int virtualNodes) {
+        requireNonNull(nodes, "Argument 'nodes' must not be null");
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("Argument 'nodes' must not be empty");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Argument 'virtualNodes' must be greater than 0");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // on the rare collision the first node keeps the point
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    @Nonnull
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    @Nonnull
+    public String nodeFor(@Nonnull Object key) {
+        requireNonNull(key, "Argument 'key' must not be null");
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(String.valueOf(key)));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 64-bit FNV-1a followed by a finalizer that spreads similar inputs (such as sequential ids) across the ring.
+     */
+    static long hash(@Nonnull String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import javax.sql.DataSource;
+
+/**
+ * A pooled JDBC {@code DataSource} built by the plugin for a persistence unit.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface DataSourcePool extends AutoCloseable {
+    @Nonnull
+    DataSource getDataSource();
+
+    int getMaxSize();
+
+    /**
+     * @return the number of open connections, idle and leased alike.
+     */
+    int getSize();
+
+    int getIdle();
+
+    int getActive();
+
+    /**
+     * @return the number of threads waiting for a connection.
+     */
+    int getWaiters();
+
+    /**
+     * Retires every idle connection right away and every leased connection once it is returned.
+     */
+    void softEvictConnections();
+
+    @Override
+    void close();
+}
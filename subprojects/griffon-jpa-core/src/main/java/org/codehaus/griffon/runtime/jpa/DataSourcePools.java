@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the pooled {@code DataSource} of every persistence unit that defines a {@code dataSource} block. Pools are
+ * built with HikariCP, which is an optional dependency that must be added to the application when such a block is
+ * defined.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourcePools {
+    private static final boolean HIKARICP_AVAILABLE = isHikariAvailable();
+
+    private final Map<String, DataSourcePool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the pooled {@code DataSource} of a persistence unit, replacing any previous one.
+     *
+     * @param persistenceUnitName the name of the persistence unit.
+     * @param config              the settings of the persistence unit.
+     * @param jdbcProperties      the {@code javax.persistence.jdbc} properties of the persistence unit, used for
+     *                            connection settings missing from the {@code dataSource} block.
+     *
+     * @return the pooled {@code DataSource}, or {@code null} if the persistence unit does not define one.
+     */
+    @Nullable
+    @SuppressWarnings("ConstantConditions")
+    public DataSource create(@Nonnull String persistenceUnitName, @Nonnull Map<String, Object> config, @Nonnull Map<String, String> jdbcProperties) {
+        requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+        requireNonNull(config, "Argument 'config' must not be null");
+        requireNonNull(jdbcProperties, "Argument 'jdbcProperties' must not be null");
+        Map<String, Object> dataSource = getConfigValue(config, "dataSource", Collections.<String, Object>emptyMap());
+        if (dataSource.isEmpty()) {
+            return null;
+        }
+        if (!HIKARICP_AVAILABLE) {
+            throw new IllegalStateException("Persistence unit '" + persistenceUnitName + "' defines a dataSource block but HikariCP was not found in the classpath");
+        }
+
+        DataSourcePool pool = HikariDataSourcePool.create(persistenceUnitName, dataSource, jdbcProperties);
+        DataSourcePool previous = pools.put(persistenceUnitName, pool);
+        if (previous != null) {
+            previous.close();
+        }
+        return pool.getDataSource();
+    }
+
+    public void close(@Nonnull String persistenceUnitName) {
+        DataSourcePool pool = pools.remove(persistenceUnitName);
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    public void softEvictConnections() {
+        for (DataSourcePool pool : pools.values()) {
+            pool.softEvictConnections();
+        }
+    }
+
+    @Nonnull
+    public <T> Map<String, T> collect(@Nonnull Function<DataSourcePool, T> metric) {
+        requireNonNull(metric, "Argument 'metric' must not be null");
+        Map<String, T> values = new LinkedHashMap<>();
+        for (Map.Entry<String, DataSourcePool> entry : pools.entrySet()) {
+            values.put(entry.getKey(), metric.apply(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    private static boolean isHikariAvailable() {
+        try {
+            Class.forName("com.zaxxer.hikari.HikariDataSource", false, DataSourcePools.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -17,11 +17,18 @@
  */
 package org.codehaus.griffon.runtime.jpa;
 
+import griffon.core.threading.UIThreadManager;
 import griffon.plugins.jpa.EntityManagerCallback;
 import griffon.plugins.jpa.JpaSettingsFactory;
 import griffon.plugins.jpa.EntityManagerHandler;
+import griffon.plugins.jpa.EntityManagerScope;
+import griffon.plugins.jpa.EntityManagerTransaction;
 import griffon.plugins.jpa.JpaSettings;
 import griffon.plugins.jpa.JpaSettingsStorage;
+import griffon.plugins.jpa.PersistenceUnitGroup;
+import griffon.plugins.jpa.QueryCallback;
+import griffon.plugins.jpa.QueryResultCacheListener;
+import org.codehaus.griffon.runtime.jpa.jfr.JpaEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,7 +36,35 @@ import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
+import javax.persistence.RollbackException;
+import javax.persistence.TypedQuery;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
 
@@ -41,14 +76,68 @@ public class DefaultEntityManagerHandler implements EntityManagerHandler {
     private static final String ERROR_DATASBASE_BLANK = "Argument 'persistenceUnitName' must not be blank";
     private static final String ERROR_CONNECTION_SOURCE_NULL = "Argument 'entityManager' must not be null";
     private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+    private static final String ERROR_ENTITIES_NULL = "Argument 'entities' must not be null";
+    private static final String ERROR_QUERY_BLANK = "Argument 'query' must not be blank";
+    private static final String ERROR_RESULT_TYPE_NULL = "Argument 'resultType' must not be null";
+    private static final String ERROR_PARAMETERS_NULL = "Argument 'parameters' must not be null";
+    private static final String ERROR_TYPE_NULL = "Argument 'type' must not be null";
+    private static final String ERROR_ID_NULL = "Argument 'id' must not be null";
+    private static final int DEFAULT_BATCH_SIZE = 50;
+    private static final String SQL_STATE_CONNECTION_EXCEPTION = "08";
 
     private final JpaSettingsFactory jpaSettingsFactory;
     private final JpaSettingsStorage jpaSettingsStorage;
+    private final JpaSettingsStorageStatistics jpaSettingsStorageStatistics;
+    private final EntityManagerHandlerStatistics entityManagerHandlerStatistics;
+    private final StatementStatistics statementStatistics;
+    private final QueryResultCaches queryResultCaches;
+    private final EntityManagerPools entityManagerPools;
+    private final UIThreadManager uiThreadManager;
+    private final AsyncExecutors asyncExecutors = new AsyncExecutors();
+    private final ReplicaRouter replicaRouter;
+
+    /**
+     * Persistence units currently being initialized. Only the caller that registers the future creates the unit,
+     * concurrent callers for the same unit wait on it while callers of other units proceed undisturbed.
+     */
+    private final Map<String, CompletableFuture<JpaSettings>> initializations = new ConcurrentHashMap<>();
+
+    /**
+     * {@code EntityManager}s bound to the current thread for the duration of the outermost callback,
+     * so that nested callbacks on the same persistence unit share the same persistence context.
+     */
+    private final ThreadLocal<Map<String, EntityManager>> boundEntityManagers = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Map<String, EntityManager>> threadEntityManagers = ThreadLocal.withInitial(HashMap::new);
+    /**
+     * {@code perThread} instances indexed by the thread that owns them, so that those of terminated threads can be closed.
+     */
+    private final Map<String, Map<Thread, EntityManager>> perThreadEntityManagers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Set<EntityManager>> readOnlyTransactions = ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
+    /**
+     * Threads that began the transaction in progress on an {@code EntityManager}. A {@code shared} instance is visible
+     * to every thread, only callbacks nested in the owning one may join its transaction.
+     */
+    private final Map<EntityManager, Thread> transactionOwners = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Map<String, Map<String, Object>> readOnlyHints = new ConcurrentHashMap<>();
+    private final Map<String, PersistenceContextGuard> contextGuards = new ConcurrentHashMap<>();
+    private final Map<String, RetryPolicy> retryPolicies = new ConcurrentHashMap<>();
+    private final Map<String, StatementInstrumentation> instrumentations = new ConcurrentHashMap<>();
+    private final Map<String, UnitUsage> unitUsages = new ConcurrentHashMap<>();
+    private final Map<String, ScheduledFuture<?>> evictionTasks = new ConcurrentHashMap<>();
+    private final Map<String, BatchLoader> batchLoaders = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
 
     @Inject
-    public DefaultEntityManagerHandler(@Nonnull JpaSettingsFactory jpaSettingsFactory, @Nonnull JpaSettingsStorage jpaSettingsStorage) {
+    public DefaultEntityManagerHandler(@Nonnull JpaSettingsFactory jpaSettingsFactory, @Nonnull JpaSettingsStorage jpaSettingsStorage, @Nonnull JpaSettingsStorageStatistics jpaSettingsStorageStatistics, @Nonnull EntityManagerHandlerStatistics entityManagerHandlerStatistics, @Nonnull StatementStatistics statementStatistics, @Nonnull QueryResultCaches queryResultCaches, @Nonnull EntityManagerPools entityManagerPools, @Nonnull UIThreadManager uiThreadManager) {
         this.jpaSettingsFactory = requireNonNull(jpaSettingsFactory, "Argument 'entityManagerFactory' must not be null");
         this.jpaSettingsStorage = requireNonNull(jpaSettingsStorage, "Argument 'entityManagerStorage' must not be null");
+        this.jpaSettingsStorageStatistics = requireNonNull(jpaSettingsStorageStatistics, "Argument 'jpaSettingsStorageStatistics' must not be null");
+        this.entityManagerHandlerStatistics = requireNonNull(entityManagerHandlerStatistics, "Argument 'entityManagerHandlerStatistics' must not be null");
+        this.statementStatistics = requireNonNull(statementStatistics, "Argument 'statementStatistics' must not be null");
+        this.replicaRouter = new ReplicaRouter(entityManagerHandlerStatistics);
+        this.queryResultCaches = requireNonNull(queryResultCaches, "Argument 'queryResultCaches' must not be null");
+        this.entityManagerPools = requireNonNull(entityManagerPools, "Argument 'entityManagerPools' must not be null");
+        this.uiThreadManager = requireNonNull(uiThreadManager, "Argument 'uiThreadManager' must not be null");
     }
 
     @Nullable
@@ -60,22 +149,835 @@ public class DefaultEntityManagerHandler implements EntityManagerHandler {
     @Nullable
     @Override
     public <R> R withEntityManager(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback) {
+        return execute(persistenceUnitName, TransactionMode.NONE, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull EntityManagerCallback<R> callback) {
+        return withTransaction(DefaultJpaSettingsFactory.KEY_DEFAULT, false, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(boolean readOnly, @Nonnull EntityManagerCallback<R> callback) {
+        return withTransaction(DefaultJpaSettingsFactory.KEY_DEFAULT, readOnly, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback) {
+        return withTransaction(persistenceUnitName, false, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String persistenceUnitName, boolean readOnly, @Nonnull EntityManagerCallback<R> callback) {
+        return execute(persistenceUnitName, readOnly ? TransactionMode.READ_ONLY : TransactionMode.READ_WRITE, callback);
+    }
+
+    @Nonnull
+    @Override
+    public EntityManagerTransaction beginTransaction(boolean readOnly) {
+        return beginTransaction(DefaultJpaSettingsFactory.KEY_DEFAULT, readOnly);
+    }
+
+    @Nonnull
+    @Override
+    public EntityManagerTransaction beginTransaction(@Nonnull String persistenceUnitName, boolean readOnly) {
+        requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
+
+        String unitName = readOnly ? resolveReadOnlyUnit(persistenceUnitName) : resolveReadWriteUnit(persistenceUnitName);
+        Map<String, EntityManager> bound = boundEntityManagers.get();
+        EntityManager entityManager = bound.get(unitName);
+        if (entityManager != null) {
+            ProgrammaticTransaction transaction = new ProgrammaticTransaction(unitName, readOnly, entityManager, null, null);
+            transaction.begin();
+            return transaction;
+        }
+
+        UnitUsage usage = enterUnit(unitName);
+        JpaSettings jpaSettings;
+        try {
+            jpaSettings = getJpaSettings(unitName);
+            entityManager = openEntityManager(unitName, jpaSettings);
+        } catch (RuntimeException | Error e) {
+            usage.exit();
+            throw e;
+        }
+        bound.put(unitName, entityManager);
+        ProgrammaticTransaction transaction = new ProgrammaticTransaction(unitName, readOnly, entityManager, jpaSettings, usage);
+        try {
+            transaction.begin();
+        } catch (RuntimeException | Error e) {
+            transaction.release();
+            throw e;
+        }
+        return transaction;
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withEntityManagerAsync(@Nonnull EntityManagerCallback<R> callback) {
+        return withEntityManagerAsync(DefaultJpaSettingsFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withEntityManagerAsync(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback) {
+        return executeAsync(persistenceUnitName, TransactionMode.NONE, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withTransactionAsync(@Nonnull EntityManagerCallback<R> callback) {
+        return withTransactionAsync(DefaultJpaSettingsFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withTransactionAsync(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback) {
+        return executeAsync(persistenceUnitName, TransactionMode.READ_WRITE, callback);
+    }
+
+    @Nonnull
+    private <R> CompletableFuture<R> executeAsync(@Nonnull String persistenceUnitName, @Nonnull TransactionMode transactionMode, @Nonnull EntityManagerCallback<R> callback) {
         requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
 
-        EntityManager entityManager = getEntityManager(persistenceUnitName);
-        return doWithConnection(persistenceUnitName, entityManager, callback);
+        Map<String, Object> config = jpaSettingsFactory.getConfigurationFor(persistenceUnitName);
+        boolean completeOnUIThread = getConfigValueAsBoolean(getConfigValue(config, "async", Collections.<String, Object>emptyMap()), "completeOnUIThread", false);
+
+        CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            asyncExecutors.get(persistenceUnitName, config).execute(() -> {
+                try {
+                    R result = execute(persistenceUnitName, transactionMode, callback);
+                    deliver(completeOnUIThread, () -> future.complete(result));
+                } catch (Throwable t) {
+                    deliver(completeOnUIThread, () -> future.completeExceptionally(t));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Completing the future inside the UI thread makes dependent, non-async stages run there as well.
+     */
+    private void deliver(boolean completeOnUIThread, @Nonnull Runnable completion) {
+        if (completeOnUIThread) {
+            uiThreadManager.runInsideUIAsync(completion);
+        } else {
+            completion.run();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public <T> Stream<T> streamResults(@Nonnull QueryCallback<T> callback) {
+        return streamResults(DefaultJpaSettingsFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("ConstantConditions")
+    public <T> Stream<T> streamResults(@Nonnull String persistenceUnitName, @Nonnull QueryCallback<T> callback) {
+        requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        String unitName = resolveReadOnlyUnit(persistenceUnitName);
+        Map<String, Object> config = getConfigValue(jpaSettingsFactory.getConfigurationFor(unitName), "stream", Collections.<String, Object>emptyMap());
+        // the stream outlives this call, it requires an EntityManager of its own regardless of the configured scope
+        UnitUsage usage = enterUnit(unitName);
+        JpaSettings jpaSettings = null;
+        EntityManager entityManager = null;
+        try {
+            jpaSettings = getJpaSettings(unitName);
+            entityManager = openStreamEntityManager(unitName, jpaSettings);
+            JpaSettings settings = jpaSettings;
+            EntityManager leased = entityManager;
+            // an open stream keeps the persistence unit in use, and its EntityManager leased
+            return doWithConnection(unitName, entityManager, false, TransactionMode.NONE,
+                (name, em) -> ResultStreams.open(name, em, callback, config, () -> {
+                    try {
+                        releaseStreamEntityManager(name, settings, leased);
+                    } finally {
+                        usage.exit();
+                    }
+                }));
+        } catch (RuntimeException | Error e) {
+            try {
+                if (entityManager != null) {
+                    releaseStreamEntityManager(unitName, jpaSettings, entityManager);
+                }
+            } finally {
+                usage.exit();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Pooled persistence units lease streams an {@code EntityManager} from their pool, so that open streams count
+     * against its size; other scopes hand out one of their own.
+     */
+    @Nonnull
+    private EntityManager openStreamEntityManager(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings) {
+        if (jpaSettings.getEntityManagerScope() == EntityManagerScope.POOLED) {
+            return entityManagerPools.forUnit(persistenceUnitName, jpaSettings).acquire();
+        }
+        return jpaSettings.createEntityManager();
+    }
+
+    private void releaseStreamEntityManager(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings, @Nonnull EntityManager entityManager) {
+        if (jpaSettings.getEntityManagerScope() == EntityManagerScope.POOLED) {
+            entityManagerPools.release(persistenceUnitName, entityManager);
+        } else if (entityManager.isOpen()) {
+            entityManager.close();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public <T> List<T> getCachedResultList(@Nonnull String query, @Nonnull Class<T> resultType, @Nonnull Map<String, ?> parameters) {
+        return getCachedResultList(DefaultJpaSettingsFactory.KEY_DEFAULT, query, resultType, parameters);
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getCachedResultList(@Nonnull String persistenceUnitName, @Nonnull String query, @Nonnull Class<T> resultType, @Nonnull Map<String, ?> parameters) {
+        requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
+        requireNonBlank(query, ERROR_QUERY_BLANK);
+        requireNonNull(resultType, ERROR_RESULT_TYPE_NULL);
+        requireNonNull(parameters, ERROR_PARAMETERS_NULL);
+
+        // results of a group are invalidated by commits on its writer, thus they are cached under the writer's name
+        PersistenceUnitGroup group = jpaSettingsFactory.getPersistenceUnitGroup(persistenceUnitName);
+        String cacheName = group != null ? group.getWriter() : persistenceUnitName;
+
+        // results read inside a transaction may include uncommitted changes, those must not be shared
+        EntityManager bound = boundEntityManagers.get().get(cacheName);
+        if (!queryResultCaches.isEnabled(cacheName) || (bound != null && bound.getTransaction().isActive())) {
+            return execute(persistenceUnitName, TransactionMode.READ_ONLY, (name, entityManager) ->
+                getResultList(entityManager, query, resultType, parameters));
+        }
+
+        Object key = QueryResultCaches.keyOf(query, resultType, parameters);
+        List<?> cached = queryResultCaches.get(cacheName, key);
+        if (cached != null) {
+            return (List<T>) cached;
+        }
+
+        long generation = queryResultCaches.generation(cacheName);
+        return execute(persistenceUnitName, TransactionMode.READ_ONLY, (name, entityManager) -> {
+            List<T> results = getResultList(entityManager, query, resultType, parameters);
+            queryResultCaches.put(cacheName, key, query, results, entityManager.getMetamodel(), generation);
+            return results;
+        });
+    }
+
+    @Nonnull
+    @Override
+    public <T> CompletableFuture<T> findAsync(@Nonnull Class<T> type, @Nonnull Object id) {
+        return findAsync(DefaultJpaSettingsFactory.KEY_DEFAULT, type, id);
+    }
+
+    @Nonnull
+    @Override
+    public <T> CompletableFuture<T> findAsync(@Nonnull String persistenceUnitName, @Nonnull Class<T> type, @Nonnull Object id) {
+        requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
+        requireNonNull(type, ERROR_TYPE_NULL);
+        requireNonNull(id, ERROR_ID_NULL);
+        return batchLoaders.computeIfAbsent(persistenceUnitName, this::createBatchLoader).load(type, id);
+    }
+
+    /**
+     * Batches are loaded on the executor of asynchronous callbacks inside a read-only transaction, thus groups
+     * serve them from a reader.
+     */
+    @Nonnull
+    private BatchLoader createBatchLoader(@Nonnull String persistenceUnitName) {
+        Map<String, Object> config = jpaSettingsFactory.getConfigurationFor(persistenceUnitName);
+        boolean completeOnUIThread = getConfigValueAsBoolean(getConfigValue(config, "async", Collections.<String, Object>emptyMap()), "completeOnUIThread", false);
+        return BatchLoader.of(config, getScheduler(), batch -> loadBatch(persistenceUnitName, config, completeOnUIThread, batch));
+    }
+
+    private <T> void loadBatch(@Nonnull String persistenceUnitName, @Nonnull Map<String, Object> config, boolean completeOnUIThread, @Nonnull BatchLoader.Batch<T> batch) {
+        asyncExecutors.get(persistenceUnitName, config).execute(() -> {
+            if (batch.isClosed()) {
+                // running the query would open the persistence unit again
+                deliver(completeOnUIThread, () -> batch.fail(unitClosed(persistenceUnitName)));
+                return;
+            }
+            try {
+                Map<Object, T> found = execute(persistenceUnitName, TransactionMode.READ_ONLY, (name, entityManager) -> batch.find(entityManager));
+                deliver(completeOnUIThread, () -> batch.complete(found));
+            } catch (Throwable t) {
+                deliver(completeOnUIThread, () -> batch.fail(t));
+            }
+        });
+    }
+
+    @Nonnull
+    private static <T> List<T> getResultList(@Nonnull EntityManager entityManager, @Nonnull String query, @Nonnull Class<T> resultType, @Nonnull Map<String, ?> parameters) {
+        TypedQuery<T> typedQuery = entityManager.createQuery(query, resultType);
+        for (Map.Entry<String, ?> parameter : parameters.entrySet()) {
+            typedQuery.setParameter(parameter.getKey(), parameter.getValue());
+        }
+        return Collections.unmodifiableList(new ArrayList<>(typedQuery.getResultList()));
+    }
+
+    @Override
+    public long persistAll(@Nonnull Iterable<?> entities) {
+        return persistAll(DefaultJpaSettingsFactory.KEY_DEFAULT, entities);
+    }
+
+    @Override
+    @SuppressWarnings("ConstantConditions")
+    public long persistAll(@Nonnull String persistenceUnitName, @Nonnull Iterable<?> entities) {
+        requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
+        Map<String, Object> batch = getConfigValue(jpaSettingsFactory.getConfigurationFor(persistenceUnitName), "batch", Collections.<String, Object>emptyMap());
+        return persistAll(persistenceUnitName, entities,
+            getConfigValueAsInt(batch, "size", DEFAULT_BATCH_SIZE),
+            getConfigValueAsBoolean(batch, "commitEachBatch", false));
+    }
+
+    @Override
+    public long persistAll(@Nonnull String persistenceUnitName, @Nonnull Iterable<?> entities, int batchSize, boolean commitEachBatch) {
+        requireNonNull(entities, ERROR_ENTITIES_NULL);
+        return persistAll(persistenceUnitName, entities.iterator(), batchSize, commitEachBatch);
+    }
+
+    @Override
+    public long persistAll(@Nonnull String persistenceUnitName, @Nonnull Stream<?> entities, int batchSize, boolean commitEachBatch) {
+        requireNonNull(entities, ERROR_ENTITIES_NULL);
+        // the stream may be backed by resources of its own, such as another result stream
+        try (Stream<?> stream = entities) {
+            return persistAll(persistenceUnitName, stream.iterator(), batchSize, commitEachBatch);
+        }
+    }
+
+    private long persistAll(@Nonnull String persistenceUnitName, @Nonnull Iterator<?> entities, int batchSize, boolean commitEachBatch) {
+        requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Argument 'batchSize' must be greater than 0");
+        }
+
+        Long count = execute(persistenceUnitName, TransactionMode.NONE, (name, entityManager) ->
+            doPersistAll(name, entityManager, entities, batchSize, commitEachBatch));
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * Persists entities in chunks of {@code batchSize}, flushing and clearing the persistence context after
+     * every chunk so that memory stays constant regardless of the number of entities. The work joins an active
+     * transaction if there is one, in which case chunks cannot be committed individually.
+     */
+    private long doPersistAll(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull Iterator<?> entities, int batchSize, boolean commitEachBatch) {
+        EntityTransaction transaction = entityManager.getTransaction();
+        boolean joined = transaction.isActive();
+        if (joined && commitEachBatch) {
+            LOG.debug("Joining active transaction on database '{}'; batches will not be committed individually", persistenceUnitName);
+        } else if (!joined) {
+            QueryResultCacheListener.reset();
+            transaction.begin();
+        }
+
+        long count = 0;
+        try {
+            while (entities.hasNext()) {
+                entityManager.persist(entities.next());
+                if (++count % batchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                    if (commitEachBatch && !joined) {
+                        commit(persistenceUnitName, entityManager, transaction);
+                        transaction.begin();
+                    }
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+            if (!joined) {
+                commit(persistenceUnitName, entityManager, transaction);
+            }
+            LOG.debug("Persisted {} entities on database '{}'", count, persistenceUnitName);
+            return count;
+        } catch (RuntimeException | Error e) {
+            if (transaction.isActive()) {
+                if (joined) {
+                    transaction.setRollbackOnly();
+                } else {
+                    try {
+                        transaction.rollback();
+                    } catch (RuntimeException re) {
+                        e.addSuppressed(re);
+                    }
+                }
+            }
+            throw e;
+        }
     }
 
     @Nullable
-    @SuppressWarnings("ThrowFromFinallyBlock")
-    static <R> R doWithConnection(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull EntityManagerCallback<R> callback) {
+    private <R> R execute(@Nonnull String persistenceUnitName, @Nonnull TransactionMode transactionMode, @Nonnull EntityManagerCallback<R> callback) {
+        requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        PersistenceUnitGroup group = jpaSettingsFactory.getPersistenceUnitGroup(persistenceUnitName);
+        if (group != null) {
+            return executeOnGroup(group, transactionMode, callback);
+        }
+
+        Map<String, EntityManager> bound = boundEntityManagers.get();
+        EntityManager entityManager = bound.get(persistenceUnitName);
+        if (entityManager != null) {
+            return doWithConnection(persistenceUnitName, entityManager, true, transactionMode, callback);
+        }
+
+        UnitUsage usage = enterUnit(persistenceUnitName);
+        try {
+            JpaSettings jpaSettings = getJpaSettings(persistenceUnitName);
+            RetryPolicy retryPolicy = transactionMode == TransactionMode.NONE ? RetryPolicy.NONE : getRetryPolicy(persistenceUnitName);
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return executeOnce(persistenceUnitName, jpaSettings, transactionMode, callback, attempt > 1);
+                } catch (RuntimeException e) {
+                    if (!shouldRetry(persistenceUnitName, retryPolicy, attempt, e)) {
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            usage.exit();
+        }
+    }
+
+    @Nullable
+    private <R> R executeOnce(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings, @Nonnull TransactionMode transactionMode, @Nonnull EntityManagerCallback<R> callback, boolean retrying) {
+        Map<String, EntityManager> bound = boundEntityManagers.get();
+        EntityManager entityManager = openEntityManager(persistenceUnitName, jpaSettings);
+        if (retrying) {
+            resetPersistenceContext(jpaSettings, entityManager);
+        }
+        bound.put(persistenceUnitName, entityManager);
+        try {
+            return doWithConnection(persistenceUnitName, entityManager, false, transactionMode, callback);
+        } finally {
+            bound.remove(persistenceUnitName);
+            guardPersistenceContext(persistenceUnitName, jpaSettings, entityManager);
+            releaseEntityManager(persistenceUnitName, jpaSettings, entityManager);
+        }
+    }
+
+    /**
+     * Only the outermost transactional callback is retried, as nested callbacks join a transaction they do not own.
+     * The failed attempt has already been rolled back by the time this method decides whether to run it again.
+     */
+    private boolean shouldRetry(@Nonnull String persistenceUnitName, @Nonnull RetryPolicy retryPolicy, int attempt, @Nonnull RuntimeException failure) {
+        if (retryPolicy.getMaxAttempts() <= 1 || !retryPolicy.isRetryable(failure)) {
+            return false;
+        }
+
+        EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit(persistenceUnitName);
+        if (attempt >= retryPolicy.getMaxAttempts()) {
+            LOG.warn("Giving up on '{}' after {} attempts", persistenceUnitName, attempt);
+            statistics.retriesExhausted();
+            return false;
+        }
+
+        long backoff = retryPolicy.backoff(attempt);
+        LOG.debug("Retrying '{}' in {} ms after attempt {} failed with {}", persistenceUnitName, backoff, attempt, failure.toString());
+        try {
+            TimeUnit.MILLISECONDS.sleep(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.addSuppressed(e);
+            return false;
+        }
+        statistics.retried();
+        return true;
+    }
+
+    /**
+     * Per-call and pooled scopes hand out a clean persistence context already; shared and per-thread ones may still
+     * hold the stale state that made the previous attempt fail.
+     */
+    private static void resetPersistenceContext(@Nonnull JpaSettings jpaSettings, @Nonnull EntityManager entityManager) {
+        switch (jpaSettings.getEntityManagerScope()) {
+            case SHARED:
+            case PER_THREAD:
+                if (entityManager.isOpen() && !entityManager.getTransaction().isActive()) {
+                    entityManager.clear();
+                }
+                break;
+            default:
+                // nothing to reset
+        }
+    }
+
+    @Nonnull
+    private RetryPolicy getRetryPolicy(@Nonnull String persistenceUnitName) {
+        return retryPolicies.computeIfAbsent(persistenceUnitName,
+            k -> RetryPolicy.of(k, jpaSettingsFactory.getConfigurationFor(k)));
+    }
+
+    @Nonnull
+    private StatementInstrumentation getInstrumentation(@Nonnull String persistenceUnitName) {
+        return instrumentations.computeIfAbsent(persistenceUnitName,
+            k -> StatementInstrumentation.of(jpaSettingsFactory.getConfigurationFor(k)));
+    }
+
+    /**
+     * Read-only transactions are served by the readers of the group, falling back to the writer when no reader
+     * is able to serve them. Any other callback is served by the writer.
+     */
+    @Nullable
+    private <R> R executeOnGroup(@Nonnull PersistenceUnitGroup group, @Nonnull TransactionMode transactionMode, @Nonnull EntityManagerCallback<R> callback) {
+        String bound = findBoundMember(group);
+        if (bound != null) {
+            // stay on the same persistence context, this also grants read-your-writes inside a writer callback
+            return execute(bound, transactionMode, callback);
+        }
+        if (transactionMode != TransactionMode.READ_ONLY) {
+            return execute(group.getWriter(), transactionMode, callback);
+        }
+
+        for (String reader : replicaRouter.select(group)) {
+            try {
+                getJpaSettings(reader);
+            } catch (RuntimeException e) {
+                LOG.warn("Reader '{}' of persistence unit group '{}' could not be opened; trying the next one", reader, group.getName(), e);
+                replicaRouter.failed(reader);
+                continue;
+            }
+            try {
+                R result = execute(reader, transactionMode, callback);
+                replicaRouter.succeeded(reader);
+                return result;
+            } catch (RuntimeException e) {
+                if (!isReplicaFailure(e)) {
+                    throw e;
+                }
+                LOG.warn("Reader '{}' of persistence unit group '{}' failed; trying the next one", reader, group.getName(), e);
+                replicaRouter.failed(reader);
+            }
+        }
+        return execute(group.getWriter(), transactionMode, callback);
+    }
+
+    @Nonnull
+    private String resolveReadWriteUnit(@Nonnull String persistenceUnitName) {
+        PersistenceUnitGroup group = jpaSettingsFactory.getPersistenceUnitGroup(persistenceUnitName);
+        if (group == null) {
+            return persistenceUnitName;
+        }
+        String bound = findBoundMember(group);
+        return bound != null ? bound : group.getWriter();
+    }
+
+    @Nonnull
+    private String resolveReadOnlyUnit(@Nonnull String persistenceUnitName) {
+        PersistenceUnitGroup group = jpaSettingsFactory.getPersistenceUnitGroup(persistenceUnitName);
+        if (group == null) {
+            return persistenceUnitName;
+        }
+        String bound = findBoundMember(group);
+        if (bound != null) {
+            return bound;
+        }
+        List<String> readers = replicaRouter.select(group);
+        return readers.isEmpty() ? group.getWriter() : readers.get(0);
+    }
+
+    @Nullable
+    private String findBoundMember(@Nonnull PersistenceUnitGroup group) {
+        Map<String, EntityManager> bound = boundEntityManagers.get();
+        if (bound.isEmpty()) {
+            return null;
+        }
+        if (bound.containsKey(group.getWriter())) {
+            return group.getWriter();
+        }
+        for (String reader : group.getReaders()) {
+            if (bound.containsKey(reader)) {
+                return reader;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Only a lost or refused connection is a reason to switch replicas. Failures of the callback itself, such as
+     * query timeouts, lock timeouts, grammar or constraint errors, would fail on every replica alike.
+     */
+    private static boolean isReplicaFailure(@Nonnull Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLRecoverableException || t instanceof SQLTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String sqlState = ((SQLException) t).getSQLState();
+                if (sqlState != null && sqlState.startsWith(SQL_STATE_CONNECTION_EXCEPTION)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Only outermost callbacks are reported to the handler statistics, so that a call is counted once no matter how
+     * many callbacks it nests and its latency covers the whole unit of work.
+     *
+     * @param nested whether the {@code EntityManager} was bound to the current thread by an enclosing callback.
+     */
+    @Nullable
+    <R> R doWithConnection(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, boolean nested, @Nonnull TransactionMode transactionMode, @Nonnull EntityManagerCallback<R> callback) {
         requireNonBlank(persistenceUnitName, ERROR_DATASBASE_BLANK);
         requireNonNull(entityManager, ERROR_CONNECTION_SOURCE_NULL);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
 
         LOG.debug("Executing statements on database '{}'", persistenceUnitName);
-        return callback.handle(persistenceUnitName, entityManager);
+        EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit(persistenceUnitName);
+        JpaEvents.Recording recording = JpaEvents.beginCallback(persistenceUnitName, callback.getClass(), transactionMode.name());
+        boolean joined = recording.isEnabled() && transactionMode.isTransactional() && entityManager.getTransaction().isActive();
+        StatementInstrumentation instrumentation = getInstrumentation(persistenceUnitName);
+        StatementCounter counter = instrumentation.isEnabled() ? StatementCounter.start(persistenceUnitName) : null;
+        long start = nested ? 0L : statistics.begin();
+        boolean failed = true;
+        try {
+            R result = doWithConnection0(persistenceUnitName, entityManager, nested, transactionMode, callback);
+            failed = false;
+            return result;
+        } finally {
+            if (!nested) {
+                statistics.end(start, failed);
+            }
+            if (recording.isEnabled()) {
+                recording.end(outcomeOf(persistenceUnitName, transactionMode, joined, failed));
+            }
+            if (counter != null) {
+                counter.stop();
+                statementsCounted(persistenceUnitName, callback, instrumentation, counter);
+            }
+        }
+    }
+
+    private void statementsCounted(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<?> callback, @Nonnull StatementInstrumentation instrumentation, @Nonnull StatementCounter counter) {
+        statementStatistics.forUnit(persistenceUnitName).counted(counter.getStatements(), counter.getRows());
+        if (!instrumentation.isExceededBy(counter)) {
+            return;
+        }
+
+        String callbackClass = callback.getClass().getName();
+        String repeatedStatement = counter.getRepeatedStatement();
+        statementStatistics.violation(persistenceUnitName, callbackClass, counter.getStatements(), counter.getRows(), counter.getRepetitions(), repeatedStatement);
+        JpaEvents.statementThresholdExceeded(persistenceUnitName, callback.getClass(), counter.getStatements(), counter.getRows(), counter.getRepetitions(), repeatedStatement);
+        LOG.warn("Callback {} on persistence unit '{}' executed {} statements and fetched {} rows; the most repeated statement ran {} times: {}",
+            callbackClass, persistenceUnitName, counter.getStatements(), counter.getRows(), counter.getRepetitions(), repeatedStatement);
+    }
+
+    @Nonnull
+    private String outcomeOf(@Nonnull String persistenceUnitName, @Nonnull TransactionMode transactionMode, boolean joined, boolean failed) {
+        if (!transactionMode.isTransactional()) {
+            return failed ? "failed" : "none";
+        } else if (joined) {
+            return failed ? "rollbackOnly" : "joined";
+        } else if (failed || (transactionMode == TransactionMode.READ_ONLY && rollsBackReadOnly(persistenceUnitName))) {
+            return "rolledBack";
+        }
+        return "committed";
+    }
+
+    @Nullable
+    private <R> R doWithConnection0(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, boolean nested, @Nonnull TransactionMode transactionMode, @Nonnull EntityManagerCallback<R> callback) {
+        if (!transactionMode.isTransactional()) {
+            return callback.handle(persistenceUnitName, entityManager);
+        }
+
+        EntityTransaction transaction = entityManager.getTransaction();
+        if (transaction.isActive()) {
+            checkTransactionOwner(persistenceUnitName, entityManager, nested);
+            return joinTransaction(persistenceUnitName, entityManager, transaction, transactionMode, callback);
+        }
+        return doInTransaction(persistenceUnitName, entityManager, transaction, transactionMode, callback);
+    }
+
+    @Nullable
+    private <R> R joinTransaction(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull EntityTransaction transaction, @Nonnull TransactionMode transactionMode, @Nonnull EntityManagerCallback<R> callback) {
+        checkJoinable(persistenceUnitName, entityManager, transactionMode);
+
+        LOG.trace("Joining active transaction on database '{}'", persistenceUnitName);
+        try {
+            return callback.handle(persistenceUnitName, entityManager);
+        } catch (RuntimeException | Error e) {
+            if (transaction.isActive()) {
+                transaction.setRollbackOnly();
+            }
+            throw e;
+        }
+    }
+
+    @Nullable
+    private <R> R doInTransaction(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull EntityTransaction transaction, @Nonnull TransactionMode transactionMode, @Nonnull EntityManagerCallback<R> callback) {
+        boolean readOnly = transactionMode == TransactionMode.READ_ONLY;
+        FlushModeType flushMode = entityManager.getFlushMode();
+        Map<String, Object> previousHints = beginTransaction(persistenceUnitName, entityManager, transaction, readOnly, flushMode);
+        try {
+            R result = callback.handle(persistenceUnitName, entityManager);
+            completeTransaction(persistenceUnitName, entityManager, transaction, readOnly);
+            return result;
+        } catch (RuntimeException | Error e) {
+            rollback(transaction, e);
+            throw e;
+        } finally {
+            if (readOnly) {
+                restoreReadOnly(entityManager, flushMode, previousHints);
+            }
+            transactionOwners.remove(entityManager);
+        }
+    }
+
+    /**
+     * An outermost callback finding a transaction in progress shares its {@code EntityManager} with another thread,
+     * as happens with the {@code shared} scope, and must not take part in a transaction it can neither see through
+     * nor complete.
+     */
+    private void checkTransactionOwner(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, boolean nested) {
+        Thread owner = transactionOwners.get(entityManager);
+        if (!nested || (owner != null && owner != Thread.currentThread())) {
+            String ownerName = owner != null ? "thread '" + owner.getName() + "'" : "another caller";
+            throw new IllegalStateException("Cannot join the transaction on persistence unit '" + persistenceUnitName + "' owned by " + ownerName);
+        }
+    }
+
+    private void checkJoinable(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull TransactionMode transactionMode) {
+        if (transactionMode == TransactionMode.READ_WRITE && readOnlyTransactions.get().contains(entityManager)) {
+            throw new IllegalStateException("Cannot join a read-only transaction with a read-write callback on persistence unit '" + persistenceUnitName + "'");
+        }
+    }
+
+    /**
+     * @param flushMode the flush mode of the {@code EntityManager} before the transaction, restored if it fails to begin.
+     *
+     * @return the hints replaced by read-only hints, to be handed back to {@link #restoreReadOnly}.
+     */
+    @Nullable
+    private Map<String, Object> beginTransaction(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull EntityTransaction transaction, boolean readOnly, @Nonnull FlushModeType flushMode) {
+        Map<String, Object> previousHints = null;
+        if (readOnly) {
+            entityManager.setFlushMode(FlushModeType.COMMIT);
+            previousHints = applyReadOnlyHints(persistenceUnitName, entityManager);
+            readOnlyTransactions.get().add(entityManager);
+        } else {
+            QueryResultCacheListener.reset();
+        }
+
+        try {
+            transaction.begin();
+        } catch (RuntimeException | Error e) {
+            if (readOnly) {
+                restoreReadOnly(entityManager, flushMode, previousHints);
+            }
+            throw e;
+        }
+        transactionOwners.put(entityManager, Thread.currentThread());
+        return previousHints;
+    }
+
+    private void completeTransaction(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull EntityTransaction transaction, boolean readOnly) {
+        if (readOnly && rollsBackReadOnly(persistenceUnitName)) {
+            // nothing to write back; rolling back skips flushing and dirty checking altogether
+            transaction.rollback();
+        } else if (readOnly) {
+            transaction.commit();
+        } else if (transaction.getRollbackOnly()) {
+            transaction.rollback();
+            throw new RollbackException("Transaction on persistence unit '" + persistenceUnitName + "' was marked as rollback-only");
+        } else {
+            commit(persistenceUnitName, entityManager, transaction);
+        }
+    }
+
+    /**
+     * Rolling back detaches every entity of the persistence context, which is harmless only when the context is
+     * discarded right after the transaction. Read-only transactions of long-lived contexts are committed instead.
+     */
+    private boolean rollsBackReadOnly(@Nonnull String persistenceUnitName) {
+        JpaSettings jpaSettings = jpaSettingsStorage.get(persistenceUnitName);
+        if (jpaSettings == null) {
+            return true;
+        }
+        switch (jpaSettings.getEntityManagerScope()) {
+            case SHARED:
+            case PER_THREAD:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static void rollback(@Nonnull EntityTransaction transaction, @Nonnull Throwable failure) {
+        if (transaction.isActive()) {
+            try {
+                transaction.rollback();
+            } catch (RuntimeException re) {
+                failure.addSuppressed(re);
+            }
+        }
+    }
+
+    private void restoreReadOnly(@Nonnull EntityManager entityManager, @Nonnull FlushModeType flushMode, @Nullable Map<String, Object> previousHints) {
+        readOnlyTransactions.get().remove(entityManager);
+        restoreHints(entityManager, previousHints);
+        if (entityManager.isOpen()) {
+            entityManager.setFlushMode(flushMode);
+        }
+    }
+
+    private void commit(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull EntityTransaction transaction) {
+        transaction.commit();
+        queryResultCaches.committed(persistenceUnitName, entityManager.getMetamodel(), QueryResultCacheListener.drain());
+    }
+
+    @Nonnull
+    private Map<String, Object> applyReadOnlyHints(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager) {
+        Map<String, Object> hints = readOnlyHints.computeIfAbsent(persistenceUnitName, this::resolveReadOnlyHints);
+        if (hints.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Object> properties = entityManager.getProperties();
+        Map<String, Object> previous = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> hint : hints.entrySet()) {
+            if (properties.containsKey(hint.getKey())) {
+                previous.put(hint.getKey(), properties.get(hint.getKey()));
+            }
+            entityManager.setProperty(hint.getKey(), hint.getValue());
+        }
+        return previous;
+    }
+
+    private void restoreHints(@Nonnull EntityManager entityManager, @Nullable Map<String, Object> previousHints) {
+        if (previousHints == null || previousHints.isEmpty() || !entityManager.isOpen()) {
+            return;
+        }
+        for (Map.Entry<String, Object> hint : previousHints.entrySet()) {
+            entityManager.setProperty(hint.getKey(), hint.getValue());
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    private Map<String, Object> resolveReadOnlyHints(@Nonnull String persistenceUnitName) {
+        Map<String, Object> config = jpaSettingsFactory.getConfigurationFor(persistenceUnitName);
+        Map<String, Object> hints = getConfigValue(config, "readOnlyHints", Collections.<String, Object>emptyMap());
+        return Collections.unmodifiableMap(new LinkedHashMap<>(hints));
     }
 
     @Override
@@ -85,20 +987,437 @@ public class DefaultEntityManagerHandler implements EntityManagerHandler {
 
     @Override
     public void closeEntityManager(@Nonnull String persistenceUnitName) {
+        BatchLoader batchLoader = batchLoaders.remove(persistenceUnitName);
+        if (batchLoader != null) {
+            batchLoader.close(unitClosed(persistenceUnitName));
+        }
+
+        PersistenceUnitGroup group = jpaSettingsFactory.getPersistenceUnitGroup(persistenceUnitName);
+        if (group != null) {
+            // batches of a group run on an executor of its own
+            asyncExecutors.shutdown(persistenceUnitName);
+            closeEntityManager(group.getWriter());
+            for (String reader : group.getReaders()) {
+                closeEntityManager(reader);
+            }
+            return;
+        }
+
         JpaSettings japSettings = jpaSettingsStorage.get(persistenceUnitName);
         if (japSettings != null) {
+            ScheduledFuture<?> evictionTask = evictionTasks.remove(persistenceUnitName);
+            if (evictionTask != null) {
+                evictionTask.cancel(false);
+            }
+            closePerThreadEntityManagers(persistenceUnitName);
+            entityManagerPools.close(persistenceUnitName);
+            readOnlyHints.remove(persistenceUnitName);
+            contextGuards.remove(persistenceUnitName);
+            retryPolicies.remove(persistenceUnitName);
+            instrumentations.remove(persistenceUnitName);
+            asyncExecutors.shutdown(persistenceUnitName);
+            queryResultCaches.remove(persistenceUnitName);
             jpaSettingsFactory.destroy(persistenceUnitName, japSettings);
             jpaSettingsStorage.remove(persistenceUnitName);
         }
     }
 
     @Nonnull
-    private EntityManager getEntityManager(@Nonnull String persistenceUnitName) {
+    private static IllegalStateException unitClosed(@Nonnull String persistenceUnitName) {
+        return new IllegalStateException("Persistence unit '" + persistenceUnitName + "' was closed");
+    }
+
+    @Nonnull
+    private UnitUsage enterUnit(@Nonnull String persistenceUnitName) {
+        UnitUsage usage = unitUsages.computeIfAbsent(persistenceUnitName, UnitUsage::new);
+        usage.enter();
+        return usage;
+    }
+
+    /**
+     * Persistence units with an {@code idleTimeout} are checked periodically and closed once no callback
+     * has used them for that long. They are created again, transparently, on next use.
+     */
+    private void scheduleIdleEviction(@Nonnull String persistenceUnitName) {
+        long idleTimeout = getConfigValue(jpaSettingsFactory.getConfigurationFor(persistenceUnitName), "idleTimeout", (Number) 0L).longValue();
+        if (idleTimeout <= 0) {
+            return;
+        }
+
+        long period = Math.max(100L, idleTimeout / 4);
+        ScheduledFuture<?> evictionTask = getScheduler().scheduleWithFixedDelay(
+            () -> evictIfIdle(persistenceUnitName, TimeUnit.MILLISECONDS.toNanos(idleTimeout)),
+            period, period, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = evictionTasks.put(persistenceUnitName, evictionTask);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    private void evictIfIdle(@Nonnull String persistenceUnitName, long idleTimeout) {
+        UnitUsage usage = unitUsages.get(persistenceUnitName);
+        if (usage == null || !usage.isIdleFor(idleTimeout) || !usage.tryEvict()) {
+            return;
+        }
+
+        try {
+            if (jpaSettingsStorage.get(persistenceUnitName) != null) {
+                LOG.debug("Closing persistence unit '{}' after being idle for {} ms", persistenceUnitName, TimeUnit.NANOSECONDS.toMillis(idleTimeout));
+                closeEntityManager(persistenceUnitName);
+                jpaSettingsStorageStatistics.evicted(persistenceUnitName);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not close idle persistence unit '{}'", persistenceUnitName, e);
+        } finally {
+            usage.evicted();
+        }
+    }
+
+    /**
+     * Stops the background tasks shared by all persistence units. Invoked by the addon once every
+     * persistence unit has been closed on application shutdown.
+     */
+    public void shutdown() {
+        asyncExecutors.shutdown();
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    @Nonnull
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "jpa-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    @Nonnull
+    private JpaSettings getJpaSettings(@Nonnull String persistenceUnitName) {
         JpaSettings japSettings = jpaSettingsStorage.get(persistenceUnitName);
-        if (japSettings == null) {
-            japSettings = jpaSettingsFactory.create(persistenceUnitName);
-            jpaSettingsStorage.set(persistenceUnitName, japSettings);
+        if (japSettings != null) {
+            return japSettings;
+        }
+
+        CompletableFuture<JpaSettings> initialization = new CompletableFuture<>();
+        CompletableFuture<JpaSettings> inProgress = initializations.putIfAbsent(persistenceUnitName, initialization);
+        if (inProgress != null) {
+            return awaitInitialization(persistenceUnitName, inProgress);
+        }
+
+        try {
+            // another caller may have completed the initialization in between
+            japSettings = jpaSettingsStorage.get(persistenceUnitName);
+            if (japSettings == null) {
+                japSettings = jpaSettingsFactory.create(persistenceUnitName);
+                jpaSettingsStorage.set(persistenceUnitName, japSettings);
+                jpaSettingsStorageStatistics.initialized(persistenceUnitName);
+                scheduleIdleEviction(persistenceUnitName);
+            }
+            initialization.complete(japSettings);
+            return japSettings;
+        } catch (RuntimeException | Error e) {
+            initialization.completeExceptionally(e);
+            throw e;
+        } finally {
+            initializations.remove(persistenceUnitName, initialization);
+        }
+    }
+
+    @Nonnull
+    private JpaSettings awaitInitialization(@Nonnull String persistenceUnitName, @Nonnull CompletableFuture<JpaSettings> initialization) {
+        LOG.debug("Waiting for persistence unit '{}' to be initialized", persistenceUnitName);
+        long start = System.nanoTime();
+        try {
+            return initialization.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } finally {
+            jpaSettingsStorageStatistics.waitedForInitialization(persistenceUnitName, System.nanoTime() - start);
+        }
+    }
+
+    @Nonnull
+    private EntityManager openEntityManager(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings) {
+        switch (jpaSettings.getEntityManagerScope()) {
+            case PER_CALL:
+                return jpaSettings.createEntityManager();
+            case PER_THREAD:
+                return getPerThreadEntityManager(persistenceUnitName, jpaSettings);
+            case POOLED:
+                return entityManagerPools.forUnit(persistenceUnitName, jpaSettings).acquire();
+            case SHARED:
+            default:
+                return jpaSettings.getEntityManager();
+        }
+    }
+
+    /**
+     * Shared and per-thread persistence contexts keep every entity they load until cleared. When the guard of the
+     * persistence unit is enabled their size is measured once the outermost callback completes and they are cleared
+     * when crossing the configured threshold, provided no transaction is active on them.
+     */
+    private void guardPersistenceContext(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings, @Nonnull EntityManager entityManager) {
+        switch (jpaSettings.getEntityManagerScope()) {
+            case SHARED:
+            case PER_THREAD:
+                break;
+            default:
+                return;
+        }
+
+        PersistenceContextGuard guard = contextGuards.computeIfAbsent(persistenceUnitName,
+            k -> PersistenceContextGuard.of(jpaSettingsFactory.getConfigurationFor(k)));
+        if (!guard.isEnabled()) {
+            return;
+        }
+
+        try {
+            EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit(persistenceUnitName);
+            int size = PersistenceContexts.sizeOf(entityManager);
+            statistics.contextMeasured(size);
+
+            if (entityManager.isOpen() && guard.shouldClear(entityManager, size) && !entityManager.getTransaction().isActive()) {
+                LOG.debug("Clearing persistence context of '{}' holding {} entities", persistenceUnitName, size);
+                entityManager.clear();
+                guard.cleared(entityManager);
+                statistics.contextCleared();
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not guard the persistence context of '{}'", persistenceUnitName, e);
+        }
+    }
+
+    private void releaseEntityManager(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings, @Nonnull EntityManager entityManager) {
+        switch (jpaSettings.getEntityManagerScope()) {
+            case PER_CALL:
+                if (entityManager.isOpen()) {
+                    entityManager.close();
+                }
+                break;
+            case POOLED:
+                entityManagerPools.release(persistenceUnitName, entityManager);
+                break;
+            default:
+                // shared and per-thread instances outlive the callback
+        }
+    }
+
+    @Nonnull
+    private EntityManager getPerThreadEntityManager(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings) {
+        Map<String, EntityManager> entityManagers = threadEntityManagers.get();
+        EntityManager entityManager = entityManagers.get(persistenceUnitName);
+        if (entityManager == null || !entityManager.isOpen()) {
+            Map<Thread, EntityManager> owned = perThreadEntityManagers.computeIfAbsent(persistenceUnitName, k -> new ConcurrentHashMap<>());
+            closeTerminatedThreadEntityManagers(owned);
+            entityManager = jpaSettings.createEntityManager();
+            entityManagers.put(persistenceUnitName, entityManager);
+            owned.put(Thread.currentThread(), entityManager);
+        }
+        return entityManager;
+    }
+
+    /**
+     * Instances of threads that are gone can no longer be reached, they are closed whenever another thread opens one.
+     */
+    private static void closeTerminatedThreadEntityManagers(@Nonnull Map<Thread, EntityManager> owned) {
+        Iterator<Map.Entry<Thread, EntityManager>> entries = owned.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Thread, EntityManager> entry = entries.next();
+            if (!entry.getKey().isAlive()) {
+                entries.remove();
+                closeQuietly(entry.getValue());
+            }
+        }
+    }
+
+    private static void closeQuietly(@Nonnull EntityManager entityManager) {
+        try {
+            if (entityManager.isOpen()) {
+                entityManager.close();
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not close EntityManager", e);
+        }
+    }
+
+    private void closePerThreadEntityManagers(@Nonnull String persistenceUnitName) {
+        Map<Thread, EntityManager> owned = perThreadEntityManagers.remove(persistenceUnitName);
+        if (owned != null) {
+            for (EntityManager entityManager : owned.values()) {
+                if (entityManager.isOpen()) {
+                    entityManager.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Mirrors the flow of {@link #execute} for transactions whose boundaries are set by the caller.
+     * Instances are confined to the thread that created them.
+     */
+    private final class ProgrammaticTransaction implements EntityManagerTransaction {
+        private final String persistenceUnitName;
+        private final boolean readOnly;
+        private final EntityManager entityManager;
+        private final JpaSettings jpaSettings;
+        private final UnitUsage usage;
+        private final EntityManagerHandlerStatistics.UnitStatistics statistics;
+        private final TransactionMode transactionMode;
+        private EntityTransaction transaction;
+        private JpaEvents.Recording recording;
+        private FlushModeType flushMode;
+        private Map<String, Object> previousHints;
+        private boolean joined;
+        private boolean completed;
+        private long start;
+
+        /**
+         * @param jpaSettings settings of the persistence unit when the {@code EntityManager} is owned by this transaction,
+         *                    {@code null} when it belongs to an enclosing callback.
+         */
+        private ProgrammaticTransaction(@Nonnull String persistenceUnitName, boolean readOnly, @Nonnull EntityManager entityManager, @Nullable JpaSettings jpaSettings, @Nullable UnitUsage usage) {
+            this.persistenceUnitName = persistenceUnitName;
+            this.readOnly = readOnly;
+            this.entityManager = entityManager;
+            this.jpaSettings = jpaSettings;
+            this.usage = usage;
+            this.transactionMode = readOnly ? TransactionMode.READ_ONLY : TransactionMode.READ_WRITE;
+            this.statistics = entityManagerHandlerStatistics.forUnit(persistenceUnitName);
+        }
+
+        private void begin() {
+            LOG.debug("Beginning transaction on database '{}'", persistenceUnitName);
+            transaction = entityManager.getTransaction();
+            joined = transaction.isActive();
+            if (joined) {
+                checkTransactionOwner(persistenceUnitName, entityManager, jpaSettings == null);
+                checkJoinable(persistenceUnitName, entityManager, transactionMode);
+                LOG.trace("Joining active transaction on database '{}'", persistenceUnitName);
+            } else {
+                flushMode = entityManager.getFlushMode();
+                previousHints = beginTransaction(persistenceUnitName, entityManager, transaction, readOnly, flushMode);
+            }
+            recording = JpaEvents.beginCallback(persistenceUnitName, EntityManagerTransaction.class, transactionMode.name());
+            if (jpaSettings != null) {
+                start = statistics.begin();
+            }
+        }
+
+        @Nonnull
+        @Override
+        public String getPersistenceUnitName() {
+            return persistenceUnitName;
+        }
+
+        @Nonnull
+        @Override
+        public EntityManager getEntityManager() {
+            return entityManager;
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            if (!completed && transaction.isActive()) {
+                transaction.setRollbackOnly();
+            }
+        }
+
+        @Override
+        public void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+
+            boolean failed = true;
+            try {
+                if (!joined) {
+                    completeTransaction(persistenceUnitName, entityManager, transaction, readOnly);
+                }
+                failed = false;
+            } catch (RuntimeException | Error e) {
+                rollback(transaction, e);
+                throw e;
+            } finally {
+                finish(failed);
+            }
+        }
+
+        @Override
+        public void fail(@Nonnull Throwable failure) {
+            requireNonNull(failure, "Argument 'failure' must not be null");
+            if (completed) {
+                return;
+            }
+            completed = true;
+
+            try {
+                if (joined) {
+                    if (transaction.isActive()) {
+                        transaction.setRollbackOnly();
+                    }
+                } else {
+                    rollback(transaction, failure);
+                }
+            } finally {
+                finish(true);
+            }
+        }
+
+        private void finish(boolean failed) {
+            try {
+                if (!joined && readOnly) {
+                    restoreReadOnly(entityManager, flushMode, previousHints);
+                }
+            } finally {
+                if (!joined) {
+                    transactionOwners.remove(entityManager);
+                }
+                if (jpaSettings != null) {
+                    statistics.end(start, failed);
+                }
+                if (recording.isEnabled()) {
+                    recording.end(outcomeOf(persistenceUnitName, transactionMode, joined, failed));
+                }
+                release();
+            }
+        }
+
+        private void release() {
+            if (jpaSettings == null) {
+                return;
+            }
+            try {
+                boundEntityManagers.get().remove(persistenceUnitName);
+                guardPersistenceContext(persistenceUnitName, jpaSettings, entityManager);
+                releaseEntityManager(persistenceUnitName, jpaSettings, entityManager);
+            } finally {
+                usage.exit();
+            }
         }
-        return japSettings.getEntityManager();
     }
 }
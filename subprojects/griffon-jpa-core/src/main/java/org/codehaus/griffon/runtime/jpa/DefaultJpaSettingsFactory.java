@@ -18,29 +18,45 @@
 package org.codehaus.griffon.runtime.jpa;
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import griffon.core.Configuration;
+import griffon.core.event.Event;
 import griffon.core.GriffonApplication;
 import griffon.core.injection.Injector;
+import griffon.plugins.jpa.EntityManagerScope;
 import griffon.plugins.jpa.JpaBootstrap;
 import griffon.plugins.jpa.JpaSettings;
 import griffon.plugins.jpa.JpaSettingsFactory;
+import griffon.plugins.jpa.PersistenceUnitGroup;
 import griffon.plugins.jpa.events.JpaConnectEndEvent;
 import griffon.plugins.jpa.events.JpaConnectStartEvent;
 import griffon.plugins.jpa.events.JpaDisconnectEndEvent;
 import griffon.plugins.jpa.events.JpaDisconnectStartEvent;
+import org.codehaus.griffon.runtime.jpa.jfr.JpaEvents;
 import org.codehaus.griffon.runtime.core.storage.AbstractObjectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static griffon.util.GriffonNameUtils.isBlank;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
 
@@ -48,13 +64,27 @@ import static java.util.Objects.requireNonNull;
  * @author Andres Almiray
  */
 public class DefaultJpaSettingsFactory extends AbstractObjectFactory<JpaSettings> implements JpaSettingsFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultJpaSettingsFactory.class);
     private static final String ERROR_PERSISTENCE_UNIT_NAME_BLANK = "Argument 'persistenceUnitName' must not be blank";
 
+    private static final String KEY_PERSISTENCE_UNIT_GROUPS = "persistenceUnitGroups";
+    private static final String KEY_NON_JTA_DATA_SOURCE = "javax.persistence.nonJtaDataSource";
+    private static final String KEY_JDBC_DRIVER = "javax.persistence.jdbc.driver";
+    private static final String KEY_JDBC_URL = "javax.persistence.jdbc.url";
+    private static final String KEY_JDBC_USER = "javax.persistence.jdbc.user";
+    private static final String KEY_JDBC_PASSWORD = "javax.persistence.jdbc.password";
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_FAILURE = "failure";
+
     private final Set<String> persistenceUnitNames = new LinkedHashSet<>();
+    private final Map<String, PersistenceUnitGroup> persistenceUnitGroups = new LinkedHashMap<>();
 
     @Inject
     private Injector injector;
 
+    @Inject
+    private DataSourcePools dataSourcePools;
+
     @Inject
     public DefaultJpaSettingsFactory(@Nonnull @Named("jpa") Configuration configuration, @Nonnull GriffonApplication application) {
         super(configuration, application);
@@ -64,6 +94,13 @@ public class DefaultJpaSettingsFactory extends AbstractObjectFactory<JpaSettings
             Map<String, Object> persistenceUnits = (Map<String, Object>) configuration.get(getPluralKey());
             persistenceUnitNames.addAll(persistenceUnits.keySet());
         }
+
+        if (configuration.containsKey(KEY_PERSISTENCE_UNIT_GROUPS)) {
+            Map<String, Object> groups = (Map<String, Object>) configuration.get(KEY_PERSISTENCE_UNIT_GROUPS);
+            for (Map.Entry<String, Object> group : groups.entrySet()) {
+                persistenceUnitGroups.put(group.getKey(), createPersistenceUnitGroup(group.getKey(), (Map<String, Object>) group.getValue()));
+            }
+        }
     }
 
     @Nonnull
@@ -79,6 +116,49 @@ public class DefaultJpaSettingsFactory extends AbstractObjectFactory<JpaSettings
         return narrowConfig(persistenceUnitName);
     }
 
+    @Nonnull
+    @Override
+    public Set<String> getPersistenceUnitGroupNames() {
+        return Collections.unmodifiableSet(persistenceUnitGroups.keySet());
+    }
+
+    @Nullable
+    @Override
+    public PersistenceUnitGroup getPersistenceUnitGroup(@Nonnull String groupName) {
+        requireNonBlank(groupName, "Argument 'groupName' must not be blank");
+        return persistenceUnitGroups.get(groupName);
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    private PersistenceUnitGroup createPersistenceUnitGroup(@Nonnull String groupName, @Nonnull Map<String, Object> config) {
+        if (persistenceUnitNames.contains(groupName)) {
+            throw new IllegalArgumentException("Persistence unit group '" + groupName + "' clashes with a persistence unit of the same name");
+        }
+        String writer = getConfigValueAsString(config, "writer", null);
+        if (isBlank(writer)) {
+            throw new IllegalArgumentException("Persistence unit group '" + groupName + "' does not define a writer");
+        }
+        warnIfUnknown(groupName, "writer", writer);
+        List<String> readers = new ArrayList<>();
+        Collection<?> names = getConfigValue(config, "readers", Collections.emptyList());
+        for (Object reader : names) {
+            readers.add(String.valueOf(reader));
+            warnIfUnknown(groupName, "reader", String.valueOf(reader));
+        }
+        return new PersistenceUnitGroup(groupName, writer, readers);
+    }
+
+    /**
+     * Members are only checked against the configured persistence units, as units declared solely in
+     * {@code persistence.xml} may still be connected. Callbacks routed to a missing reader fall back to the writer.
+     */
+    private void warnIfUnknown(@Nonnull String groupName, @Nonnull String role, @Nonnull String persistenceUnitName) {
+        if (!persistenceUnitNames.contains(persistenceUnitName)) {
+            LOG.warn("Persistence unit group '{}' names '{}' as a {} but no such persistence unit is configured", groupName, persistenceUnitName, role);
+        }
+    }
+
     @Nonnull
     @Override
     protected String getSingleKey() {
@@ -100,12 +180,35 @@ public class DefaultJpaSettingsFactory extends AbstractObjectFactory<JpaSettings
         event(JpaConnectStartEvent.of(name, config));
 
         JpaSettings jpaSettings = createJpaSettings(config, name);
+        Set<String> staticQueryNames = registerStaticQueries(name, jpaSettings);
+        registerFetchProfiles(name, jpaSettings, config);
+        long warmupTime = warmup(name, jpaSettings, config, staticQueryNames);
 
-        for (Object o : injector.getInstances(JpaBootstrap.class)) {
-            ((JpaBootstrap) o).init(name, jpaSettings.getEntityManager());
-        }
+        boolean initialized = false;
+        EntityManager entityManager = openBootstrapEntityManager(jpaSettings);
+        try {
+            for (Object o : injector.getInstances(JpaBootstrap.class)) {
+                JpaEvents.Recording recording = JpaEvents.beginBootstrap(name, o.getClass(), "init");
+                boolean failed = true;
+                try {
+                    ((JpaBootstrap) o).init(name, entityManager);
+                    failed = false;
+                } finally {
+                    recording.end(failed ? OUTCOME_FAILURE : OUTCOME_SUCCESS);
+                }
+            }
 
-        event(JpaConnectEndEvent.of(name, config, jpaSettings.getEntityManager()));
+            publishEntityManagerEvent(JpaConnectEndEvent.of(name, config, entityManager, warmupTime));
+            initialized = true;
+        } finally {
+            try {
+                closeBootstrapEntityManager(jpaSettings, entityManager);
+            } finally {
+                if (!initialized) {
+                    discard(name, jpaSettings);
+                }
+            }
+        }
 
         return jpaSettings;
     }
@@ -116,26 +219,215 @@ public class DefaultJpaSettingsFactory extends AbstractObjectFactory<JpaSettings
         requireNonNull(instance, "Argument 'instance' must not be null");
         Map<String, Object> config = narrowConfig(name);
 
-        event(JpaDisconnectStartEvent.of(name, config, instance.getEntityManager()));
+        try {
+            EntityManager entityManager = openBootstrapEntityManager(instance);
+            try {
+                publishEntityManagerEvent(JpaDisconnectStartEvent.of(name, config, entityManager));
 
-        for (Object o : injector.getInstances(JpaBootstrap.class)) {
-            ((JpaBootstrap) o).destroy(name, instance.getEntityManager());
+                for (Object o : injector.getInstances(JpaBootstrap.class)) {
+                    JpaEvents.Recording recording = JpaEvents.beginBootstrap(name, o.getClass(), "destroy");
+                    boolean failed = true;
+                    try {
+                        ((JpaBootstrap) o).destroy(name, entityManager);
+                        failed = false;
+                    } finally {
+                        recording.end(failed ? OUTCOME_FAILURE : OUTCOME_SUCCESS);
+                    }
+                }
+            } finally {
+                entityManager.close();
+            }
+        } finally {
+            // the factory and its pool are released even when a disconnect listener or a bootstrap fails
+            closeEntityManagerFactory(name, instance);
         }
 
-        instance.getEntityManager().close();
-        instance.getEntityManagerFactory().close();
-
         event(JpaDisconnectEndEvent.of(name, config));
     }
 
+    private void closeEntityManagerFactory(@Nonnull String name, @Nonnull JpaSettings instance) {
+        JpaEvents.Recording recording = JpaEvents.beginPersistenceUnitDestroy(name);
+        boolean failed = true;
+        try {
+            instance.getEntityManagerFactory().close();
+            failed = false;
+        } finally {
+            dataSourcePools.close(name);
+            recording.end(failed ? OUTCOME_FAILURE : OUTCOME_SUCCESS);
+        }
+    }
+
     @Nonnull
     @SuppressWarnings("ConstantConditions")
     private JpaSettings createJpaSettings(@Nonnull Map<String, Object> config, @Nonnull String name) {
         Map<String, Object> factoryProperties = getConfigValue(config, "factory", Collections.<String, Object>emptyMap());
         Map<String, Object> entityManagerProperties = getConfigValue(config, "entityManager", Collections.<String, Object>emptyMap());
 
-        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(name, factoryProperties);
-        EntityManager entityManager = entityManagerFactory.createEntityManager(entityManagerProperties);
-        return new JpaSettings(entityManagerFactory, entityManager);
+        EntityManagerScope entityManagerScope = EntityManagerScope.of(getConfigValueAsString(config, "entityManagerScope", EntityManagerScope.SHARED.getName()));
+
+        JpaEvents.Recording recording = JpaEvents.beginPersistenceUnitCreate(name, entityManagerScope.getName());
+        EntityManagerFactory entityManagerFactory = null;
+        boolean failed = true;
+        try {
+            Map<String, Object> properties = withDataSource(name, config, withBatchWriting(config, factoryProperties));
+            entityManagerFactory = Persistence.createEntityManagerFactory(name, withInstrumentation(name, config, properties));
+            EntityManager entityManager = null;
+            if (entityManagerScope == EntityManagerScope.SHARED) {
+                entityManager = entityManagerFactory.createEntityManager(entityManagerProperties);
+            }
+            failed = false;
+            return new JpaSettings(entityManagerFactory, entityManager, entityManagerScope, entityManagerProperties);
+        } finally {
+            recording.end(failed ? OUTCOME_FAILURE : OUTCOME_SUCCESS);
+            if (failed) {
+                discard(name, entityManagerFactory);
+            }
+        }
+    }
+
+    @Nonnull
+    private Set<String> registerStaticQueries(@Nonnull String name, @Nonnull JpaSettings jpaSettings) {
+        try {
+            return StaticQueries.register(name, jpaSettings.getEntityManagerFactory(), getClass().getClassLoader());
+        } catch (RuntimeException e) {
+            discard(name, jpaSettings);
+            throw e;
+        }
+    }
+
+    private void registerFetchProfiles(@Nonnull String name, @Nonnull JpaSettings jpaSettings, @Nonnull Map<String, Object> config) {
+        try {
+            EntityGraphs.register(name, jpaSettings.getEntityManagerFactory(), config);
+        } catch (RuntimeException e) {
+            discard(name, jpaSettings);
+            throw e;
+        }
+    }
+
+    private void discard(@Nonnull String name, @Nonnull JpaSettings jpaSettings) {
+        discard(name, jpaSettings.getEntityManagerFactory());
+    }
+
+    private void discard(@Nonnull String name, @Nullable EntityManagerFactory entityManagerFactory) {
+        try {
+            if (entityManagerFactory != null) {
+                entityManagerFactory.close();
+            }
+        } finally {
+            dataSourcePools.close(name);
+        }
+    }
+
+    private long warmup(@Nonnull String name, @Nonnull JpaSettings jpaSettings, @Nonnull Map<String, Object> config, @Nonnull Set<String> staticQueryNames) {
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(Warmups.warmup(name, jpaSettings, config, staticQueryNames));
+        } catch (RuntimeException e) {
+            discard(name, jpaSettings);
+            throw e;
+        }
+    }
+
+    /**
+     * Translates the {@code batch.size} setting into JDBC batch writing properties understood by
+     * EclipseLink and Hibernate. Explicit {@code factory} properties take precedence.
+     */
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    private Map<String, Object> withBatchWriting(@Nonnull Map<String, Object> config, @Nonnull Map<String, Object> factoryProperties) {
+        Map<String, Object> batch = getConfigValue(config, "batch", Collections.<String, Object>emptyMap());
+        int batchSize = getConfigValueAsInt(batch, "size", 0);
+        if (batchSize < 1) {
+            return factoryProperties;
+        }
+
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("eclipselink.jdbc.batch-writing", "JDBC");
+        properties.put("eclipselink.jdbc.batch-writing.size", String.valueOf(batchSize));
+        properties.put("hibernate.jdbc.batch_size", String.valueOf(batchSize));
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+        properties.putAll(factoryProperties);
+        return properties;
+    }
+
+    /**
+     * Hands the pooled {@code DataSource} defined by the {@code dataSource} block of a persistence unit over to the
+     * provider as its non-JTA data source.
+     */
+    @Nonnull
+    private Map<String, Object> withDataSource(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull Map<String, Object> factoryProperties) {
+        Map<String, Object> dataSourceConfig = getConfigValue(config, "dataSource", Collections.<String, Object>emptyMap());
+        if (dataSourceConfig.isEmpty()) {
+            return factoryProperties;
+        }
+        if (factoryProperties.containsKey(KEY_NON_JTA_DATA_SOURCE)) {
+            throw new IllegalArgumentException("Persistence unit '" + name + "' defines both a dataSource block and a " + KEY_NON_JTA_DATA_SOURCE + " factory property");
+        }
+
+        Map<String, Object> properties = new LinkedHashMap<>(factoryProperties);
+        properties.put(KEY_NON_JTA_DATA_SOURCE, dataSourcePools.create(name, config, jdbcProperties(name, factoryProperties)));
+        return properties;
+    }
+
+    /**
+     * Routes the connections of an instrumented persistence unit through a {@code DataSource} that counts statements
+     * and rows. Only a {@code DataSource} set as {@code javax.persistence.nonJtaDataSource}, either by the
+     * {@code dataSource} block or by the {@code factory} block, can be wrapped; connections the provider obtains on its
+     * own, be it from its pool or from a JNDI name, cannot be observed and are not replaced.
+     */
+    @Nonnull
+    private Map<String, Object> withInstrumentation(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull Map<String, Object> factoryProperties) {
+        if (!StatementInstrumentation.of(config).isEnabled()) {
+            return factoryProperties;
+        }
+
+        Object dataSource = factoryProperties.get(KEY_NON_JTA_DATA_SOURCE);
+        if (!(dataSource instanceof DataSource)) {
+            throw new IllegalArgumentException("Persistence unit '" + name + "' is instrumented but does not connect through a DataSource; " +
+                "define a dataSource block or set " + KEY_NON_JTA_DATA_SOURCE + " to a DataSource instance");
+        }
+        Map<String, Object> properties = new LinkedHashMap<>(factoryProperties);
+        properties.put(KEY_NON_JTA_DATA_SOURCE, InstrumentedDataSource.wrap(name, (DataSource) dataSource));
+        return properties;
+    }
+
+    /**
+     * @return the JDBC connection properties of a persistence unit, those of the {@code factory} block taking
+     * precedence over those of {@code persistence.xml}.
+     */
+    @Nonnull
+    private Map<String, String> jdbcProperties(@Nonnull String name, @Nonnull Map<String, Object> factoryProperties) {
+        Map<String, String> properties = new LinkedHashMap<>(PersistenceXml.getProperties(name, getClass().getClassLoader()));
+        for (String key : new String[]{KEY_JDBC_DRIVER, KEY_JDBC_URL, KEY_JDBC_USER, KEY_JDBC_PASSWORD}) {
+            Object value = factoryProperties.get(key);
+            if (value != null) {
+                properties.put(key, String.valueOf(value));
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Events carrying the bootstrap {@code EntityManager} are delivered on the calling thread, thus every listener is
+     * done with it before it is closed, as it is right away for scopes other than {@code SHARED}.
+     */
+    private void publishEntityManagerEvent(@Nonnull Event event) {
+        getApplication().getEventRouter().publishEvent(event);
+    }
+
+    /**
+     * Bootstraps and connection events always receive an {@code EntityManager}. Scopes other than
+     * {@code SHARED} keep no long-lived instance, thus a short-lived one is opened for the occasion.
+     */
+    @Nonnull
+    private EntityManager openBootstrapEntityManager(@Nonnull JpaSettings jpaSettings) {
+        EntityManager entityManager = jpaSettings.getEntityManager();
+        return entityManager != null ? entityManager : jpaSettings.createEntityManager();
+    }
+
+    private void closeBootstrapEntityManager(@Nonnull JpaSettings jpaSettings, @Nonnull EntityManager entityManager) {
+        if (jpaSettings.getEntityManager() != entityManager) {
+            entityManager.close();
+        }
     }
 }
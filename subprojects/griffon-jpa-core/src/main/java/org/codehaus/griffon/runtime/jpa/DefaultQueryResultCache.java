@@ -0,0 +1,236 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jpa.QueryResultCache;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Size and time bounded {@code QueryResultCache}. Entries are kept in least-recently-used order; once the cache
+ * is full a new entry is only admitted if it has been requested more often than the entry it would evict
+ * (TinyLFU admission), which keeps one-off queries from flushing out frequently used results.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DefaultQueryResultCache implements QueryResultCache {
+    private final int maxSize;
+    private final long ttl;
+    private final Map<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of cached queries.
+     * @param ttl     time to live of every entry, in nanoseconds. Non-positive values disable expiration.
+     */
+    public DefaultQueryResultCache(int maxSize, long ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Argument 'maxSize' must be greater than 0");
+        }
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.sketch = new FrequencySketch(maxSize);
+    }
+
+    @Nullable
+    @Override
+    public synchronized List<?> get(@Nonnull Object key) {
+        requireNonNull(key, "Argument 'key' must not be null");
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isExpired(ttl)) {
+            entries.remove(key);
+            evictions.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.results;
+    }
+
+    @Override
+    public synchronized void put(@Nonnull Object key, @Nonnull List<?> results, @Nonnull Set<String> entityNames) {
+        requireNonNull(key, "Argument 'key' must not be null");
+        requireNonNull(results, "Argument 'results' must not be null");
+        requireNonNull(entityNames, "Argument 'entityNames' must not be null");
+
+        if (!entries.containsKey(key) && entries.size() >= maxSize && !makeRoomFor(key)) {
+            return;
+        }
+        entries.put(key, new Entry(results, entityNames));
+    }
+
+    private boolean makeRoomFor(@Nonnull Object key) {
+        Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+        Map.Entry<Object, Entry> victim = iterator.next();
+        if (!victim.getValue().isExpired(ttl) && sketch.frequency(key) <= sketch.frequency(victim.getKey())) {
+            return false;
+        }
+        iterator.remove();
+        evictions.increment();
+        return true;
+    }
+
+    @Override
+    public synchronized void invalidate(@Nonnull Collection<String> entityNames) {
+        requireNonNull(entityNames, "Argument 'entityNames' must not be null");
+        if (entityNames.isEmpty()) {
+            return;
+        }
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            for (String entityName : entityNames) {
+                if (entry.entityNames.contains(entityName)) {
+                    iterator.remove();
+                    invalidations.increment();
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    private static final class Entry {
+        private final List<?> results;
+        private final Set<String> entityNames;
+        private final long created = System.nanoTime();
+
+        private Entry(@Nonnull List<?> results, @Nonnull Set<String> entityNames) {
+            this.results = results;
+            this.entityNames = entityNames;
+        }
+
+        private boolean isExpired(long ttl) {
+            return ttl > 0 && System.nanoTime() - created >= ttl;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4 bit counters. Counters are halved once the number of recorded accesses reaches
+     * ten times the cache size so that the estimate favors recent popularity.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0x5c6b9f8d, 0xc3a5c85c, 0x2127599b};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int maxSize) {
+            int width = Integer.highestOneBit(Math.max(16, maxSize * 2 - 1) << 1);
+            this.table = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = maxSize * 10;
+        }
+
+        private void increment(@Nonnull Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(hash, i);
+                if (table[i][index] < MAX_COUNT) {
+                    table[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                age();
+            }
+        }
+
+        private int frequency(@Nonnull Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, table[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private void age() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >>> 1);
+                }
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int depth) {
+            int h = (hash ^ SEEDS[depth]) * SEEDS[depth];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            return hash ^ (hash >>> 11);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.core.Configuration;
+import griffon.plugins.jpa.EntityManagerCallback;
+import griffon.plugins.jpa.EntityManagerHandler;
+import griffon.plugins.jpa.ShardedEntityManagerHandler;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collector;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DefaultShardedEntityManagerHandler implements ShardedEntityManagerHandler {
+    private static final String KEY_SHARDS = "shards";
+    private static final int DEFAULT_VIRTUAL_NODES = 160;
+    private static final String ERROR_SHARD_GROUP_BLANK = "Argument 'shardGroup' must not be blank";
+    private static final String ERROR_SHARD_KEY_NULL = "Argument 'shardKey' must not be null";
+    private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+
+    private final EntityManagerHandler entityManagerHandler;
+    private final Map<String, ConsistentHashRing> rings = new LinkedHashMap<>();
+    private final Map<String, Map<String, Object>> configs = new LinkedHashMap<>();
+    private final AsyncExecutors asyncExecutors = new AsyncExecutors();
+
+    @Inject
+    @SuppressWarnings("unchecked")
+    public DefaultShardedEntityManagerHandler(@Nonnull @Named("jpa") Configuration configuration, @Nonnull EntityManagerHandler entityManagerHandler) {
+        requireNonNull(configuration, "Argument 'configuration' must not be null");
+        this.entityManagerHandler = requireNonNull(entityManagerHandler, "Argument 'entityManagerHandler' must not be null");
+
+        if (configuration.containsKey(KEY_SHARDS)) {
+            Map<String, Object> shards = (Map<String, Object>) configuration.get(KEY_SHARDS);
+            for (Map.Entry<String, Object> shard : shards.entrySet()) {
+                Map<String, Object> config = (Map<String, Object>) shard.getValue();
+                configs.put(shard.getKey(), config);
+                rings.put(shard.getKey(), createRing(shard.getKey(), config));
+            }
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    private static ConsistentHashRing createRing(@Nonnull String shardGroup, @Nonnull Map<String, Object> config) {
+        List<String> units = new ArrayList<>();
+        Collection<?> names = getConfigValue(config, "units", Collections.emptyList());
+        for (Object name : names) {
+            units.add(String.valueOf(name));
+        }
+        if (units.isEmpty()) {
+            throw new IllegalArgumentException("Shard group '" + shardGroup + "' does not define any units");
+        }
+        return new ConsistentHashRing(units, getConfigValueAsInt(config, "virtualNodes", DEFAULT_VIRTUAL_NODES));
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getShardGroupNames() {
+        return Collections.unmodifiableSet(rings.keySet());
+    }
+
+    @Nonnull
+    @Override
+    public List<String> getShards(@Nonnull String shardGroup) {
+        return getRing(shardGroup).getNodes();
+    }
+
+    @Nonnull
+    @Override
+    public String shardFor(@Nonnull String shardGroup, @Nonnull Object shardKey) {
+        requireNonNull(shardKey, ERROR_SHARD_KEY_NULL);
+        return getRing(shardGroup).nodeFor(shardKey);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withEntityManager(@Nonnull String shardGroup, @Nonnull Object shardKey, @Nonnull EntityManagerCallback<R> callback) {
+        return entityManagerHandler.withEntityManager(shardFor(shardGroup, shardKey), callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String shardGroup, @Nonnull Object shardKey, @Nonnull EntityManagerCallback<R> callback) {
+        return entityManagerHandler.withTransaction(shardFor(shardGroup, shardKey), callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> Map<String, R> withEachShard(@Nonnull String shardGroup, @Nonnull EntityManagerCallback<R> callback) {
+        Map<String, R> results = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<R>> result : scatter(shardGroup, callback).entrySet()) {
+            results.put(result.getKey(), result.getValue().join());
+        }
+        return Collections.unmodifiableMap(results);
+    }
+
+    @Nullable
+    @Override
+    public <R, A> A withEachShard(@Nonnull String shardGroup, @Nonnull EntityManagerCallback<R> callback, @Nonnull Collector<? super R, ?, A> collector) {
+        requireNonNull(collector, "Argument 'collector' must not be null");
+        return withEachShard(shardGroup, callback).values().stream().collect(collector);
+    }
+
+    /**
+     * Stops the executors used to reach every shard in parallel. Invoked by the addon on application shutdown.
+     */
+    public void shutdown() {
+        asyncExecutors.shutdown();
+    }
+
+    /**
+     * Submits the callback to every shard and waits for all of them, reporting the first failure with
+     * the remaining ones attached as suppressed exceptions.
+     */
+    @Nonnull
+    private <R> Map<String, CompletableFuture<R>> scatter(@Nonnull String shardGroup, @Nonnull EntityManagerCallback<R> callback) {
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        List<String> shards = getShards(shardGroup);
+        ExecutorService executorService = asyncExecutors.get(shardGroup, configs.get(shardGroup));
+
+        Map<String, CompletableFuture<R>> futures = new LinkedHashMap<>();
+        for (String shard : shards) {
+            futures.put(shard, CompletableFuture.supplyAsync(() -> entityManagerHandler.withEntityManager(shard, callback), executorService));
+        }
+
+        RuntimeException failure = null;
+        for (CompletableFuture<R> future : futures.values()) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                if (failure == null) {
+                    failure = cause instanceof RuntimeException ? (RuntimeException) cause : e;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return futures;
+    }
+
+    @Nonnull
+    private ConsistentHashRing getRing(@Nonnull String shardGroup) {
+        requireNonBlank(shardGroup, ERROR_SHARD_GROUP_BLANK);
+        ConsistentHashRing ring = rings.get(shardGroup);
+        if (ring == null) {
+            throw new IllegalArgumentException("Unknown shard group '" + shardGroup + "'");
+        }
+        return ring;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetConcurrency;
+import org.eclipse.persistence.config.ResultSetType;
+import org.eclipse.persistence.jpa.JpaQuery;
+import org.eclipse.persistence.queries.ScrollableCursor;
+
+import javax.persistence.TypedQuery;
+import java.util.Iterator;
+
+/**
+ * Iterates the results of an EclipseLink query through a forward only {@code ScrollableCursor}, reading rows from
+ * the JDBC {@code ResultSet} as they are requested. This is the only class referring to EclipseLink, thus it must
+ * not be loaded unless EclipseLink is available.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class EclipseLinkCursor<T> implements Iterator<T>, AutoCloseable {
+    private final ScrollableCursor cursor;
+
+    private EclipseLinkCursor(@Nonnull ScrollableCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    static boolean supports(@Nonnull TypedQuery<?> query) {
+        return query instanceof JpaQuery;
+    }
+
+    @Nonnull
+    static <T> EclipseLinkCursor<T> open(@Nonnull TypedQuery<T> query) {
+        query.setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE);
+        query.setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly);
+        query.setHint(QueryHints.RESULT_SET_CONCURRENCY, ResultSetConcurrency.ReadOnly);
+        // a cursor query yields the cursor itself as its single result
+        Object cursor = query.getSingleResult();
+        return new EclipseLinkCursor<>((ScrollableCursor) cursor);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !cursor.isClosed() && cursor.hasNext();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        return (T) cursor.next();
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.persistence.Subgraph;
+import javax.persistence.metamodel.EntityType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.GriffonNameUtils.isBlank;
+
+/**
+ * Turns the fetch profiles declared by the {@code fetchProfiles} block of a persistence unit into named
+ * {@code EntityGraph}s. Each profile names an {@code entity}, either by class or entity name, and the attribute paths
+ * to be fetched with it; paths are dot separated, every segment but the last one being an association.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class EntityGraphs {
+    private static final Logger LOG = LoggerFactory.getLogger(EntityGraphs.class);
+
+    private EntityGraphs() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the number of entity graphs registered.
+     * @throws PersistenceException if a profile refers to an unknown entity or attribute.
+     */
+    @SuppressWarnings({"unchecked", "ConstantConditions"})
+    static int register(@Nonnull String persistenceUnitName, @Nonnull EntityManagerFactory entityManagerFactory, @Nonnull Map<String, Object> config) {
+        Map<String, Object> profiles = getConfigValue(config, "fetchProfiles", Collections.<String, Object>emptyMap());
+        if (profiles.isEmpty()) {
+            return 0;
+        }
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            for (Map.Entry<String, Object> profile : profiles.entrySet()) {
+                String name = profile.getKey();
+                try {
+                    Map<String, Object> settings = (Map<String, Object>) profile.getValue();
+                    Object entity = getConfigValue(settings, "entity", (Object) "");
+                    EntityType<?> entityType = resolveEntity(entityManagerFactory, entity instanceof Class ? ((Class<?>) entity).getName() : String.valueOf(entity));
+                    Collection<?> attributes = getConfigValue(settings, "attributes", Collections.emptyList());
+                    entityManagerFactory.addNamedEntityGraph(name, createEntityGraph(entityManager, entityType, attributes));
+                } catch (RuntimeException e) {
+                    throw new PersistenceException("Could not register fetch profile '" + name + "' on persistence unit '" + persistenceUnitName + "'", e);
+                }
+            }
+        } finally {
+            entityManager.close();
+        }
+
+        LOG.debug("Registered {} fetch profiles on persistence unit '{}'", profiles.size(), persistenceUnitName);
+        return profiles.size();
+    }
+
+    @Nonnull
+    private static EntityType<?> resolveEntity(@Nonnull EntityManagerFactory entityManagerFactory, @Nonnull String entity) {
+        if (isBlank(entity)) {
+            throw new IllegalArgumentException("No entity was given");
+        }
+        for (EntityType<?> entityType : entityManagerFactory.getMetamodel().getEntities()) {
+            if (entity.equals(entityType.getName()) || entity.equals(entityType.getJavaType().getName())) {
+                return entityType;
+            }
+        }
+        throw new IllegalArgumentException("Unknown entity '" + entity + "'");
+    }
+
+    @Nonnull
+    private static <T> EntityGraph<T> createEntityGraph(@Nonnull EntityManager entityManager, @Nonnull EntityType<T> entityType, @Nonnull Collection<?> attributes) {
+        Set<String> paths = new LinkedHashSet<>();
+        for (Object attribute : attributes) {
+            paths.add(String.valueOf(attribute));
+        }
+        // an association reached by a longer path is already part of the graph through its subgraph
+        Set<String> associations = new HashSet<>();
+        for (String path : paths) {
+            for (int i = path.indexOf('.'); i > 0; i = path.indexOf('.', i + 1)) {
+                associations.add(path.substring(0, i));
+            }
+        }
+
+        EntityGraph<T> entityGraph = entityManager.createEntityGraph(entityType.getJavaType());
+        Map<String, Subgraph<?>> subgraphs = new HashMap<>();
+        for (String path : paths) {
+            if (associations.contains(path)) {
+                continue;
+            }
+            Subgraph<?> parent = null;
+            String[] segments = path.split("\\.");
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (i == segments.length - 1) {
+                    if (parent == null) {
+                        entityGraph.addAttributeNodes(segment);
+                    } else {
+                        parent.addAttributeNodes(segment);
+                    }
+                } else {
+                    String prefix = String.join(".", Arrays.copyOfRange(segments, 0, i + 1));
+                    Subgraph<?> subgraph = subgraphs.get(prefix);
+                    if (subgraph == null) {
+                        subgraph = parent == null ? entityGraph.addSubgraph(segment) : parent.addSubgraph(segment);
+                        subgraphs.put(prefix, subgraph);
+                    }
+                    parent = subgraph;
+                }
+            }
+        }
+        return entityGraph;
+    }
+}
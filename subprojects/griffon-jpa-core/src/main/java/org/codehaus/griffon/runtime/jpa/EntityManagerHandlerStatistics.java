@@ -0,0 +1,196 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Per persistence unit statistics of the callbacks executed by {@code EntityManagerHandler}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class EntityManagerHandlerStatistics {
+    private static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+    private final Map<String, UnitStatistics> units = new ConcurrentHashMap<>();
+
+    @Nonnull
+    public UnitStatistics forUnit(@Nonnull String persistenceUnitName) {
+        UnitStatistics statistics = units.get(persistenceUnitName);
+        if (statistics == null) {
+            requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+            statistics = units.computeIfAbsent(persistenceUnitName, k -> new UnitStatistics());
+        }
+        return statistics;
+    }
+
+    @Nonnull
+    public <T> Map<String, T> collect(@Nonnull Function<UnitStatistics, T> metric) {
+        requireNonNull(metric, "Argument 'metric' must not be null");
+        Map<String, T> values = new LinkedHashMap<>();
+        for (Map.Entry<String, UnitStatistics> entry : units.entrySet()) {
+            values.put(entry.getKey(), metric.apply(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    public void reset() {
+        for (UnitStatistics statistics : units.values()) {
+            statistics.reset();
+        }
+    }
+
+    public static final class UnitStatistics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        private final LongAdder windowCalls = new LongAdder();
+        private final LongAdder contextClears = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder exhaustedRetries = new LongAdder();
+        private volatile double callsPerSecond;
+        private volatile int contextSize = -1;
+
+        /**
+         * Marks the start of a callback.
+         *
+         * @return a timestamp to be handed back to {@link #end(long, boolean)}.
+         */
+        public long begin() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        public void end(long start, boolean failed) {
+            long now = System.nanoTime();
+            inFlight.decrementAndGet();
+            calls.increment();
+            if (failed) {
+                errors.increment();
+            }
+            latency.record(now - start);
+            windowCalls.increment();
+            roll(now);
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        @Nonnull
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return the number of completed callbacks per second measured over the last complete window of 10 seconds.
+         */
+        public double getCallsPerSecond() {
+            roll(System.nanoTime());
+            return callsPerSecond;
+        }
+
+        /**
+         * Records the number of entities managed by the persistence context once a callback completes.
+         */
+        public void contextMeasured(int size) {
+            contextSize = size;
+        }
+
+        public void contextCleared() {
+            contextClears.increment();
+            contextSize = 0;
+        }
+
+        /**
+         * @return the number of managed entities last measured, {@code -1} if it could not be measured.
+         */
+        public int getContextSize() {
+            return contextSize;
+        }
+
+        public long getContextClears() {
+            return contextClears.sum();
+        }
+
+        /**
+         * Records a failed attempt of a transactional callback that is about to be run again.
+         */
+        public void retried() {
+            retries.increment();
+        }
+
+        /**
+         * Records a transactional callback that kept failing after its last allowed attempt.
+         */
+        public void retriesExhausted() {
+            exhaustedRetries.increment();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getExhaustedRetries() {
+            return exhaustedRetries.sum();
+        }
+
+        public void reset() {
+            calls.reset();
+            contextClears.reset();
+            errors.reset();
+            exhaustedRetries.reset();
+            latency.reset();
+            retries.reset();
+            windowCalls.reset();
+            windowStart.set(System.nanoTime());
+            callsPerSecond = 0d;
+        }
+
+        private void roll(long now) {
+            long start = windowStart.get();
+            long elapsed = now - start;
+            if (elapsed >= RATE_WINDOW && windowStart.compareAndSet(start, now)) {
+                callsPerSecond = windowCalls.sumThenReset() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded pool of {@code EntityManager}s for a single persistence unit. At most {@code maxSize} instances are
+ * leased at any given time; additional callers wait up to {@code acquireTimeout} for one to be returned.
+ * Returned instances are cleared and reused most-recently-returned first, instances left idle for longer than
+ * {@code idleTimeout} are closed whenever the pool is used.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class EntityManagerPool {
+    private static final Logger LOG = LoggerFactory.getLogger(EntityManagerPool.class);
+
+    private final String persistenceUnitName;
+    private final Supplier<EntityManager> entityManagerFactory;
+    private final int maxSize;
+    private final long acquireTimeout;
+    private final long idleTimeout;
+    private final Semaphore permits;
+    private final Deque<IdleEntityManager> idle = new ArrayDeque<>();
+    private final Set<EntityManager> leased = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitTime = new LongAdder();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param persistenceUnitName  the name of the persistence unit.
+     * @param entityManagerFactory creates new instances on demand.
+     * @param maxSize              the maximum number of instances.
+     * @param acquireTimeout       maximum time to wait for an instance, in milliseconds.
+     * @param idleTimeout          time after which an unused instance is closed, in milliseconds. Non-positive values keep instances forever.
+     */
+    public EntityManagerPool(@Nonnull String persistenceUnitName, @Nonnull Supplier<EntityManager> entityManagerFactory, int maxSize, long acquireTimeout, long idleTimeout) {
+        this.persistenceUnitName = requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+        this.entityManagerFactory = requireNonNull(entityManagerFactory, "Argument 'entityManagerFactory' must not be null");
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Argument 'maxSize' must be greater than 0");
+        }
+        this.maxSize = maxSize;
+        this.acquireTimeout = acquireTimeout;
+        this.idleTimeout = idleTimeout;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    @Nonnull
+    public EntityManager acquire() {
+        if (closed) {
+            throw new IllegalStateException("EntityManager pool for persistence unit '" + persistenceUnitName + "' is closed");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new PersistenceException("Timed out after " + acquireTimeout + " ms waiting for an EntityManager of persistence unit '" + persistenceUnitName + "'");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PersistenceException("Interrupted while waiting for an EntityManager of persistence unit '" + persistenceUnitName + "'", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            EntityManager entityManager = pollIdle();
+            if (entityManager == null) {
+                entityManager = entityManagerFactory.get();
+                size.incrementAndGet();
+            }
+            leased.add(entityManager);
+            return entityManager;
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void release(@Nonnull EntityManager entityManager) {
+        requireNonNull(entityManager, "Argument 'entityManager' must not be null");
+        if (!leased.remove(entityManager)) {
+            // not leased from this pool, e.g. the persistence unit was closed and reopened meanwhile
+            if (entityManager.isOpen()) {
+                entityManager.close();
+            }
+            return;
+        }
+
+        try {
+            if (!closed && reset(entityManager)) {
+                synchronized (idle) {
+                    idle.push(new IdleEntityManager(entityManager));
+                }
+            } else {
+                discard(entityManager);
+            }
+            evictIdle();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes all idle instances. Leased instances are closed as soon as they are returned.
+     */
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            while (!idle.isEmpty()) {
+                discard(idle.poll().entityManager);
+            }
+        }
+    }
+
+    /**
+     * Closes every instance that has been idle for longer than {@code idleTimeout}.
+     */
+    public void evictIdle() {
+        if (idleTimeout <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        synchronized (idle) {
+            // the oldest instances sit at the tail
+            while (!idle.isEmpty() && now - idle.peekLast().since >= timeout) {
+                discard(idle.pollLast().entityManager);
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdle() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public int getLeased() {
+        return leased.size();
+    }
+
+    public int getWaiters() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return total time spent waiting for an instance, in nanoseconds.
+     */
+    public long getWaitTime() {
+        return waitTime.sum();
+    }
+
+    /**
+     * @return the longest time spent waiting for an instance, in nanoseconds.
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    private EntityManager pollIdle() {
+        synchronized (idle) {
+            while (!idle.isEmpty()) {
+                EntityManager entityManager = idle.pop().entityManager;
+                if (entityManager.isOpen()) {
+                    return entityManager;
+                }
+                size.decrementAndGet();
+            }
+        }
+        return null;
+    }
+
+    private void recordWait(long nanos) {
+        acquisitions.increment();
+        waitTime.add(nanos);
+        long max = maxWaitTime.get();
+        while (nanos > max && !maxWaitTime.compareAndSet(max, nanos)) {
+            max = maxWaitTime.get();
+        }
+    }
+
+    private boolean reset(@Nonnull EntityManager entityManager) {
+        if (!entityManager.isOpen()) {
+            return false;
+        }
+        try {
+            EntityTransaction transaction = entityManager.getTransaction();
+            if (transaction.isActive()) {
+                LOG.warn("Rolling back transaction left open on pooled EntityManager of persistence unit '{}'", persistenceUnitName);
+                transaction.rollback();
+            }
+            entityManager.clear();
+            return true;
+        } catch (RuntimeException e) {
+            LOG.warn("Discarding pooled EntityManager of persistence unit '{}'", persistenceUnitName, e);
+            return false;
+        }
+    }
+
+    private void discard(@Nonnull EntityManager entityManager) {
+        size.decrementAndGet();
+        try {
+            if (entityManager.isOpen()) {
+                entityManager.close();
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Could not close pooled EntityManager of persistence unit '{}'", persistenceUnitName, e);
+        }
+    }
+
+    private static final class IdleEntityManager {
+        private final EntityManager entityManager;
+        private final long since = System.nanoTime();
+
+        private IdleEntityManager(@Nonnull EntityManager entityManager) {
+            this.entityManager = entityManager;
+        }
+    }
+}
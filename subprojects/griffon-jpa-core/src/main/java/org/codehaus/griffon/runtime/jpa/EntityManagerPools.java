@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.jpa.JpaSettings;
+import griffon.plugins.jpa.JpaSettingsFactory;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the {@code EntityManagerPool} of every persistence unit whose {@code entityManagerScope} is {@code pooled}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class EntityManagerPools {
+    private static final long DEFAULT_ACQUIRE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private final JpaSettingsFactory jpaSettingsFactory;
+    private final Map<String, EntityManagerPool> pools = new ConcurrentHashMap<>();
+
+    @Inject
+    public EntityManagerPools(@Nonnull JpaSettingsFactory jpaSettingsFactory) {
+        this.jpaSettingsFactory = requireNonNull(jpaSettingsFactory, "Argument 'jpaSettingsFactory' must not be null");
+    }
+
+    @Nonnull
+    public EntityManagerPool forUnit(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings) {
+        EntityManagerPool pool = pools.get(persistenceUnitName);
+        if (pool == null) {
+            requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+            requireNonNull(jpaSettings, "Argument 'jpaSettings' must not be null");
+            pool = pools.computeIfAbsent(persistenceUnitName, k -> createPool(k, jpaSettings));
+        }
+        return pool;
+    }
+
+    /**
+     * Returns a leased instance to the pool it came from. The instance is closed if the pool is gone already.
+     */
+    public void release(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager) {
+        requireNonNull(entityManager, "Argument 'entityManager' must not be null");
+        EntityManagerPool pool = pools.get(persistenceUnitName);
+        if (pool != null) {
+            pool.release(entityManager);
+        } else if (entityManager.isOpen()) {
+            entityManager.close();
+        }
+    }
+
+    public void close(@Nonnull String persistenceUnitName) {
+        EntityManagerPool pool = pools.remove(persistenceUnitName);
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    public void evictIdle() {
+        for (EntityManagerPool pool : pools.values()) {
+            pool.evictIdle();
+        }
+    }
+
+    @Nonnull
+    public <T> Map<String, T> collect(@Nonnull Function<EntityManagerPool, T> metric) {
+        requireNonNull(metric, "Argument 'metric' must not be null");
+        Map<String, T> values = new LinkedHashMap<>();
+        for (Map.Entry<String, EntityManagerPool> entry : pools.entrySet()) {
+            values.put(entry.getKey(), metric.apply(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    private EntityManagerPool createPool(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings) {
+        Map<String, Object> config = getConfigValue(jpaSettingsFactory.getConfigurationFor(persistenceUnitName), "pool", Collections.<String, Object>emptyMap());
+        int maxSize = getConfigValueAsInt(config, "maxSize", Math.max(4, Runtime.getRuntime().availableProcessors()));
+        long acquireTimeout = getConfigValue(config, "acquireTimeout", (Number) DEFAULT_ACQUIRE_TIMEOUT).longValue();
+        long idleTimeout = getConfigValue(config, "idleTimeout", (Number) DEFAULT_IDLE_TIMEOUT).longValue();
+        return new EntityManagerPool(persistenceUnitName, jpaSettings::createEntityManager, maxSize, acquireTimeout, idleTimeout);
+    }
+}
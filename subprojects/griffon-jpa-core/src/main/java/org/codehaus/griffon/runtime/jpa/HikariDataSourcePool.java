@@ -0,0 +1,144 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import griffon.annotations.core.Nonnull;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static griffon.util.GriffonNameUtils.isBlank;
+
+/**
+ * A {@code DataSourcePool} backed by HikariCP. This is the only class referring to HikariCP, thus it must not be
+ * loaded unless HikariCP is available.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class HikariDataSourcePool implements DataSourcePool {
+    private static final int DEFAULT_MAXIMUM_POOL_SIZE = 10;
+    private static final long DEFAULT_CONNECTION_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+    private static final long DEFAULT_MAX_LIFETIME = TimeUnit.MINUTES.toMillis(30);
+    private static final long DEFAULT_VALIDATION_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    private final HikariDataSource dataSource;
+
+    private HikariDataSourcePool(@Nonnull HikariDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    static DataSourcePool create(@Nonnull String persistenceUnitName, @Nonnull Map<String, Object> dataSource, @Nonnull Map<String, String> jdbcProperties) {
+        String url = getConfigValueAsString(dataSource, "url", jdbcProperties.get("javax.persistence.jdbc.url"));
+        if (isBlank(url)) {
+            throw new IllegalArgumentException("The dataSource of persistence unit '" + persistenceUnitName + "' does not define a url");
+        }
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("griffon-jpa-" + persistenceUnitName);
+        hikariConfig.setJdbcUrl(url);
+        String driverClassName = getConfigValueAsString(dataSource, "driverClassName", jdbcProperties.get("javax.persistence.jdbc.driver"));
+        if (!isBlank(driverClassName)) {
+            hikariConfig.setDriverClassName(driverClassName);
+        }
+        hikariConfig.setUsername(getConfigValueAsString(dataSource, "username", jdbcProperties.get("javax.persistence.jdbc.user")));
+        hikariConfig.setPassword(getConfigValueAsString(dataSource, "password", jdbcProperties.get("javax.persistence.jdbc.password")));
+
+        Map<String, Object> pool = getConfigValue(dataSource, "pool", Collections.<String, Object>emptyMap());
+        int maximumPoolSize = getConfigValueAsInt(pool, "maximumPoolSize", DEFAULT_MAXIMUM_POOL_SIZE);
+        hikariConfig.setMaximumPoolSize(maximumPoolSize);
+        hikariConfig.setMinimumIdle(getConfigValueAsInt(pool, "minimumIdle", maximumPoolSize));
+        hikariConfig.setConnectionTimeout(getConfigValue(pool, "connectionTimeout", (Number) DEFAULT_CONNECTION_TIMEOUT).longValue());
+        hikariConfig.setIdleTimeout(getConfigValue(pool, "idleTimeout", (Number) DEFAULT_IDLE_TIMEOUT).longValue());
+        hikariConfig.setMaxLifetime(getConfigValue(pool, "maxLifetime", (Number) DEFAULT_MAX_LIFETIME).longValue());
+        hikariConfig.setValidationTimeout(getConfigValue(pool, "validationTimeout", (Number) DEFAULT_VALIDATION_TIMEOUT).longValue());
+        hikariConfig.setLeakDetectionThreshold(getConfigValue(pool, "leakDetectionThreshold", (Number) 0L).longValue());
+        String connectionTestQuery = getConfigValueAsString(pool, "connectionTestQuery", null);
+        if (!isBlank(connectionTestQuery)) {
+            hikariConfig.setConnectionTestQuery(connectionTestQuery);
+        }
+
+        Map<String, Object> properties = getConfigValue(dataSource, "properties", Collections.<String, Object>emptyMap());
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            hikariConfig.addDataSourceProperty(property.getKey(), property.getValue());
+        }
+
+        return new HikariDataSourcePool(new HikariDataSource(hikariConfig));
+    }
+
+    @Nonnull
+    @Override
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public int getMaxSize() {
+        return dataSource.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getSize() {
+        return metric(HikariPoolMXBean::getTotalConnections);
+    }
+
+    @Override
+    public int getIdle() {
+        return metric(HikariPoolMXBean::getIdleConnections);
+    }
+
+    @Override
+    public int getActive() {
+        return metric(HikariPoolMXBean::getActiveConnections);
+    }
+
+    @Override
+    public int getWaiters() {
+        return metric(HikariPoolMXBean::getThreadsAwaitingConnection);
+    }
+
+    @Override
+    public void softEvictConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            pool.softEvictConnections();
+        }
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    private int metric(@Nonnull ToIntFunction<HikariPoolMXBean> metric) {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool != null ? metric.applyAsInt(pool) : 0;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Wraps a {@code DataSource} so that statements executed and rows fetched through its connections are reported to
+ * the {@code StatementCounter} of the persistence unit. Wrappers are dynamic proxies, thus every other JDBC call is
+ * passed through untouched.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class InstrumentedDataSource {
+    private InstrumentedDataSource() {
+        // prevent instantiation
+    }
+
+    @Nonnull
+    static DataSource wrap(@Nonnull String persistenceUnitName, @Nonnull DataSource dataSource) {
+        requireNonNull(dataSource, "Argument 'dataSource' must not be null");
+        return proxy(DataSource.class, dataSource, (proxy, method, args) -> {
+            Object result = invoke(dataSource, method, args);
+            return result instanceof Connection && "getConnection".equals(method.getName()) ?
+                wrap(persistenceUnitName, (Connection) result) : result;
+        });
+    }
+
+    @Nonnull
+    private static Connection wrap(@Nonnull String persistenceUnitName, @Nonnull Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof CallableStatement && "prepareCall".equals(method.getName())) {
+                return wrap(persistenceUnitName, CallableStatement.class, (Statement) result, (String) args[0]);
+            } else if (result instanceof PreparedStatement && "prepareStatement".equals(method.getName())) {
+                return wrap(persistenceUnitName, PreparedStatement.class, (Statement) result, (String) args[0]);
+            } else if (result instanceof Statement && "createStatement".equals(method.getName())) {
+                return wrap(persistenceUnitName, Statement.class, (Statement) result, null);
+            }
+            return result;
+        });
+    }
+
+    @Nonnull
+    private static <S extends Statement> S wrap(@Nonnull String persistenceUnitName, @Nonnull Class<S> type, @Nonnull Statement statement, @Nullable String preparedSql) {
+        return proxy(type, statement, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                // plain statements receive their SQL on execution
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                StatementCounter.statementExecuted(persistenceUnitName, sql);
+            }
+            Object result = invoke(statement, method, args);
+            if (result instanceof ResultSet && ("executeQuery".equals(name) || "getResultSet".equals(name))) {
+                return wrap(persistenceUnitName, (ResultSet) result);
+            }
+            return result;
+        });
+    }
+
+    @Nonnull
+    private static ResultSet wrap(@Nonnull String persistenceUnitName, @Nonnull ResultSet resultSet) {
+        return proxy(ResultSet.class, resultSet, (proxy, method, args) -> {
+            Object result = invoke(resultSet, method, args);
+            if (Boolean.TRUE.equals(result) && "next".equals(method.getName())) {
+                StatementCounter.rowFetched(persistenceUnitName);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Creates a proxy that hands JDBC calls to the given handler. Methods declared by {@code Object} are answered by the
+     * proxy itself, so that a wrapper is equal to itself only and is not mistaken for the instance it wraps.
+     */
+    @Nonnull
+    private static <T> T proxy(@Nonnull Class<T> type, @Nonnull Object target, @Nonnull InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Instrumented" + type.getSimpleName() + "[" + target + "]";
+                    default:
+                        return invoke(target, method, args);
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        }));
+    }
+
+    @Nullable
+    private static Object invoke(@Nonnull Object target, @Nonnull Method method, @Nullable Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
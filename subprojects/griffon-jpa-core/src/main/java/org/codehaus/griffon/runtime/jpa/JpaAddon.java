@@ -18,6 +18,7 @@
 package org.codehaus.griffon.runtime.jpa;
 
 import griffon.annotations.core.Nonnull;
+import griffon.core.Configuration;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
 import griffon.core.events.StartupStartEvent;
@@ -25,15 +26,34 @@ import griffon.plugins.jpa.EntityManagerCallback;
 import griffon.plugins.jpa.EntityManagerHandler;
 import griffon.plugins.jpa.JpaSettingsFactory;
 import griffon.plugins.jpa.JpaSettingsStorage;
+import griffon.plugins.jpa.ShardedEntityManagerHandler;
 import griffon.plugins.monitor.MBeanManager;
 import org.codehaus.griffon.runtime.core.addon.AbstractGriffonAddon;
+import org.codehaus.griffon.runtime.jpa.monitor.DataSourcePoolMonitor;
+import org.codehaus.griffon.runtime.jpa.monitor.EntityManagerHandlerMonitor;
+import org.codehaus.griffon.runtime.jpa.monitor.EntityManagerPoolMonitor;
 import org.codehaus.griffon.runtime.jpa.monitor.JpaSettingsStorageMonitor;
+import org.codehaus.griffon.runtime.jpa.monitor.QueryResultCacheMonitor;
+import org.codehaus.griffon.runtime.jpa.monitor.StatementMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.application.event.EventHandler;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 
@@ -42,15 +62,46 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
  */
 @Named("jpa")
 public class JpaAddon extends AbstractGriffonAddon {
+    private static final Logger LOG = LoggerFactory.getLogger(JpaAddon.class);
+    private static final String KEY_CONNECT_ON_STARTUP = "connect_on_startup";
+    private static final String KEY_CONNECT_ON_STARTUP_THREADS = "connect_on_startup_threads";
+    private static final String KEY_CONNECT_ON_STARTUP_TIMEOUT = "connect_on_startup_timeout";
+    private static final String KEY_CONNECT_ON_STARTUP_ASYNC = "connect_on_startup_async";
+
+    @Inject
+    @Named("jpa")
+    private Configuration configuration;
+
     @Inject
     private EntityManagerHandler entityManagerHandler;
 
+    @Inject
+    private ShardedEntityManagerHandler shardedEntityManagerHandler;
+
     @Inject
     private JpaSettingsFactory jpaSettingsFactory;
 
     @Inject
     private JpaSettingsStorage jpaSettingsStorage;
 
+    @Inject
+    private JpaSettingsStorageStatistics jpaSettingsStorageStatistics;
+
+    @Inject
+    private EntityManagerHandlerStatistics entityManagerHandlerStatistics;
+
+    @Inject
+    private StatementStatistics statementStatistics;
+
+    @Inject
+    private QueryResultCaches queryResultCaches;
+
+    @Inject
+    private EntityManagerPools entityManagerPools;
+
+    @Inject
+    private DataSourcePools dataSourcePools;
+
     @Inject
     private MBeanManager mbeanManager;
 
@@ -59,28 +110,107 @@ public class JpaAddon extends AbstractGriffonAddon {
 
     @Override
     public void init(@Nonnull GriffonApplication application) {
-        mbeanManager.registerMBean(new JpaSettingsStorageMonitor(metadata, jpaSettingsStorage));
+        mbeanManager.registerMBean(new JpaSettingsStorageMonitor(metadata, jpaSettingsStorage, jpaSettingsStorageStatistics));
+        mbeanManager.registerMBean(new EntityManagerPoolMonitor(metadata, entityManagerPools));
+        mbeanManager.registerMBean(new EntityManagerHandlerMonitor(metadata, entityManagerHandlerStatistics));
+        mbeanManager.registerMBean(new QueryResultCacheMonitor(metadata, queryResultCaches));
+        mbeanManager.registerMBean(new StatementMonitor(metadata, statementStatistics));
+        mbeanManager.registerMBean(new DataSourcePoolMonitor(metadata, dataSourcePools));
     }
 
     @EventHandler
     public void handleStartupStartEvent(@Nonnull StartupStartEvent event) {
+        List<String> persistenceUnitNames = new ArrayList<>();
         for (String persistenceUnitName : jpaSettingsFactory.getPersistenceUnitNames()) {
             Map<String, Object> config = jpaSettingsFactory.getConfigurationFor(persistenceUnitName);
-            if (getConfigValueAsBoolean(config, "connect_on_startup", false)) {
-                entityManagerHandler.withEntityManager(new EntityManagerCallback<Object>() {
-                    @Override
-                    public Object handle(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager) {
-                        return null;
-                    }
-                });
+            if (getConfigValueAsBoolean(config, KEY_CONNECT_ON_STARTUP, false)) {
+                persistenceUnitNames.add(persistenceUnitName);
+            }
+        }
+
+        if (persistenceUnitNames.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.max(1, Math.min(persistenceUnitNames.size(),
+            configuration.getAsInt(KEY_CONNECT_ON_STARTUP_THREADS, Runtime.getRuntime().availableProcessors())));
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new StartupThreadFactory());
+
+        Map<String, Future<?>> connections = new LinkedHashMap<>();
+        for (String persistenceUnitName : persistenceUnitNames) {
+            connections.put(persistenceUnitName, executorService.submit(() -> connect(persistenceUnitName)));
+        }
+        // lets running connections complete; threads are discarded afterwards
+        executorService.shutdown();
+
+        if (configuration.getAsBoolean(KEY_CONNECT_ON_STARTUP_ASYNC, false)) {
+            LOG.debug("Connecting persistence units {} in the background", persistenceUnitNames);
+            return;
+        }
+
+        awaitConnections(connections, configuration.getAsLong(KEY_CONNECT_ON_STARTUP_TIMEOUT, 0L));
+    }
+
+    private void connect(@Nonnull String persistenceUnitName) {
+        long start = System.nanoTime();
+        try {
+            entityManagerHandler.withEntityManager(persistenceUnitName, new EntityManagerCallback<Object>() {
+                @Override
+                public Object handle(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager) {
+                    return null;
+                }
+            });
+            LOG.debug("Connected persistence unit '{}' in {}ms", persistenceUnitName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            // the unit will be connected again on first use
+            LOG.error("Could not connect persistence unit '" + persistenceUnitName + "' on startup", e);
+        }
+    }
+
+    private void awaitConnections(@Nonnull Map<String, Future<?>> connections, long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (Map.Entry<String, Future<?>> connection : connections.entrySet()) {
+            try {
+                if (timeout > 0) {
+                    connection.getValue().get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } else {
+                    connection.getValue().get();
+                }
+            } catch (TimeoutException e) {
+                LOG.warn("Persistence unit '{}' did not connect within {}ms, continuing startup while it connects in the background", connection.getKey(), timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOG.error("Could not connect persistence unit '" + connection.getKey() + "' on startup", e.getCause());
             }
         }
     }
 
     @Override
     public void onShutdown(@Nonnull GriffonApplication application) {
+        if (shardedEntityManagerHandler instanceof DefaultShardedEntityManagerHandler) {
+            ((DefaultShardedEntityManagerHandler) shardedEntityManagerHandler).shutdown();
+        }
         for (String persistenceUnitName : jpaSettingsFactory.getPersistenceUnitNames()) {
             entityManagerHandler.closeEntityManager(persistenceUnitName);
         }
+        for (String groupName : jpaSettingsFactory.getPersistenceUnitGroupNames()) {
+            entityManagerHandler.closeEntityManager(groupName);
+        }
+        if (entityManagerHandler instanceof DefaultEntityManagerHandler) {
+            ((DefaultEntityManagerHandler) entityManagerHandler).shutdown();
+        }
+    }
+
+    private static final class StartupThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, "jpa-startup-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
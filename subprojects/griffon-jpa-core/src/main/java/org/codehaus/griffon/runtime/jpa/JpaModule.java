@@ -23,6 +23,7 @@ import griffon.core.injection.Module;
 import griffon.plugins.jpa.JpaSettingsFactory;
 import griffon.plugins.jpa.EntityManagerHandler;
 import griffon.plugins.jpa.JpaSettingsStorage;
+import griffon.plugins.jpa.ShardedEntityManagerHandler;
 import org.codehaus.griffon.runtime.core.injection.AbstractModule;
 import org.codehaus.griffon.runtime.util.ResourceBundleProvider;
 import org.kordamp.jipsy.annotations.ServiceProviderFor;
@@ -55,14 +56,36 @@ public class JpaModule extends AbstractModule {
             .to(DefaultJpaSettingsStorage.class)
             .asSingleton();
 
+        bind(JpaSettingsStorageStatistics.class)
+            .asSingleton();
+
+        bind(EntityManagerHandlerStatistics.class)
+            .asSingleton();
+
+        bind(StatementStatistics.class)
+            .asSingleton();
+
+        bind(DataSourcePools.class)
+            .asSingleton();
+
         bind(JpaSettingsFactory.class)
             .to(DefaultJpaSettingsFactory.class)
             .asSingleton();
 
+        bind(QueryResultCaches.class)
+            .asSingleton();
+
+        bind(EntityManagerPools.class)
+            .asSingleton();
+
         bind(EntityManagerHandler.class)
             .to(DefaultEntityManagerHandler.class)
             .asSingleton();
 
+        bind(ShardedEntityManagerHandler.class)
+            .to(DefaultShardedEntityManagerHandler.class)
+            .asSingleton();
+
         bind(GriffonAddon.class)
             .to(JpaAddon.class)
             .asSingleton();
@@ -0,0 +1,117 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Lifecycle statistics of the persistence units held by {@code JpaSettingsStorage}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class JpaSettingsStorageStatistics {
+    private static final String ERROR_PERSISTENCE_UNIT_NAME_BLANK = "Argument 'persistenceUnitName' must not be blank";
+
+    private final LongAdder initializationCount = new LongAdder();
+    private final LongAdder initializationWaitCount = new LongAdder();
+    private final LongAdder initializationWaitTime = new LongAdder();
+    private final AtomicLong maxInitializationWaitTime = new AtomicLong();
+    private final Map<String, LongAdder> initializationWaitTimes = new ConcurrentHashMap<>();
+    private final LongAdder evictionCount = new LongAdder();
+    private final Map<String, LongAdder> evictionCounts = new ConcurrentHashMap<>();
+
+    public void initialized(@Nonnull String persistenceUnitName) {
+        requireNonBlank(persistenceUnitName, ERROR_PERSISTENCE_UNIT_NAME_BLANK);
+        initializationCount.increment();
+    }
+
+    public void waitedForInitialization(@Nonnull String persistenceUnitName, long nanos) {
+        requireNonBlank(persistenceUnitName, ERROR_PERSISTENCE_UNIT_NAME_BLANK);
+        initializationWaitCount.increment();
+        initializationWaitTime.add(nanos);
+        initializationWaitTimes.computeIfAbsent(persistenceUnitName, k -> new LongAdder()).add(nanos);
+        maxInitializationWaitTime.accumulateAndGet(nanos, Math::max);
+    }
+
+    public void evicted(@Nonnull String persistenceUnitName) {
+        requireNonBlank(persistenceUnitName, ERROR_PERSISTENCE_UNIT_NAME_BLANK);
+        evictionCount.increment();
+        evictionCounts.computeIfAbsent(persistenceUnitName, k -> new LongAdder()).increment();
+    }
+
+    public long getInitializationCount() {
+        return initializationCount.sum();
+    }
+
+    public long getInitializationWaitCount() {
+        return initializationWaitCount.sum();
+    }
+
+    /**
+     * @return total time (in milliseconds) callers spent waiting for another caller to initialize a persistence unit.
+     */
+    public long getInitializationWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(initializationWaitTime.sum());
+    }
+
+    /**
+     * @return the longest time (in milliseconds) a single caller waited for a persistence unit to be initialized.
+     */
+    public long getMaxInitializationWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxInitializationWaitTime.get());
+    }
+
+    /**
+     * @return total wait time (in milliseconds) per persistence unit.
+     */
+    @Nonnull
+    public Map<String, Long> getInitializationWaitTimes() {
+        Map<String, Long> times = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : initializationWaitTimes.entrySet()) {
+            times.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().sum()));
+        }
+        return Collections.unmodifiableMap(times);
+    }
+
+    /**
+     * @return the number of persistence units closed after being idle.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Nonnull
+    public Map<String, Long> getEvictionCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : evictionCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+}
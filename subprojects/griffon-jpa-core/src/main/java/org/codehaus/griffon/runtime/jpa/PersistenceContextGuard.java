@@ -0,0 +1,76 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+
+/**
+ * Limits the growth of persistence contexts that outlive a single callback. A context is cleared once it manages
+ * more than {@code maxSize} entities or, when the provider does not allow measuring it, once {@code maxCallbacks}
+ * callbacks have been executed on it since it was last cleared. Callbacks are counted per {@code EntityManager}, as
+ * every thread of a {@code perThread} persistence unit owns a context of its own.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class PersistenceContextGuard {
+    private final int maxSize;
+    private final int maxCallbacks;
+    private final Map<EntityManager, AtomicLong> callbacks = Collections.synchronizedMap(new WeakHashMap<>());
+
+    PersistenceContextGuard(int maxSize, int maxCallbacks) {
+        this.maxSize = maxSize;
+        this.maxCallbacks = maxCallbacks;
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    static PersistenceContextGuard of(@Nonnull Map<String, Object> config) {
+        Map<String, Object> guard = getConfigValue(config, "persistenceContext", Collections.<String, Object>emptyMap());
+        return new PersistenceContextGuard(
+            getConfigValueAsInt(guard, "maxSize", 0),
+            getConfigValueAsInt(guard, "maxCallbacks", 0));
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0 || maxCallbacks > 0;
+    }
+
+    /**
+     * @param size the number of managed entities, {@code -1} if unknown.
+     */
+    boolean shouldClear(@Nonnull EntityManager entityManager, int size) {
+        if (size >= 0) {
+            return maxSize > 0 && size > maxSize;
+        }
+        return maxCallbacks > 0 && callbacks.computeIfAbsent(entityManager, k -> new AtomicLong()).incrementAndGet() >= maxCallbacks;
+    }
+
+    void cleared(@Nonnull EntityManager entityManager) {
+        callbacks.remove(entityManager);
+    }
+}
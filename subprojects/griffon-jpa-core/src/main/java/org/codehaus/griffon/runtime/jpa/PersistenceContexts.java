@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the number of entities managed by a persistence context. JPA offers no such API, thus the provider's
+ * own is used when recognized: the clone mapping of EclipseLink's {@code UnitOfWork} or Hibernate's session statistics.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class PersistenceContexts {
+    private static final Logger LOG = LoggerFactory.getLogger(PersistenceContexts.class);
+    private static final Estimator UNKNOWN = entityManager -> -1;
+    private static final Map<Class<?>, Estimator> ESTIMATORS = new ConcurrentHashMap<>();
+
+    private PersistenceContexts() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the number of managed entities or {@code -1} if the provider is not supported.
+     */
+    static int sizeOf(@Nonnull EntityManager entityManager) {
+        if (!entityManager.isOpen()) {
+            return 0;
+        }
+        Estimator estimator = ESTIMATORS.computeIfAbsent(entityManager.getClass(), k -> resolveEstimator(entityManager));
+        try {
+            return estimator.sizeOf(entityManager);
+        } catch (Exception e) {
+            LOG.trace("Could not measure the persistence context of {}", entityManager, e);
+            return -1;
+        }
+    }
+
+    @Nonnull
+    private static Estimator resolveEstimator(@Nonnull EntityManager entityManager) {
+        Estimator estimator = eclipseLinkEstimator(entityManager);
+        if (estimator == null) {
+            estimator = hibernateEstimator(entityManager);
+        }
+        if (estimator == null) {
+            LOG.debug("Persistence context size of {} cannot be measured", entityManager.getClass().getName());
+            return UNKNOWN;
+        }
+        return estimator;
+    }
+
+    private static Estimator eclipseLinkEstimator(@Nonnull EntityManager entityManager) {
+        try {
+            Class<?> unitOfWorkType = Class.forName("org.eclipse.persistence.sessions.UnitOfWork", false, entityManager.getClass().getClassLoader());
+            Object unitOfWork = entityManager.unwrap(unitOfWorkType);
+            Method getCloneMapping = unitOfWork.getClass().getMethod("getCloneMapping");
+            return em -> ((Map<?, ?>) getCloneMapping.invoke(em.unwrap(unitOfWorkType))).size();
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static Estimator hibernateEstimator(@Nonnull EntityManager entityManager) {
+        try {
+            Class<?> sessionType = Class.forName("org.hibernate.Session", false, entityManager.getClass().getClassLoader());
+            Method getStatistics = sessionType.getMethod("getStatistics");
+            Method getEntityCount = getStatistics.getReturnType().getMethod("getEntityCount");
+            entityManager.unwrap(sessionType);
+            return em -> (Integer) getEntityCount.invoke(getStatistics.invoke(em.unwrap(sessionType)));
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+    private interface Estimator {
+        int sizeOf(@Nonnull EntityManager entityManager) throws Exception;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.persistence.PersistenceException;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the properties a persistence unit declares in {@value #PERSISTENCE_XML}, for those settings the plugin
+ * needs before the provider has created the {@code EntityManagerFactory}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class PersistenceXml {
+    static final String PERSISTENCE_XML = "META-INF/persistence.xml";
+
+    private PersistenceXml() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the properties of the first persistence unit with the given name, empty if there is none.
+     */
+    @Nonnull
+    static Map<String, String> getProperties(@Nonnull String persistenceUnitName, @Nonnull ClassLoader classLoader) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+
+            Enumeration<URL> resources = classLoader.getResources(PERSISTENCE_XML);
+            while (resources.hasMoreElements()) {
+                Document document;
+                try (InputStream in = resources.nextElement().openStream()) {
+                    document = builder.parse(in);
+                }
+                NodeList units = document.getElementsByTagNameNS("*", "persistence-unit");
+                for (int i = 0; i < units.getLength(); i++) {
+                    Element unit = (Element) units.item(i);
+                    if (persistenceUnitName.equals(unit.getAttribute("name"))) {
+                        return propertiesOf(unit);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new PersistenceException("Could not read " + PERSISTENCE_XML, e);
+        }
+        return Collections.emptyMap();
+    }
+
+    @Nonnull
+    private static Map<String, String> propertiesOf(@Nonnull Element unit) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        NodeList nodes = unit.getElementsByTagNameNS("*", "property");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element property = (Element) nodes.item(i);
+            properties.put(property.getAttribute("name"), property.getAttribute("value"));
+        }
+        return properties;
+    }
+}
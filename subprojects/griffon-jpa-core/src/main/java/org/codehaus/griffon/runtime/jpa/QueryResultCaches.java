@@ -0,0 +1,384 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jpa.JpaSettingsFactory;
+import griffon.plugins.jpa.QueryResultCache;
+
+import javax.inject.Inject;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the {@code QueryResultCache} of every persistence unit that enables the {@code queryCache} block.
+ * Only results free of entity instances, such as scalars and DTOs, are cached.
+ * Override {@link #createCache(String, Map)} and rebind this type to plug in a different cache implementation.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class QueryResultCaches {
+    private static final String ERROR_PERSISTENCE_UNIT_BLANK = "Argument 'persistenceUnitName' must not be blank";
+    private static final int DEFAULT_MAX_SIZE = 1000;
+    private static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_TRACKED_QUERIES = 10_000;
+
+    private final JpaSettingsFactory jpaSettingsFactory;
+    private final Map<String, Optional<UnitCache>> caches = new ConcurrentHashMap<>();
+
+    @Inject
+    public QueryResultCaches(@Nonnull JpaSettingsFactory jpaSettingsFactory) {
+        this.jpaSettingsFactory = requireNonNull(jpaSettingsFactory, "Argument 'jpaSettingsFactory' must not be null");
+    }
+
+    public boolean isEnabled(@Nonnull String persistenceUnitName) {
+        return unitCache(persistenceUnitName) != null;
+    }
+
+    @Nullable
+    public QueryResultCache forUnit(@Nonnull String persistenceUnitName) {
+        UnitCache unitCache = unitCache(persistenceUnitName);
+        return unitCache != null ? unitCache.cache : null;
+    }
+
+    /**
+     * Returns a token identifying the current state of the unit's cache. Results computed after obtaining the token
+     * are only stored if no invalidation happened in the meantime.
+     */
+    public long generation(@Nonnull String persistenceUnitName) {
+        UnitCache unitCache = unitCache(persistenceUnitName);
+        return unitCache != null ? unitCache.generation.get() : 0L;
+    }
+
+    @Nullable
+    public List<?> get(@Nonnull String persistenceUnitName, @Nonnull Object key) {
+        UnitCache unitCache = unitCache(persistenceUnitName);
+        return unitCache != null ? unitCache.cache.get(key) : null;
+    }
+
+    public void put(@Nonnull String persistenceUnitName, @Nonnull Object key, @Nonnull String query, @Nonnull List<?> results, @Nonnull Metamodel metamodel, long generation) {
+        UnitCache unitCache = unitCache(persistenceUnitName);
+        if (unitCache == null) {
+            return;
+        }
+        // entities are live instances of the persistence context that loaded them, sharing them would let
+        // callers observe and flush each other's changes
+        if (unitCache.holdsEntities(results, metamodel)) {
+            return;
+        }
+        Set<String> entityNames = unitCache.entityNamesOf(query, metamodel);
+        synchronized (unitCache) {
+            if (unitCache.generation.get() == generation) {
+                unitCache.cache.put(key, results, entityNames);
+            }
+        }
+    }
+
+    /**
+     * Invalidates cached results after a transaction on the given persistence unit has been committed.
+     *
+     * @param changedTypes the entity types written by the transaction, as recorded by {@code QueryResultCacheListener}.
+     */
+    public void committed(@Nonnull String persistenceUnitName, @Nonnull Metamodel metamodel, @Nonnull Set<Class<?>> changedTypes) {
+        UnitCache unitCache = unitCache(persistenceUnitName);
+        if (unitCache == null) {
+            return;
+        }
+
+        if (!unitCache.entityInvalidation) {
+            invalidate(unitCache, null);
+        } else if (!changedTypes.isEmpty()) {
+            Set<String> entityNames = new LinkedHashSet<>();
+            for (Class<?> type : changedTypes) {
+                for (EntityType<?> entityType : metamodel.getEntities()) {
+                    // a change to a subclass affects queries on any of its entity superclasses
+                    if (entityType.getJavaType().isAssignableFrom(type)) {
+                        entityNames.add(entityType.getName());
+                    }
+                }
+            }
+            invalidate(unitCache, entityNames);
+        }
+    }
+
+    public void clear(@Nonnull String persistenceUnitName) {
+        UnitCache unitCache = unitCache(persistenceUnitName);
+        if (unitCache != null) {
+            invalidate(unitCache, null);
+        }
+    }
+
+    public void clear() {
+        for (Optional<UnitCache> unitCache : caches.values()) {
+            unitCache.ifPresent(c -> invalidate(c, null));
+        }
+    }
+
+    public void remove(@Nonnull String persistenceUnitName) {
+        caches.remove(persistenceUnitName);
+    }
+
+    @Nonnull
+    public <T> Map<String, T> collect(@Nonnull Function<QueryResultCache, T> metric) {
+        requireNonNull(metric, "Argument 'metric' must not be null");
+        Map<String, T> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Optional<UnitCache>> entry : caches.entrySet()) {
+            entry.getValue().ifPresent(c -> values.put(entry.getKey(), metric.apply(c.cache)));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Computes the key of a query. Parameters are sorted by name so that equivalent maps yield equal keys.
+     */
+    @Nonnull
+    public static Object keyOf(@Nonnull String query, @Nonnull Class<?> resultType, @Nonnull Map<String, ?> parameters) {
+        return new QueryKey(query, resultType, parameters);
+    }
+
+    @Nonnull
+    protected QueryResultCache createCache(@Nonnull String persistenceUnitName, @Nonnull Map<String, Object> config) {
+        int maxSize = getConfigValueAsInt(config, "maxSize", DEFAULT_MAX_SIZE);
+        long ttl = getConfigValue(config, "ttl", (Number) DEFAULT_TTL).longValue();
+        return new DefaultQueryResultCache(maxSize, TimeUnit.MILLISECONDS.toNanos(ttl));
+    }
+
+    private void invalidate(@Nonnull UnitCache unitCache, @Nullable Collection<String> entityNames) {
+        synchronized (unitCache) {
+            unitCache.generation.incrementAndGet();
+            if (entityNames == null) {
+                unitCache.cache.clear();
+            } else {
+                unitCache.cache.invalidate(entityNames);
+            }
+        }
+    }
+
+    @Nullable
+    private UnitCache unitCache(@Nonnull String persistenceUnitName) {
+        Optional<UnitCache> unitCache = caches.get(persistenceUnitName);
+        if (unitCache == null) {
+            requireNonBlank(persistenceUnitName, ERROR_PERSISTENCE_UNIT_BLANK);
+            unitCache = caches.computeIfAbsent(persistenceUnitName, this::resolveUnitCache);
+        }
+        return unitCache.orElse(null);
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    private Optional<UnitCache> resolveUnitCache(@Nonnull String persistenceUnitName) {
+        Map<String, Object> config = getConfigValue(jpaSettingsFactory.getConfigurationFor(persistenceUnitName), "queryCache", Collections.<String, Object>emptyMap());
+        if (!getConfigValueAsBoolean(config, "enabled", false)) {
+            return Optional.empty();
+        }
+        boolean entityInvalidation = "entity".equals(getConfigValueAsString(config, "invalidation", "unit"));
+        return Optional.of(new UnitCache(createCache(persistenceUnitName, config), entityInvalidation));
+    }
+
+    private static final class UnitCache {
+        private final QueryResultCache cache;
+        private final boolean entityInvalidation;
+        private final AtomicLong generation = new AtomicLong();
+        private final Map<String, Set<String>> queryEntities = new ConcurrentHashMap<>();
+        private volatile Pattern entityNamePattern;
+        private volatile Set<Class<?>> entityClasses;
+
+        private UnitCache(@Nonnull QueryResultCache cache, boolean entityInvalidation) {
+            this.cache = cache;
+            this.entityInvalidation = entityInvalidation;
+        }
+
+        @Nonnull
+        private Set<String> entityNamesOf(@Nonnull String query, @Nonnull Metamodel metamodel) {
+            Set<String> entityNames = queryEntities.get(query);
+            if (entityNames == null) {
+                entityNames = resolveEntityNames(query, metamodel);
+                if (queryEntities.size() < MAX_TRACKED_QUERIES) {
+                    queryEntities.put(query, entityNames);
+                }
+            }
+            return entityNames;
+        }
+
+        /**
+         * Entities named in the query plus every entity reachable through associations, as path expressions
+         * such as {@code join o.items} pull in entities that are never named explicitly.
+         */
+        @Nonnull
+        private Set<String> resolveEntityNames(@Nonnull String query, @Nonnull Metamodel metamodel) {
+            Map<Class<?>, EntityType<?>> entities = new LinkedHashMap<>();
+            for (EntityType<?> entityType : metamodel.getEntities()) {
+                entities.put(entityType.getJavaType(), entityType);
+            }
+
+            Deque<EntityType<?>> pending = new ArrayDeque<>();
+            Matcher matcher = entityNamePattern(entities.values()).matcher(query);
+            while (matcher.find()) {
+                for (EntityType<?> entityType : entities.values()) {
+                    if (entityType.getName().equals(matcher.group(1))) {
+                        pending.add(entityType);
+                    }
+                }
+            }
+
+            Set<String> entityNames = new LinkedHashSet<>();
+            while (!pending.isEmpty()) {
+                EntityType<?> entityType = pending.poll();
+                if (!entityNames.add(entityType.getName())) {
+                    continue;
+                }
+                for (Attribute<?, ?> attribute : entityType.getAttributes()) {
+                    if (!attribute.isAssociation()) {
+                        continue;
+                    }
+                    Class<?> target = attribute instanceof PluralAttribute ?
+                        ((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType() :
+                        attribute.getJavaType();
+                    EntityType<?> targetType = entities.get(target);
+                    if (targetType != null) {
+                        pending.add(targetType);
+                    }
+                }
+            }
+            return Collections.unmodifiableSet(entityNames);
+        }
+
+        private boolean holdsEntities(@Nonnull List<?> results, @Nonnull Metamodel metamodel) {
+            Set<Class<?>> entities = entityClasses(metamodel);
+            Map<Class<?>, Boolean> checked = new HashMap<>();
+            for (Object result : results) {
+                if (result instanceof Object[]) {
+                    for (Object value : (Object[]) result) {
+                        if (isEntity(value, entities, checked)) {
+                            return true;
+                        }
+                    }
+                } else if (isEntity(result, entities, checked)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isEntity(@Nullable Object value, @Nonnull Set<Class<?>> entities, @Nonnull Map<Class<?>, Boolean> checked) {
+            if (value == null) {
+                return false;
+            }
+            return checked.computeIfAbsent(value.getClass(), type -> {
+                // providers may hand out subclasses of entities, such as lazy loading proxies
+                for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                    if (entities.contains(c)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+
+        @Nonnull
+        private Set<Class<?>> entityClasses(@Nonnull Metamodel metamodel) {
+            Set<Class<?>> classes = entityClasses;
+            if (classes == null) {
+                classes = new HashSet<>();
+                for (EntityType<?> entityType : metamodel.getEntities()) {
+                    classes.add(entityType.getJavaType());
+                }
+                entityClasses = classes;
+            }
+            return classes;
+        }
+
+        @Nonnull
+        private Pattern entityNamePattern(@Nonnull Collection<EntityType<?>> entities) {
+            Pattern pattern = entityNamePattern;
+            if (pattern == null) {
+                StringBuilder names = new StringBuilder();
+                for (EntityType<?> entityType : entities) {
+                    if (names.length() > 0) {
+                        names.append('|');
+                    }
+                    names.append(Pattern.quote(entityType.getName()));
+                }
+                pattern = Pattern.compile("\\b(" + names + ")\\b");
+                entityNamePattern = pattern;
+            }
+            return pattern;
+        }
+    }
+
+    private static final class QueryKey {
+        private final String query;
+        private final Class<?> resultType;
+        private final Map<String, ?> parameters;
+        private final int hashCode;
+
+        private QueryKey(@Nonnull String query, @Nonnull Class<?> resultType, @Nonnull Map<String, ?> parameters) {
+            this.query = requireNonNull(query, "Argument 'query' must not be null");
+            this.resultType = requireNonNull(resultType, "Argument 'resultType' must not be null");
+            this.parameters = new TreeMap<>(requireNonNull(parameters, "Argument 'parameters' must not be null"));
+            this.hashCode = Objects.hash(query, resultType, this.parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            QueryKey that = (QueryKey) o;
+            return query.equals(that.query) &&
+                resultType.equals(that.resultType) &&
+                parameters.equals(that.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
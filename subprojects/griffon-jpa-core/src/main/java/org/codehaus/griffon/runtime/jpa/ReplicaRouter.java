@@ -0,0 +1,93 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.jpa.PersistenceUnitGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the readers of a {@code PersistenceUnitGroup} that should serve a read-only callback. Readers are visited in
+ * round-robin order, preferring the one with the fewest callbacks in flight; readers that failed recently are skipped
+ * until a cool-down period elapses.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class ReplicaRouter {
+    private static final long FAILURE_COOLDOWN = TimeUnit.SECONDS.toNanos(30);
+
+    private final EntityManagerHandlerStatistics statistics;
+    private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+    private final Map<String, Long> unavailableSince = new ConcurrentHashMap<>();
+
+    ReplicaRouter(@Nonnull EntityManagerHandlerStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the available readers in the order they should be tried.
+     */
+    @Nonnull
+    List<String> select(@Nonnull PersistenceUnitGroup group) {
+        List<String> readers = group.getReaders();
+        List<String> available = new ArrayList<>(readers.size());
+        if (readers.isEmpty()) {
+            return available;
+        }
+
+        int start = Math.floorMod(counters.computeIfAbsent(group.getName(), k -> new AtomicInteger()).getAndIncrement(), readers.size());
+        int preferred = -1;
+        long leastInFlight = Long.MAX_VALUE;
+        for (int i = 0; i < readers.size(); i++) {
+            String reader = readers.get((start + i) % readers.size());
+            if (!isAvailable(reader)) {
+                continue;
+            }
+            long inFlight = statistics.forUnit(reader).getInFlight();
+            if (inFlight < leastInFlight) {
+                leastInFlight = inFlight;
+                preferred = available.size();
+            }
+            available.add(reader);
+        }
+        if (preferred > 0) {
+            available.add(0, available.remove(preferred));
+        }
+        return available;
+    }
+
+    void succeeded(@Nonnull String reader) {
+        unavailableSince.remove(reader);
+    }
+
+    void failed(@Nonnull String reader) {
+        unavailableSince.put(reader, System.nanoTime());
+    }
+
+    private boolean isAvailable(@Nonnull String reader) {
+        Long since = unavailableSince.get(reader);
+        return since == null || System.nanoTime() - since >= FAILURE_COOLDOWN;
+    }
+}
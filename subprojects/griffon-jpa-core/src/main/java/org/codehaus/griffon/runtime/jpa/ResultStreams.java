@@ -0,0 +1,203 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.jpa.QueryCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.TypedQuery;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+
+/**
+ * Streams query results through a dedicated {@code EntityManager}. The persistence context is cleared every
+ * {@code clearInterval} elements so that consumed entities do not accumulate, and the {@code EntityManager}
+ * (along with the underlying cursor) is released when the stream is closed or fully consumed.
+ * <p>
+ * EclipseLink queries are read through a forward only {@code ScrollableCursor}. Queries of other providers are read
+ * through {@code TypedQuery.getResultStream()}, which streams only if the provider overrides it; the JPA default
+ * loads the whole result list first.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class ResultStreams {
+    private static final Logger LOG = LoggerFactory.getLogger(ResultStreams.class);
+    private static final int DEFAULT_FETCH_SIZE = 500;
+    private static final boolean ECLIPSELINK_AVAILABLE = isEclipseLinkAvailable();
+
+    private ResultStreams() {
+        // prevent instantiation
+    }
+
+    /**
+     * Opens a stream over the results of the given query.
+     *
+     * @param persistenceUnitName the name of the persistence unit.
+     * @param entityManager       a dedicated {@code EntityManager}, used by the stream only until it is closed.
+     * @param callback            creates the query.
+     * @param config              the {@code stream} settings of the persistence unit.
+     * @param release             invoked once the stream has been closed and its transaction ended, disposes of the
+     *                            {@code EntityManager}.
+     */
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    static <T> Stream<T> open(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull QueryCallback<T> callback, @Nonnull Map<String, Object> config, @Nonnull Runnable release) {
+        int fetchSize = getConfigValueAsInt(config, "fetchSize", DEFAULT_FETCH_SIZE);
+        int clearInterval = getConfigValueAsInt(config, "clearInterval", fetchSize);
+        Map<String, Object> hints = getConfigValue(config, "hints", Collections.<String, Object>emptyMap());
+
+        // keeps the connection, and thus the cursor, pinned to this EntityManager until the stream is closed
+        EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+            TypedQuery<T> query = callback.createQuery(persistenceUnitName, entityManager);
+            if (fetchSize > 0) {
+                query.setHint("eclipselink.jdbc.fetch-size", fetchSize);
+                query.setHint("org.hibernate.fetchSize", fetchSize);
+            }
+            for (Map.Entry<String, Object> hint : hints.entrySet()) {
+                query.setHint(hint.getKey(), hint.getValue());
+            }
+
+            Iterator<T> rows;
+            AutoCloseable results;
+            if (ECLIPSELINK_AVAILABLE && EclipseLinkCursor.supports(query)) {
+                EclipseLinkCursor<T> cursor = EclipseLinkCursor.open(query);
+                rows = cursor;
+                results = cursor;
+            } else {
+                Stream<T> stream = query.getResultStream();
+                rows = stream.iterator();
+                results = stream;
+            }
+            Runnable closer = new Closer(persistenceUnitName, entityManager, results, release);
+            Iterator<T> iterator = new ClearingIterator<>(entityManager, rows, clearInterval, closer);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(closer);
+        } catch (RuntimeException | Error e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isEclipseLinkAvailable() {
+        try {
+            Class.forName("org.eclipse.persistence.queries.ScrollableCursor", false, ResultStreams.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static final class ClearingIterator<T> implements Iterator<T> {
+        private final EntityManager entityManager;
+        private final Iterator<T> delegate;
+        private final int clearInterval;
+        private final Runnable closer;
+        private long count;
+
+        private ClearingIterator(@Nonnull EntityManager entityManager, @Nonnull Iterator<T> delegate, int clearInterval, @Nonnull Runnable closer) {
+            this.entityManager = entityManager;
+            this.delegate = delegate;
+            this.clearInterval = clearInterval;
+            this.closer = closer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!entityManager.isOpen()) {
+                return false;
+            }
+            boolean hasNext = delegate.hasNext();
+            if (!hasNext) {
+                closer.run();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // clear before reading the next row, the element handed out stays managed until the next boundary
+            if (clearInterval > 0 && count > 0 && count % clearInterval == 0) {
+                entityManager.clear();
+            }
+            count++;
+            return delegate.next();
+        }
+    }
+
+    private static final class Closer implements Runnable {
+        private final String persistenceUnitName;
+        private final EntityManager entityManager;
+        private final AutoCloseable results;
+        private final Runnable release;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Closer(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager, @Nonnull AutoCloseable results, @Nonnull Runnable release) {
+            this.persistenceUnitName = persistenceUnitName;
+            this.entityManager = entityManager;
+            this.results = results;
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+
+            LOG.trace("Closing result stream on database '{}'", persistenceUnitName);
+            try {
+                results.close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not close result stream on database '" + persistenceUnitName + "'", e);
+            } finally {
+                try {
+                    EntityTransaction transaction = entityManager.getTransaction();
+                    if (transaction.isActive()) {
+                        transaction.rollback();
+                    }
+                } finally {
+                    release.run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+
+/**
+ * Decides whether a failed transactional callback is worth running again and for how long to wait before doing so.
+ * Failures are classified by walking their causes, looking for one of the {@code retryOn} exception types or for a
+ * {@code SQLException} whose SQL state starts with one of the {@code sqlStates} prefixes. Delays grow exponentially
+ * from {@code initialBackoff} up to {@code maxBackoff}; {@code jitter} randomizes the given fraction of each delay so
+ * that contending callers do not retry in lockstep.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class RetryPolicy {
+    static final RetryPolicy NONE = new RetryPolicy(1, 0L, 0L, 1d, 0d, Collections.emptyList(), Collections.emptyList());
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+    private static final List<String> DEFAULT_RETRY_ON = Arrays.asList(
+        "javax.persistence.OptimisticLockException",
+        "javax.persistence.PessimisticLockException",
+        "javax.persistence.LockTimeoutException",
+        "java.sql.SQLTransientException");
+    // serialization failures and deadlocks; connection failures are left out as they may hide a commit that succeeded
+    private static final List<String> DEFAULT_SQL_STATES = Collections.singletonList("40");
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final List<Class<?>> retryOn;
+    private final List<String> sqlStates;
+
+    private RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, double multiplier, double jitter, @Nonnull List<Class<?>> retryOn, @Nonnull List<String> sqlStates) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = Math.max(0L, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+        this.multiplier = Math.max(1d, multiplier);
+        this.jitter = Math.min(1d, Math.max(0d, jitter));
+        this.retryOn = retryOn;
+        this.sqlStates = sqlStates;
+    }
+
+    @Nonnull
+    static RetryPolicy of(@Nonnull String persistenceUnitName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> retry = getConfigValue(config, "retry", Collections.<String, Object>emptyMap());
+        int maxAttempts = getConfigValueAsInt(retry, "maxAttempts", 1);
+        if (maxAttempts <= 1) {
+            return NONE;
+        }
+
+        List<Class<?>> retryOn = new ArrayList<>();
+        for (Object type : getConfigValue(retry, "retryOn", (Collection<?>) DEFAULT_RETRY_ON)) {
+            if (type instanceof Class) {
+                retryOn.add((Class<?>) type);
+                continue;
+            }
+            try {
+                retryOn.add(Class.forName(String.valueOf(type), false, RetryPolicy.class.getClassLoader()));
+            } catch (ClassNotFoundException e) {
+                LOG.warn("Ignoring unknown exception type '{}' in the retry policy of persistence unit '{}'", type, persistenceUnitName);
+            }
+        }
+        List<String> sqlStates = new ArrayList<>();
+        for (Object sqlState : getConfigValue(retry, "sqlStates", (Collection<?>) DEFAULT_SQL_STATES)) {
+            sqlStates.add(String.valueOf(sqlState));
+        }
+
+        return new RetryPolicy(maxAttempts,
+            getConfigValue(retry, "initialBackoff", (Number) 50L).longValue(),
+            getConfigValue(retry, "maxBackoff", (Number) 1000L).longValue(),
+            getConfigValue(retry, "multiplier", (Number) 2d).doubleValue(),
+            getConfigValue(retry, "jitter", (Number) 0.5d).doubleValue(),
+            Collections.unmodifiableList(retryOn),
+            Collections.unmodifiableList(sqlStates));
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    boolean isRetryable(@Nonnull Throwable failure) {
+        Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Throwable cause = failure; cause != null && visited.add(cause); cause = cause.getCause()) {
+            for (Class<?> type : retryOn) {
+                if (type.isInstance(cause)) {
+                    return true;
+                }
+            }
+            if (cause instanceof SQLException && isRetryable(((SQLException) cause).getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isRetryable(String sqlState) {
+        if (sqlState == null) {
+            return false;
+        }
+        for (String prefix : sqlStates) {
+            if (sqlState.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt the attempt that just failed, starting at 1.
+     * @return milliseconds to wait before the next attempt.
+     */
+    long backoff(int attempt) {
+        double delay = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+        double randomized = delay * (1d - jitter) + delay * jitter * ThreadLocalRandom.current().nextDouble();
+        return Math.round(randomized);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the SQL statements executed and the rows fetched on behalf of the outermost callback running on the current
+ * thread, per persistence unit. Statements are grouped by shape, that is, their text with literals and the length of
+ * {@code IN} lists taken out, so that the same statement issued with different arguments is counted as a repetition.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class StatementCounter {
+    private static final ThreadLocal<Map<String, StatementCounter>> COUNTERS = ThreadLocal.withInitial(HashMap::new);
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final String persistenceUnitName;
+    private final Map<String, Integer> shapes = new HashMap<>();
+    private int statements;
+    private long rows;
+
+    private StatementCounter(@Nonnull String persistenceUnitName) {
+        this.persistenceUnitName = persistenceUnitName;
+    }
+
+    /**
+     * @return a new counter, or {@code null} if statements of the persistence unit are already being counted
+     * by an enclosing callback.
+     */
+    @Nullable
+    static StatementCounter start(@Nonnull String persistenceUnitName) {
+        Map<String, StatementCounter> counters = COUNTERS.get();
+        if (counters.containsKey(persistenceUnitName)) {
+            return null;
+        }
+        StatementCounter counter = new StatementCounter(persistenceUnitName);
+        counters.put(persistenceUnitName, counter);
+        return counter;
+    }
+
+    static void statementExecuted(@Nonnull String persistenceUnitName, @Nullable String sql) {
+        StatementCounter counter = COUNTERS.get().get(persistenceUnitName);
+        if (counter != null) {
+            counter.statements++;
+            counter.shapes.merge(shapeOf(sql), 1, Integer::sum);
+        }
+    }
+
+    static void rowFetched(@Nonnull String persistenceUnitName) {
+        StatementCounter counter = COUNTERS.get().get(persistenceUnitName);
+        if (counter != null) {
+            counter.rows++;
+        }
+    }
+
+    void stop() {
+        Map<String, StatementCounter> counters = COUNTERS.get();
+        counters.remove(persistenceUnitName);
+        if (counters.isEmpty()) {
+            COUNTERS.remove();
+        }
+    }
+
+    int getStatements() {
+        return statements;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return how many times the most repeated statement shape was executed.
+     */
+    int getRepetitions() {
+        int repetitions = 0;
+        for (Integer count : shapes.values()) {
+            repetitions = Math.max(repetitions, count);
+        }
+        return repetitions;
+    }
+
+    @Nonnull
+    String getRepeatedStatement() {
+        String statement = "";
+        int repetitions = 0;
+        for (Map.Entry<String, Integer> shape : shapes.entrySet()) {
+            if (shape.getValue() > repetitions) {
+                statement = shape.getKey();
+                repetitions = shape.getValue();
+            }
+        }
+        return statement;
+    }
+
+    @Nonnull
+    static String shapeOf(@Nullable String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMERIC_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("(?)");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+    }
+}
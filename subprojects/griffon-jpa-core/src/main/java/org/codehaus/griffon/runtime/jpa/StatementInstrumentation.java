@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+
+/**
+ * Thresholds of the {@code instrumentation} block of a persistence unit. A callback is reported when it executes more
+ * than {@code maxStatements} statements, fetches more than {@code maxRows} rows or executes the same statement shape
+ * more than {@code maxRepetitions} times, the telltale sign of N+1 loading. A threshold of {@code 0} disables it.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class StatementInstrumentation {
+    static final StatementInstrumentation DISABLED = new StatementInstrumentation(false, 0, 0L, 0);
+
+    private final boolean enabled;
+    private final int maxStatements;
+    private final long maxRows;
+    private final int maxRepetitions;
+
+    private StatementInstrumentation(boolean enabled, int maxStatements, long maxRows, int maxRepetitions) {
+        this.enabled = enabled;
+        this.maxStatements = maxStatements;
+        this.maxRows = maxRows;
+        this.maxRepetitions = maxRepetitions;
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    static StatementInstrumentation of(@Nonnull Map<String, Object> config) {
+        Map<String, Object> instrumentation = getConfigValue(config, "instrumentation", Collections.<String, Object>emptyMap());
+        if (!getConfigValueAsBoolean(instrumentation, "enabled", false)) {
+            return DISABLED;
+        }
+        return new StatementInstrumentation(true,
+            Math.max(0, getConfigValueAsInt(instrumentation, "maxStatements", 50)),
+            Math.max(0L, getConfigValue(instrumentation, "maxRows", (Number) 5000L).longValue()),
+            Math.max(0, getConfigValueAsInt(instrumentation, "maxRepetitions", 10)));
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    boolean isExceededBy(@Nonnull StatementCounter counter) {
+        return (maxStatements > 0 && counter.getStatements() > maxStatements) ||
+            (maxRows > 0 && counter.getRows() > maxRows) ||
+            (maxRepetitions > 0 && counter.getRepetitions() > maxRepetitions);
+    }
+}
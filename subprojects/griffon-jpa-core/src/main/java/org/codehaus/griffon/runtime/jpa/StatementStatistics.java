@@ -0,0 +1,226 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Per persistence unit counts of the statements executed and rows fetched by instrumented callbacks, along with the
+ * callbacks that exceeded the thresholds of their persistence unit most often.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatementStatistics {
+    private static final int MAX_OFFENDERS = 100;
+    private static final Comparator<Offender> WORST_FIRST = Comparator.comparingLong(Offender::getViolations).reversed()
+        .thenComparing(Comparator.comparingInt(Offender::getMaxStatements).reversed());
+
+    private final Map<String, UnitStatistics> units = new ConcurrentHashMap<>();
+    private final Map<String, Offender> offenders = new HashMap<>();
+
+    @Nonnull
+    public UnitStatistics forUnit(@Nonnull String persistenceUnitName) {
+        UnitStatistics statistics = units.get(persistenceUnitName);
+        if (statistics == null) {
+            requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+            statistics = units.computeIfAbsent(persistenceUnitName, k -> new UnitStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * Records a callback that exceeded the thresholds of its persistence unit. Only the {@value #MAX_OFFENDERS}
+     * worst callbacks are kept.
+     */
+    public void violation(@Nonnull String persistenceUnitName, @Nonnull String callback, int statements, long rows, int repetitions, @Nonnull String repeatedStatement) {
+        requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+        requireNonBlank(callback, "Argument 'callback' must not be blank");
+        requireNonNull(repeatedStatement, "Argument 'repeatedStatement' must not be null");
+        forUnit(persistenceUnitName).violations.increment();
+
+        Offender offender = new Offender(persistenceUnitName, callback, 1L, statements, rows, repetitions, repeatedStatement);
+        synchronized (offenders) {
+            String key = persistenceUnitName + ":" + callback;
+            Offender previous = offenders.get(key);
+            if (previous != null) {
+                offenders.put(key, previous.merge(offender));
+                return;
+            }
+            if (offenders.size() >= MAX_OFFENDERS) {
+                Map.Entry<String, Offender> least = Collections.max(offenders.entrySet(), Map.Entry.comparingByValue(WORST_FIRST));
+                offenders.remove(least.getKey());
+            }
+            offenders.put(key, offender);
+        }
+    }
+
+    /**
+     * @return the callbacks that exceeded their thresholds most often, worst first.
+     */
+    @Nonnull
+    public List<Offender> getWorstOffenders(int limit) {
+        List<Offender> list;
+        synchronized (offenders) {
+            list = new ArrayList<>(offenders.values());
+        }
+        list.sort(WORST_FIRST);
+        return Collections.unmodifiableList(list.subList(0, Math.min(Math.max(limit, 0), list.size())));
+    }
+
+    @Nonnull
+    public <T> Map<String, T> collect(@Nonnull Function<UnitStatistics, T> metric) {
+        requireNonNull(metric, "Argument 'metric' must not be null");
+        Map<String, T> values = new LinkedHashMap<>();
+        for (Map.Entry<String, UnitStatistics> entry : units.entrySet()) {
+            values.put(entry.getKey(), metric.apply(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    public void reset() {
+        for (UnitStatistics statistics : units.values()) {
+            statistics.reset();
+        }
+        synchronized (offenders) {
+            offenders.clear();
+        }
+    }
+
+    public static final class UnitStatistics {
+        private final LongAdder callbacks = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder violations = new LongAdder();
+
+        public void counted(int statements, long rows) {
+            this.callbacks.increment();
+            this.statements.add(statements);
+            this.rows.add(rows);
+        }
+
+        public long getCallbacks() {
+            return callbacks.sum();
+        }
+
+        public long getStatements() {
+            return statements.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getViolations() {
+            return violations.sum();
+        }
+
+        public void reset() {
+            callbacks.reset();
+            rows.reset();
+            statements.reset();
+            violations.reset();
+        }
+    }
+
+    /**
+     * A callback that exceeded the thresholds of its persistence unit, with the highest counts seen so far.
+     */
+    public static final class Offender {
+        private final String persistenceUnit;
+        private final String callback;
+        private final long violations;
+        private final int maxStatements;
+        private final long maxRows;
+        private final int maxRepetitions;
+        private final String repeatedStatement;
+
+        private Offender(String persistenceUnit, String callback, long violations, int maxStatements, long maxRows, int maxRepetitions, String repeatedStatement) {
+            this.persistenceUnit = persistenceUnit;
+            this.callback = callback;
+            this.violations = violations;
+            this.maxStatements = maxStatements;
+            this.maxRows = maxRows;
+            this.maxRepetitions = maxRepetitions;
+            this.repeatedStatement = repeatedStatement;
+        }
+
+        @Nonnull
+        public String getPersistenceUnit() {
+            return persistenceUnit;
+        }
+
+        @Nonnull
+        public String getCallback() {
+            return callback;
+        }
+
+        public long getViolations() {
+            return violations;
+        }
+
+        public int getMaxStatements() {
+            return maxStatements;
+        }
+
+        public long getMaxRows() {
+            return maxRows;
+        }
+
+        public int getMaxRepetitions() {
+            return maxRepetitions;
+        }
+
+        /**
+         * @return the shape of the statement repeated the most, with literals replaced by {@code ?}.
+         */
+        @Nonnull
+        public String getRepeatedStatement() {
+            return repeatedStatement;
+        }
+
+        private Offender merge(Offender other) {
+            boolean repeated = other.maxRepetitions > maxRepetitions;
+            return new Offender(persistenceUnit, callback, violations + other.violations,
+                Math.max(maxStatements, other.maxStatements),
+                Math.max(maxRows, other.maxRows),
+                repeated ? other.maxRepetitions : maxRepetitions,
+                repeated ? other.repeatedStatement : repeatedStatement);
+        }
+
+        @Override
+        public String toString() {
+            return persistenceUnit + ":" + callback + " violations=" + violations + ", statements=" + maxStatements +
+                ", rows=" + maxRows + ", repetitions=" + maxRepetitions + " [" + repeatedStatement + "]";
+        }
+    }
+}
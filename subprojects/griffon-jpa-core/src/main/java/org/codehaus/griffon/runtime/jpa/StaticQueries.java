@@ -0,0 +1,208 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.persistence.metamodel.EntityType;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static griffon.util.GriffonNameUtils.isBlank;
+
+/**
+ * Registers the JPQL queries validated at compile time by {@code @JpqlQuery} as named queries of every matching
+ * persistence unit. Classes declaring queries are listed by {@value #QUERIES_INDEX}, their queries are read from a
+ * resource of their own in {@value #QUERIES_DIRECTORY}. Queries of classes or fields that no longer exist are left
+ * out, as compilation outputs may outlive their sources. A query is registered on the persistence unit it names or,
+ * when it names none, on every persistence unit that manages all the entities it refers to.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class StaticQueries {
+    static final String QUERIES_DIRECTORY = "META-INF/griffon-jpa/queries/";
+    static final String QUERIES_INDEX = "META-INF/griffon-jpa/queries.index";
+    private static final Logger LOG = LoggerFactory.getLogger(StaticQueries.class);
+    private static final String SUFFIX_QUERY = ".query";
+    private static final String SUFFIX_UNIT = ".unit";
+    private static final String SUFFIX_ENTITIES = ".entities";
+    private static final String SUFFIX_FIELD = ".field";
+
+    private StaticQueries() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the names of the queries registered.
+     * @throws PersistenceException if a query cannot be compiled by the provider.
+     */
+    @Nonnull
+    static Set<String> register(@Nonnull String persistenceUnitName, @Nonnull EntityManagerFactory entityManagerFactory, @Nonnull ClassLoader classLoader) {
+        Map<String, Properties> queries = load(classLoader);
+        if (queries.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> entityNames = new HashSet<>();
+        for (EntityType<?> entityType : entityManagerFactory.getMetamodel().getEntities()) {
+            entityNames.add(entityType.getName());
+        }
+
+        Set<String> registered = new LinkedHashSet<>();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            for (Map.Entry<String, Properties> entry : queries.entrySet()) {
+                String name = entry.getKey();
+                Properties query = entry.getValue();
+                if (!accepts(persistenceUnitName, entityNames, query)) {
+                    continue;
+                }
+                try {
+                    entityManagerFactory.addNamedQuery(name, entityManager.createQuery(query.getProperty(SUFFIX_QUERY)));
+                    registered.add(name);
+                } catch (RuntimeException e) {
+                    throw new PersistenceException("Could not register query '" + name + "' on persistence unit '" + persistenceUnitName + "'", e);
+                }
+            }
+        } finally {
+            entityManager.close();
+        }
+
+        LOG.debug("Registered {} static queries on persistence unit '{}'", registered.size(), persistenceUnitName);
+        return registered;
+    }
+
+    private static boolean accepts(@Nonnull String persistenceUnitName, @Nonnull Set<String> entityNames, @Nonnull Properties query) {
+        String unit = query.getProperty(SUFFIX_UNIT);
+        if (!isBlank(unit)) {
+            return persistenceUnitName.equals(unit);
+        }
+        String entities = query.getProperty(SUFFIX_ENTITIES, "");
+        return isBlank(entities) || entityNames.containsAll(Arrays.asList(entities.split(",")));
+    }
+
+    /**
+     * @return every query keyed by name, with its settings keyed by suffix.
+     */
+    @Nonnull
+    private static Map<String, Properties> load(@Nonnull ClassLoader classLoader) {
+        Map<String, Properties> queries = new LinkedHashMap<>();
+        for (String owner : loadOwners(classLoader)) {
+            Class<?> ownerClass;
+            try {
+                ownerClass = Class.forName(owner, false, classLoader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                LOG.debug("Skipping the queries of {} as the class no longer exists", owner);
+                continue;
+            }
+
+            String resourceName = QUERIES_DIRECTORY + owner + ".properties";
+            URL resource = classLoader.getResource(resourceName);
+            if (resource == null) {
+                LOG.debug("Skipping the queries of {} as {} does not exist", owner, resourceName);
+                continue;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = resource.openStream()) {
+                properties.load(in);
+            } catch (IOException e) {
+                throw new PersistenceException("Could not read " + resource, e);
+            }
+
+            for (String key : properties.stringPropertyNames()) {
+                if (key.endsWith(SUFFIX_QUERY)) {
+                    String name = key.substring(0, key.length() - SUFFIX_QUERY.length());
+                    String field = properties.getProperty(name + SUFFIX_FIELD);
+                    if (!hasField(ownerClass, field)) {
+                        LOG.debug("Skipping query '{}' as field {}.{} no longer exists", name, owner, field);
+                        continue;
+                    }
+                    Properties query = new Properties();
+                    for (String suffix : new String[]{SUFFIX_QUERY, SUFFIX_UNIT, SUFFIX_ENTITIES}) {
+                        String value = properties.getProperty(name + suffix);
+                        if (value != null) {
+                            query.setProperty(suffix, value);
+                        }
+                    }
+                    if (queries.put(name, query) != null) {
+                        LOG.warn("Query '{}' is declared more than once, using the one declared by {}", name, owner);
+                    }
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * @return the classes listed by every {@value #QUERIES_INDEX} resource, in the order they are found. Text
+     * following a {@code #} is a comment.
+     */
+    @Nonnull
+    private static Set<String> loadOwners(@Nonnull ClassLoader classLoader) {
+        Set<String> owners = new LinkedHashSet<>();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(QUERIES_INDEX);
+            while (resources.hasMoreElements()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(resources.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int comment = line.indexOf('#');
+                        String owner = (comment < 0 ? line : line.substring(0, comment)).trim();
+                        if (!owner.isEmpty()) {
+                            owners.add(owner);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new PersistenceException("Could not read " + QUERIES_INDEX, e);
+        }
+        return owners;
+    }
+
+    private static boolean hasField(@Nonnull Class<?> ownerClass, String field) {
+        if (isBlank(field)) {
+            return false;
+        }
+        try {
+            ownerClass.getDeclaredField(field);
+            return true;
+        } catch (NoSuchFieldException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+/**
+ * Transaction demarcation applied by {@code DefaultEntityManagerHandler} around a callback.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+enum TransactionMode {
+    /**
+     * The callback is responsible for its own transaction handling.
+     */
+    NONE,
+    /**
+     * The callback runs inside a transaction that is committed on success and rolled back on failure.
+     */
+    READ_WRITE,
+    /**
+     * The callback runs inside a transaction with flush mode {@code COMMIT} that is always rolled back.
+     */
+    READ_ONLY;
+
+    boolean isTransactional() {
+        return this != NONE;
+    }
+}
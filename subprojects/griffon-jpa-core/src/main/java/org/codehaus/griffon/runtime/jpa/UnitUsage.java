@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Tracks the outermost users of a persistence unit so that it can be evicted only while nobody is using it.
+ * A negative user count marks a unit being evicted; new users wait until the eviction has completed,
+ * except for the evicting thread itself which fails fast instead of waiting on its own eviction.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class UnitUsage {
+    private static final int EVICTING = -1;
+    private static final long EVICTION_WAIT = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final String persistenceUnitName;
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile long lastUse = System.nanoTime();
+    private volatile Thread evictor;
+
+    UnitUsage(@Nonnull String persistenceUnitName) {
+        this.persistenceUnitName = requireNonBlank(persistenceUnitName, "Argument 'persistenceUnitName' must not be blank");
+    }
+
+    void enter() {
+        while (true) {
+            int current = users.get();
+            if (current == EVICTING) {
+                if (evictor == Thread.currentThread()) {
+                    throw new IllegalStateException("Persistence unit '" + persistenceUnitName + "' cannot be used while it is being evicted");
+                }
+                LockSupport.parkNanos(EVICTION_WAIT);
+            } else if (users.compareAndSet(current, current + 1)) {
+                return;
+            }
+        }
+    }
+
+    void exit() {
+        lastUse = System.nanoTime();
+        users.decrementAndGet();
+    }
+
+    boolean isIdleFor(long nanos) {
+        return users.get() == 0 && System.nanoTime() - lastUse >= nanos;
+    }
+
+    boolean tryEvict() {
+        if (users.compareAndSet(0, EVICTING)) {
+            evictor = Thread.currentThread();
+            return true;
+        }
+        return false;
+    }
+
+    void evicted() {
+        evictor = null;
+        lastUse = System.nanoTime();
+        users.set(0);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.jpa.JpaSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+
+/**
+ * Pays the cost of lazily built provider metadata upfront: walks the {@code Metamodel}, compiles every
+ * named query declared on entity classes or registered from {@code @JpqlQuery} statements and runs the warm-up
+ * queries listed in the {@code warmup} block. Failures are logged and never prevent the persistence unit from
+ * connecting.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class Warmups {
+    private static final Logger LOG = LoggerFactory.getLogger(Warmups.class);
+
+    private Warmups() {
+        // prevent instantiation
+    }
+
+    /**
+     * Warms up the given persistence unit if its {@code warmup} block is enabled.
+     *
+     * @param persistenceUnitName the name of the persistence unit.
+     * @param jpaSettings         the freshly created settings.
+     * @param config              the settings of the persistence unit.
+     * @param staticQueryNames    the names of the queries registered by {@code StaticQueries}.
+     * @return the time spent, in nanoseconds.
+     */
+    @SuppressWarnings("ConstantConditions")
+    static long warmup(@Nonnull String persistenceUnitName, @Nonnull JpaSettings jpaSettings, @Nonnull Map<String, Object> config, @Nonnull Collection<String> staticQueryNames) {
+        Map<String, Object> warmup = getConfigValue(config, "warmup", Collections.<String, Object>emptyMap());
+        if (!getConfigValueAsBoolean(warmup, "enabled", false)) {
+            return 0L;
+        }
+
+        long start = System.nanoTime();
+        Metamodel metamodel = jpaSettings.getEntityManagerFactory().getMetamodel();
+        for (ManagedType<?> managedType : metamodel.getManagedTypes()) {
+            managedType.getAttributes();
+        }
+
+        // a short-lived EntityManager keeps warm-up results out of any long-lived persistence context
+        EntityManager entityManager = jpaSettings.createEntityManager();
+        try {
+            if (getConfigValueAsBoolean(warmup, "namedQueries", true)) {
+                Set<String> queryNames = namedQueriesOf(metamodel);
+                queryNames.addAll(staticQueryNames);
+                for (String queryName : queryNames) {
+                    try {
+                        entityManager.createNamedQuery(queryName);
+                    } catch (RuntimeException e) {
+                        LOG.warn("Could not compile named query '{}' on persistence unit '{}'", queryName, persistenceUnitName, e);
+                    }
+                }
+            }
+
+            Collection<?> queries = getConfigValue(warmup, "queries", Collections.emptyList());
+            for (Object query : queries) {
+                try {
+                    entityManager.createQuery(String.valueOf(query))
+                        .setMaxResults(1)
+                        .getResultList();
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not execute warm-up query '{}' on persistence unit '{}'", query, persistenceUnitName, e);
+                }
+                entityManager.clear();
+            }
+        } finally {
+            entityManager.close();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        LOG.debug("Warmed up persistence unit '{}' in {} ms", persistenceUnitName, elapsed / 1_000_000L);
+        return elapsed;
+    }
+
+    @Nonnull
+    private static Set<String> namedQueriesOf(@Nonnull Metamodel metamodel) {
+        Set<String> queryNames = new LinkedHashSet<>();
+        for (EntityType<?> entityType : metamodel.getEntities()) {
+            Class<?> javaType = entityType.getJavaType();
+            if (javaType == null) {
+                continue;
+            }
+            NamedQuery namedQuery = javaType.getAnnotation(NamedQuery.class);
+            if (namedQuery != null) {
+                queryNames.add(namedQuery.name());
+            }
+            NamedQueries namedQueries = javaType.getAnnotation(NamedQueries.class);
+            if (namedQueries != null) {
+                for (NamedQuery query : namedQueries.value()) {
+                    queryNames.add(query.name());
+                }
+            }
+        }
+        return queryNames;
+    }
+}
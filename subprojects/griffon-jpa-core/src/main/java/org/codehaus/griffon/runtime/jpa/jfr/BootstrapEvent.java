@@ -0,0 +1,48 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Time spent by a JpaBootstrap initializing or destroying a persistence unit.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@Name("griffon.jpa.Bootstrap")
+@Label("JPA Bootstrap")
+@Category({"Griffon", "JPA"})
+@Description("Time spent by a JpaBootstrap initializing or destroying a persistence unit.")
+public final class BootstrapEvent extends Event {
+    @Label("Persistence Unit")
+    String persistenceUnit;
+
+    @Label("Bootstrap Class")
+    Class<?> bootstrapClass;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Outcome")
+    String outcome;
+}
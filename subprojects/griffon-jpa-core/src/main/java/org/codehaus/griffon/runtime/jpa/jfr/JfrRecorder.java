@@ -0,0 +1,152 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.jfr;
+
+import griffon.annotations.core.Nonnull;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Emits events through the Flight Recorder API. This class is only loaded after {@code JpaEvents} verified that
+ * the API is present.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class JfrRecorder implements JpaEvents.Recorder {
+    private JfrRecorder() {
+        // use create()
+    }
+
+    @Nonnull
+    static JpaEvents.Recorder create() {
+        return FlightRecorder.isAvailable() ? new JfrRecorder() : JpaEvents.NoopRecorder.INSTANCE;
+    }
+
+    @Nonnull
+    @Override
+    public JpaEvents.Recording beginPersistenceUnitCreate(@Nonnull String persistenceUnitName, @Nonnull String entityManagerScope) {
+        PersistenceUnitCreateEvent event = new PersistenceUnitCreateEvent();
+        if (!event.isEnabled()) {
+            return JpaEvents.NoopRecorder.INSTANCE;
+        }
+        event.persistenceUnit = persistenceUnitName;
+        event.entityManagerScope = entityManagerScope;
+        event.begin();
+        return new EventRecording(event) {
+            @Override
+            void outcome(@Nonnull String outcome) {
+                event.outcome = outcome;
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public JpaEvents.Recording beginPersistenceUnitDestroy(@Nonnull String persistenceUnitName) {
+        PersistenceUnitDestroyEvent event = new PersistenceUnitDestroyEvent();
+        if (!event.isEnabled()) {
+            return JpaEvents.NoopRecorder.INSTANCE;
+        }
+        event.persistenceUnit = persistenceUnitName;
+        event.begin();
+        return new EventRecording(event) {
+            @Override
+            void outcome(@Nonnull String outcome) {
+                event.outcome = outcome;
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public JpaEvents.Recording beginBootstrap(@Nonnull String persistenceUnitName, @Nonnull Class<?> bootstrapClass, @Nonnull String phase) {
+        BootstrapEvent event = new BootstrapEvent();
+        if (!event.isEnabled()) {
+            return JpaEvents.NoopRecorder.INSTANCE;
+        }
+        event.persistenceUnit = persistenceUnitName;
+        event.bootstrapClass = bootstrapClass;
+        event.phase = phase;
+        event.begin();
+        return new EventRecording(event) {
+            @Override
+            void outcome(@Nonnull String outcome) {
+                event.outcome = outcome;
+            }
+        };
+    }
+
+    @Nonnull
+    @Override
+    public JpaEvents.Recording beginCallback(@Nonnull String persistenceUnitName, @Nonnull Class<?> callbackClass, @Nonnull String transactionMode) {
+        CallbackEvent event = new CallbackEvent();
+        if (!event.isEnabled()) {
+            return JpaEvents.NoopRecorder.INSTANCE;
+        }
+        event.persistenceUnit = persistenceUnitName;
+        event.callbackClass = callbackClass;
+        event.transactionMode = transactionMode;
+        event.begin();
+        return new EventRecording(event) {
+            @Override
+            void outcome(@Nonnull String outcome) {
+                event.outcome = outcome;
+            }
+        };
+    }
+
+    @Override
+    public void statementThresholdExceeded(@Nonnull String persistenceUnitName, @Nonnull Class<?> callbackClass, int statements, long rows, int repetitions, @Nonnull String repeatedStatement) {
+        StatementThresholdEvent event = new StatementThresholdEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.persistenceUnit = persistenceUnitName;
+        event.callbackClass = callbackClass;
+        event.statements = statements;
+        event.rows = rows;
+        event.repetitions = repetitions;
+        event.repeatedStatement = repeatedStatement;
+        event.commit();
+    }
+
+    private abstract static class EventRecording implements JpaEvents.Recording {
+        private final Event event;
+
+        private EventRecording(@Nonnull Event event) {
+            this.event = event;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public void end(@Nonnull String outcome) {
+            event.end();
+            if (event.shouldCommit()) {
+                outcome(outcome);
+                event.commit();
+            }
+        }
+
+        abstract void outcome(@Nonnull String outcome);
+    }
+}
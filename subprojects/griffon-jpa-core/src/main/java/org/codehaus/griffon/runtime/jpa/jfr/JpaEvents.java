@@ -0,0 +1,156 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.jfr;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry point for the Java Flight Recorder events emitted by this plugin. Events are only recorded when JFR is
+ * present in the running JVM; otherwise, or when the events are disabled in the active recording, every method
+ * returns a {@code Recording} that does nothing. Setting the system property {@code griffon.jpa.jfr} to
+ * {@code false} disables events altogether.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class JpaEvents {
+    private static final Logger LOG = LoggerFactory.getLogger(JpaEvents.class);
+    private static final Recorder RECORDER = resolveRecorder();
+
+    private JpaEvents() {
+        // prevent instantiation
+    }
+
+    public static boolean isAvailable() {
+        return RECORDER != NoopRecorder.INSTANCE;
+    }
+
+    @Nonnull
+    public static Recording beginPersistenceUnitCreate(@Nonnull String persistenceUnitName, @Nonnull String entityManagerScope) {
+        return RECORDER.beginPersistenceUnitCreate(persistenceUnitName, entityManagerScope);
+    }
+
+    @Nonnull
+    public static Recording beginPersistenceUnitDestroy(@Nonnull String persistenceUnitName) {
+        return RECORDER.beginPersistenceUnitDestroy(persistenceUnitName);
+    }
+
+    @Nonnull
+    public static Recording beginBootstrap(@Nonnull String persistenceUnitName, @Nonnull Class<?> bootstrapClass, @Nonnull String phase) {
+        return RECORDER.beginBootstrap(persistenceUnitName, bootstrapClass, phase);
+    }
+
+    @Nonnull
+    public static Recording beginCallback(@Nonnull String persistenceUnitName, @Nonnull Class<?> callbackClass, @Nonnull String transactionMode) {
+        return RECORDER.beginCallback(persistenceUnitName, callbackClass, transactionMode);
+    }
+
+    /**
+     * Records a callback exceeding the statement thresholds of its persistence unit as an instant event.
+     */
+    public static void statementThresholdExceeded(@Nonnull String persistenceUnitName, @Nonnull Class<?> callbackClass, int statements, long rows, int repetitions, @Nonnull String repeatedStatement) {
+        RECORDER.statementThresholdExceeded(persistenceUnitName, callbackClass, statements, rows, repetitions, repeatedStatement);
+    }
+
+    @Nonnull
+    private static Recorder resolveRecorder() {
+        if (!Boolean.parseBoolean(System.getProperty("griffon.jpa.jfr", "true"))) {
+            return NoopRecorder.INSTANCE;
+        }
+        try {
+            Class.forName("jdk.jfr.Event", false, JpaEvents.class.getClassLoader());
+            return JfrRecorder.create();
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.debug("Java Flight Recorder is not available, JPA events will not be recorded");
+            return NoopRecorder.INSTANCE;
+        }
+    }
+
+    /**
+     * An event in progress. Events that are not enabled are never committed.
+     */
+    public interface Recording {
+        /**
+         * @return {@code true} if the event will be committed once ended.
+         */
+        boolean isEnabled();
+
+        void end(@Nonnull String outcome);
+    }
+
+    interface Recorder {
+        @Nonnull
+        Recording beginPersistenceUnitCreate(@Nonnull String persistenceUnitName, @Nonnull String entityManagerScope);
+
+        @Nonnull
+        Recording beginPersistenceUnitDestroy(@Nonnull String persistenceUnitName);
+
+        @Nonnull
+        Recording beginBootstrap(@Nonnull String persistenceUnitName, @Nonnull Class<?> bootstrapClass, @Nonnull String phase);
+
+        @Nonnull
+        Recording beginCallback(@Nonnull String persistenceUnitName, @Nonnull Class<?> callbackClass, @Nonnull String transactionMode);
+
+        void statementThresholdExceeded(@Nonnull String persistenceUnitName, @Nonnull Class<?> callbackClass, int statements, long rows, int repetitions, @Nonnull String repeatedStatement);
+    }
+
+    enum NoopRecorder implements Recorder, Recording {
+        INSTANCE;
+
+        @Nonnull
+        @Override
+        public Recording beginPersistenceUnitCreate(@Nonnull String persistenceUnitName, @Nonnull String entityManagerScope) {
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public Recording beginPersistenceUnitDestroy(@Nonnull String persistenceUnitName) {
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public Recording beginBootstrap(@Nonnull String persistenceUnitName, @Nonnull Class<?> bootstrapClass, @Nonnull String phase) {
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public Recording beginCallback(@Nonnull String persistenceUnitName, @Nonnull Class<?> callbackClass, @Nonnull String transactionMode) {
+            return this;
+        }
+
+        @Override
+        public void statementThresholdExceeded(@Nonnull String persistenceUnitName, @Nonnull Class<?> callbackClass, int statements, long rows, int repetitions, @Nonnull String repeatedStatement) {
+            // empty
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void end(@Nonnull String outcome) {
+            // empty
+        }
+    }
+}
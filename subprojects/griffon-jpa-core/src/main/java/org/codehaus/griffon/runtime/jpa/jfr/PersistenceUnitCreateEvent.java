@@ -0,0 +1,45 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Time spent building the EntityManagerFactory of a persistence unit.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@Name("griffon.jpa.PersistenceUnitCreate")
+@Label("Persistence Unit Create")
+@Category({"Griffon", "JPA"})
+@Description("Time spent building the EntityManagerFactory of a persistence unit.")
+public final class PersistenceUnitCreateEvent extends Event {
+    @Label("Persistence Unit")
+    String persistenceUnit;
+
+    @Label("EntityManager Scope")
+    String entityManagerScope;
+
+    @Label("Outcome")
+    String outcome;
+}
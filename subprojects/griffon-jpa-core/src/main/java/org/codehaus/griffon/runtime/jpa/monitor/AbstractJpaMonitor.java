@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Base class for MBeans that report runtime statistics of the JPA plugin.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public abstract class AbstractJpaMonitor implements MBeanRegistration {
+    protected final Metadata metadata;
+    private ObjectName objectName;
+
+    protected AbstractJpaMonitor(@Nonnull Metadata metadata) {
+        this.metadata = requireNonNull(metadata, "Argument 'metadata' must not be null");
+    }
+
+    @Nonnull
+    protected abstract String getMonitorName();
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        if (name != null) {
+            objectName = name;
+        } else {
+            objectName = new ObjectName("griffon.plugins.jpa:type=Monitor,application=" +
+                ObjectName.quote(metadata.getApplicationName()) + ",name=" + getMonitorName());
+        }
+        return objectName;
+    }
+
+    @Override
+    public void postRegister(Boolean registrationDone) {
+        // empty
+    }
+
+    @Override
+    public void preDeregister() throws Exception {
+        // empty
+    }
+
+    @Override
+    public void postDeregister() {
+        objectName = null;
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.jpa.DataSourcePool;
+import org.codehaus.griffon.runtime.jpa.DataSourcePools;
+
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DataSourcePoolMonitor extends AbstractJpaMonitor implements DataSourcePoolMonitorMXBean {
+    private final DataSourcePools pools;
+
+    public DataSourcePoolMonitor(@Nonnull Metadata metadata, @Nonnull DataSourcePools pools) {
+        super(metadata);
+        this.pools = requireNonNull(pools, "Argument 'pools' must not be null");
+    }
+
+    @Nonnull
+    @Override
+    protected String getMonitorName() {
+        return "dataSource";
+    }
+
+    @Override
+    public Map<String, Integer> getMaxSizes() {
+        return pools.collect(DataSourcePool::getMaxSize);
+    }
+
+    @Override
+    public Map<String, Integer> getSizes() {
+        return pools.collect(DataSourcePool::getSize);
+    }
+
+    @Override
+    public Map<String, Integer> getIdle() {
+        return pools.collect(DataSourcePool::getIdle);
+    }
+
+    @Override
+    public Map<String, Integer> getActive() {
+        return pools.collect(DataSourcePool::getActive);
+    }
+
+    @Override
+    public Map<String, Integer> getWaiters() {
+        return pools.collect(DataSourcePool::getWaiters);
+    }
+
+    @Override
+    public void softEvictConnections() {
+        pools.softEvictConnections();
+    }
+}
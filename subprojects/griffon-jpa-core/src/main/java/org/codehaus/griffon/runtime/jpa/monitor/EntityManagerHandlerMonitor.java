@@ -0,0 +1,120 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.jpa.EntityManagerHandlerStatistics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class EntityManagerHandlerMonitor extends AbstractJpaMonitor implements EntityManagerHandlerMonitorMXBean {
+    private final EntityManagerHandlerStatistics statistics;
+
+    public EntityManagerHandlerMonitor(@Nonnull Metadata metadata, @Nonnull EntityManagerHandlerStatistics statistics) {
+        super(metadata);
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
+    }
+
+    @Nonnull
+    @Override
+    protected String getMonitorName() {
+        return "handler";
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+        return statistics.collect(EntityManagerHandlerStatistics.UnitStatistics::getCalls);
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return statistics.collect(EntityManagerHandlerStatistics.UnitStatistics::getErrors);
+    }
+
+    @Override
+    public Map<String, Long> getInFlight() {
+        return statistics.collect(EntityManagerHandlerStatistics.UnitStatistics::getInFlight);
+    }
+
+    @Override
+    public Map<String, Double> getCallsPerSecond() {
+        return statistics.collect(EntityManagerHandlerStatistics.UnitStatistics::getCallsPerSecond);
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencies() {
+        return statistics.collect(s -> s.getLatency().getMean() / TimeUnit.MICROSECONDS.toNanos(1));
+    }
+
+    @Override
+    public Map<String, Long> getMedianLatencies() {
+        return statistics.collect(s -> micros(s.getLatency().getPercentile(50d)));
+    }
+
+    @Override
+    public Map<String, Long> getP95Latencies() {
+        return statistics.collect(s -> micros(s.getLatency().getPercentile(95d)));
+    }
+
+    @Override
+    public Map<String, Long> getP99Latencies() {
+        return statistics.collect(s -> micros(s.getLatency().getPercentile(99d)));
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencies() {
+        return statistics.collect(s -> micros(s.getLatency().getMax()));
+    }
+
+    @Override
+    public Map<String, Integer> getPersistenceContextSizes() {
+        return statistics.collect(EntityManagerHandlerStatistics.UnitStatistics::getContextSize);
+    }
+
+    @Override
+    public Map<String, Long> getPersistenceContextClearCounts() {
+        return statistics.collect(EntityManagerHandlerStatistics.UnitStatistics::getContextClears);
+    }
+
+    @Override
+    public Map<String, Long> getRetryCounts() {
+        return statistics.collect(EntityManagerHandlerStatistics.UnitStatistics::getRetries);
+    }
+
+    @Override
+    public Map<String, Long> getExhaustedRetryCounts() {
+        return statistics.collect(EntityManagerHandlerStatistics.UnitStatistics::getExhaustedRetries);
+    }
+
+    @Override
+    public void reset() {
+        statistics.reset();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
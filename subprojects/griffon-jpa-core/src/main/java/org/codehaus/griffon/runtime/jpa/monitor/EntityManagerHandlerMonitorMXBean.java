@@ -0,0 +1,59 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.monitor;
+
+import java.util.Map;
+
+/**
+ * Per persistence unit statistics of {@code EntityManagerHandler} callbacks. Only outermost callbacks are counted,
+ * callbacks nested in them are part of the same call.
+ * Latencies are reported in microseconds. Persistence context sizes are reported as the number of managed
+ * entities, {@code -1} when the provider does not allow measuring them.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface EntityManagerHandlerMonitorMXBean {
+    Map<String, Long> getCallCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    Map<String, Long> getInFlight();
+
+    Map<String, Double> getCallsPerSecond();
+
+    Map<String, Double> getMeanLatencies();
+
+    Map<String, Long> getMedianLatencies();
+
+    Map<String, Long> getP95Latencies();
+
+    Map<String, Long> getP99Latencies();
+
+    Map<String, Long> getMaxLatencies();
+
+    Map<String, Integer> getPersistenceContextSizes();
+
+    Map<String, Long> getPersistenceContextClearCounts();
+
+    Map<String, Long> getRetryCounts();
+
+    Map<String, Long> getExhaustedRetryCounts();
+
+    void reset();
+}
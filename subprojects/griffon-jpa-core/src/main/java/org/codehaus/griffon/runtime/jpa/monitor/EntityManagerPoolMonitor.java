@@ -0,0 +1,98 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.jpa.EntityManagerPool;
+import org.codehaus.griffon.runtime.jpa.EntityManagerPools;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class EntityManagerPoolMonitor extends AbstractJpaMonitor implements EntityManagerPoolMonitorMXBean {
+    private final EntityManagerPools pools;
+
+    public EntityManagerPoolMonitor(@Nonnull Metadata metadata, @Nonnull EntityManagerPools pools) {
+        super(metadata);
+        this.pools = requireNonNull(pools, "Argument 'pools' must not be null");
+    }
+
+    @Nonnull
+    @Override
+    protected String getMonitorName() {
+        return "pool";
+    }
+
+    @Override
+    public Map<String, Integer> getMaxSizes() {
+        return pools.collect(EntityManagerPool::getMaxSize);
+    }
+
+    @Override
+    public Map<String, Integer> getSizes() {
+        return pools.collect(EntityManagerPool::getSize);
+    }
+
+    @Override
+    public Map<String, Integer> getIdle() {
+        return pools.collect(EntityManagerPool::getIdle);
+    }
+
+    @Override
+    public Map<String, Integer> getLeased() {
+        return pools.collect(EntityManagerPool::getLeased);
+    }
+
+    @Override
+    public Map<String, Integer> getWaiters() {
+        return pools.collect(EntityManagerPool::getWaiters);
+    }
+
+    @Override
+    public Map<String, Long> getAcquisitionCounts() {
+        return pools.collect(EntityManagerPool::getAcquisitions);
+    }
+
+    @Override
+    public Map<String, Long> getTimeoutCounts() {
+        return pools.collect(EntityManagerPool::getTimeouts);
+    }
+
+    @Override
+    public Map<String, Double> getMeanWaitTimes() {
+        return pools.collect(pool -> pool.getAcquisitions() > 0 ?
+            (double) pool.getWaitTime() / pool.getAcquisitions() / TimeUnit.MICROSECONDS.toNanos(1) : 0d);
+    }
+
+    @Override
+    public Map<String, Long> getMaxWaitTimes() {
+        return pools.collect(pool -> TimeUnit.NANOSECONDS.toMicros(pool.getMaxWaitTime()));
+    }
+
+    @Override
+    public void evictIdle() {
+        pools.evictIdle();
+    }
+}
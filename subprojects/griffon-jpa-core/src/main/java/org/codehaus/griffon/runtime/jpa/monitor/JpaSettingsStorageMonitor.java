@@ -20,20 +20,66 @@ package org.codehaus.griffon.runtime.jpa.monitor;
 import griffon.core.env.Metadata;
 import griffon.plugins.jpa.JpaSettings;
 import griffon.plugins.jpa.JpaSettingsStorage;
+import org.codehaus.griffon.runtime.jpa.JpaSettingsStorageStatistics;
 import org.codehaus.griffon.runtime.monitor.AbstractObjectStorageMonitor;
 
 import griffon.annotations.core.Nonnull;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * @author Andres Almiray
  */
 public class JpaSettingsStorageMonitor extends AbstractObjectStorageMonitor<JpaSettings> implements JpaSettingsStorageMonitorMXBean {
+    private final JpaSettingsStorageStatistics statistics;
+
     public JpaSettingsStorageMonitor(@Nonnull Metadata metadata, @Nonnull JpaSettingsStorage delegate) {
+        this(metadata, delegate, new JpaSettingsStorageStatistics());
+    }
+
+    public JpaSettingsStorageMonitor(@Nonnull Metadata metadata, @Nonnull JpaSettingsStorage delegate, @Nonnull JpaSettingsStorageStatistics statistics) {
         super(metadata, delegate);
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
     }
 
     @Override
     protected String getStorageName() {
         return "jpa";
     }
+
+    @Override
+    public long getInitializationCount() {
+        return statistics.getInitializationCount();
+    }
+
+    @Override
+    public long getInitializationWaitCount() {
+        return statistics.getInitializationWaitCount();
+    }
+
+    @Override
+    public long getInitializationWaitTime() {
+        return statistics.getInitializationWaitTime();
+    }
+
+    @Override
+    public long getMaxInitializationWaitTime() {
+        return statistics.getMaxInitializationWaitTime();
+    }
+
+    @Override
+    public Map<String, Long> getInitializationWaitTimes() {
+        return statistics.getInitializationWaitTimes();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return statistics.getEvictionCount();
+    }
+
+    @Override
+    public Map<String, Long> getEvictionCounts() {
+        return statistics.getEvictionCounts();
+    }
 }
@@ -19,8 +19,23 @@ package org.codehaus.griffon.runtime.jpa.monitor;
 
 import org.codehaus.griffon.runtime.monitor.ObjectStorageMonitorMXBean;
 
+import java.util.Map;
+
 /**
  * @author Andres Almiray
  */
 public interface JpaSettingsStorageMonitorMXBean extends ObjectStorageMonitorMXBean {
+    long getInitializationCount();
+
+    long getInitializationWaitCount();
+
+    long getInitializationWaitTime();
+
+    long getMaxInitializationWaitTime();
+
+    Map<String, Long> getInitializationWaitTimes();
+
+    long getEvictionCount();
+
+    Map<String, Long> getEvictionCounts();
 }
@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import griffon.plugins.jpa.QueryResultCache;
+import org.codehaus.griffon.runtime.jpa.QueryResultCaches;
+
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class QueryResultCacheMonitor extends AbstractJpaMonitor implements QueryResultCacheMonitorMXBean {
+    private final QueryResultCaches queryResultCaches;
+
+    public QueryResultCacheMonitor(@Nonnull Metadata metadata, @Nonnull QueryResultCaches queryResultCaches) {
+        super(metadata);
+        this.queryResultCaches = requireNonNull(queryResultCaches, "Argument 'queryResultCaches' must not be null");
+    }
+
+    @Nonnull
+    @Override
+    protected String getMonitorName() {
+        return "queryCache";
+    }
+
+    @Override
+    public Map<String, Integer> getSizes() {
+        return queryResultCaches.collect(QueryResultCache::size);
+    }
+
+    @Override
+    public Map<String, Long> getHitCounts() {
+        return queryResultCaches.collect(QueryResultCache::getHitCount);
+    }
+
+    @Override
+    public Map<String, Long> getMissCounts() {
+        return queryResultCaches.collect(QueryResultCache::getMissCount);
+    }
+
+    @Override
+    public Map<String, Double> getHitRatios() {
+        return queryResultCaches.collect(cache -> {
+            long requests = cache.getHitCount() + cache.getMissCount();
+            return requests > 0 ? (double) cache.getHitCount() / requests : 0d;
+        });
+    }
+
+    @Override
+    public Map<String, Long> getEvictionCounts() {
+        return queryResultCaches.collect(QueryResultCache::getEvictionCount);
+    }
+
+    @Override
+    public Map<String, Long> getInvalidationCounts() {
+        return queryResultCaches.collect(QueryResultCache::getInvalidationCount);
+    }
+
+    @Override
+    public void clear() {
+        queryResultCaches.clear();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.jpa.StatementStatistics;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatementMonitor extends AbstractJpaMonitor implements StatementMonitorMXBean {
+    private static final int WORST_OFFENDERS = 10;
+
+    private final StatementStatistics statistics;
+
+    public StatementMonitor(@Nonnull Metadata metadata, @Nonnull StatementStatistics statistics) {
+        super(metadata);
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
+    }
+
+    @Nonnull
+    @Override
+    protected String getMonitorName() {
+        return "statements";
+    }
+
+    @Override
+    public Map<String, Long> getCallbackCounts() {
+        return statistics.collect(StatementStatistics.UnitStatistics::getCallbacks);
+    }
+
+    @Override
+    public Map<String, Long> getStatementCounts() {
+        return statistics.collect(StatementStatistics.UnitStatistics::getStatements);
+    }
+
+    @Override
+    public Map<String, Long> getRowCounts() {
+        return statistics.collect(StatementStatistics.UnitStatistics::getRows);
+    }
+
+    @Override
+    public Map<String, Long> getViolationCounts() {
+        return statistics.collect(StatementStatistics.UnitStatistics::getViolations);
+    }
+
+    @Override
+    public List<String> getWorstOffenders() {
+        return statistics.getWorstOffenders(WORST_OFFENDERS).stream()
+            .map(StatementStatistics.Offender::toString)
+            .collect(toList());
+    }
+
+    @Override
+    public void reset() {
+        statistics.reset();
+    }
+}
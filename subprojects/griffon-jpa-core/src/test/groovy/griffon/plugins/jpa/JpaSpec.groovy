@@ -24,14 +24,41 @@ import griffon.plugins.jpa.events.JpaConnectStartEvent
 import griffon.plugins.jpa.events.JpaDisconnectEndEvent
 import griffon.plugins.jpa.events.JpaDisconnectStartEvent
 import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.jpa.DataSourcePool
+import org.codehaus.griffon.runtime.jpa.DataSourcePools
+import org.codehaus.griffon.runtime.jpa.EntityManagerHandlerStatistics
+import org.codehaus.griffon.runtime.jpa.JpaSettingsStorageStatistics
+import org.codehaus.griffon.runtime.jpa.QueryResultCaches
+import org.codehaus.griffon.runtime.jpa.StatementStatistics
 import org.junit.Rule
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
+
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordedEvent
+import jdk.jfr.consumer.RecordingFile
 
 import javax.application.event.EventHandler
 import javax.inject.Inject
+import javax.persistence.EntityGraph
 import javax.persistence.EntityManager
+import javax.persistence.OptimisticLockException
 import javax.persistence.PersistenceException
+import javax.persistence.QueryTimeoutException
+import java.beans.PropertyChangeEvent
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.stream.Collectors
+import java.util.stream.Stream
 
 @Unroll
 class JpaSpec extends Specification {
@@ -48,6 +75,27 @@ class JpaSpec extends Specification {
     @Inject
     private GriffonApplication application
 
+    @Inject
+    private EntityManagerHandlerStatistics entityManagerHandlerStatistics
+
+    @Inject
+    private JpaSettingsStorageStatistics jpaSettingsStorageStatistics
+
+    @Inject
+    private JpaSettingsStorage jpaSettingsStorage
+
+    @Inject
+    private QueryResultCaches queryResultCaches
+
+    @Inject
+    private StatementStatistics statementStatistics
+
+    @Inject
+    private DataSourcePools dataSourcePools
+
+    @Inject
+    private ShardedEntityManagerHandler shardedEntityManagerHandler
+
     void 'Open and close default entityManager'() {
         given:
         List eventNames = [
@@ -172,11 +220,953 @@ class JpaSpec extends Specification {
         peopleIn == peopleOut
     }
 
+    void 'perCall scope opens a fresh entityManager per outermost call'() {
+        when:
+        EntityManager first = entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager
+        }
+        EntityManager second = entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager
+        }
+
+        then:
+        !first.is(second)
+        !first.open
+        !second.open
+    }
+
+    void 'perThread scope keeps an entityManager per thread and closes those of terminated threads'() {
+        given:
+        Closure<EntityManager> capture = { String persistenceUnitName, EntityManager entityManager -> entityManager }
+        Closure<EntityManager> captureOnThread = {
+            EntityManager captured = null
+            Thread thread = Thread.start { captured = entityManagerHandler.withEntityManager('threaded', capture) }
+            thread.join()
+            captured
+        }
+
+        when:
+        EntityManager first = entityManagerHandler.withEntityManager('threaded', capture)
+        EntityManager second = entityManagerHandler.withEntityManager('threaded', capture)
+        EntityManager other = captureOnThread()
+
+        then:
+        first.is(second)
+        !first.is(other)
+        other.open
+
+        when:
+        EntityManager another = captureOnThread()
+
+        then:
+        !another.is(other)
+        !other.open
+        first.open
+    }
+
+    void 'Nested calls on perCall scope share the same entityManager'() {
+        expect:
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager outer ->
+            entityManagerHandler.withEntityManager('internal') { String name, EntityManager inner ->
+                inner.is(outer)
+            }
+        }
+    }
+
+    void 'withTransaction commits on success'() {
+        when:
+        entityManagerHandler.withTransaction('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.persist(new Person(name: 'Tx', lastname: 'Committed'))
+        }
+
+        then:
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createQuery("select p from Person p where p.lastname = 'Committed'").resultList.size()
+        } == 1
+    }
+
+    void 'withTransaction rolls back on failure'() {
+        when:
+        entityManagerHandler.withTransaction('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.persist(new Person(name: 'Tx', lastname: 'RolledBack'))
+            entityManager.flush()
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(IllegalStateException)
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createQuery("select p from Person p where p.lastname = 'RolledBack'").resultList.size()
+        } == 0
+    }
+
+    void 'Programmatic transactions commit on complete and roll back on fail'() {
+        when:
+        EntityManagerTransaction committed = entityManagerHandler.beginTransaction('internal', false)
+        committed.entityManager.persist(new Person(name: 'Programmatic', lastname: 'Committed'))
+        boolean joined = entityManagerHandler.withTransaction('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.is(committed.entityManager)
+        }
+        committed.complete()
+
+        EntityManagerTransaction failed = entityManagerHandler.beginTransaction('internal', false)
+        failed.entityManager.persist(new Person(name: 'Programmatic', lastname: 'RolledBack'))
+        failed.entityManager.flush()
+        failed.fail(new IllegalStateException('boom'))
+        failed.complete()
+
+        then:
+        joined
+        committed.completed
+        failed.completed
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createQuery("select p.lastname from Person p where p.name = 'Programmatic'").resultList
+        } == ['Committed']
+    }
+
+    void 'Nested withTransaction joins the outer transaction'() {
+        expect:
+        entityManagerHandler.withTransaction('internal') { String persistenceUnitName, EntityManager outer ->
+            def transaction = outer.transaction
+            entityManagerHandler.withTransaction('internal') { String name, EntityManager inner ->
+                inner.transaction.is(transaction) && inner.transaction.active
+            }
+        }
+    }
+
+    void 'Read-write callbacks cannot join a read-only transaction'() {
+        when:
+        entityManagerHandler.withTransaction('internal', true) { String persistenceUnitName, EntityManager outer ->
+            entityManagerHandler.withTransaction('internal') { String name, EntityManager inner -> }
+        }
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    void 'Read-only transactions keep the entities of a shared persistence context managed'() {
+        given:
+        Person person = entityManagerHandler.withTransaction('people') { String persistenceUnitName, EntityManager entityManager ->
+            Person p = new Person(name: 'Managed', lastname: 'ReadOnly')
+            entityManager.persist(p)
+            p
+        }
+
+        when:
+        boolean managed = entityManagerHandler.withTransaction('people', true) { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.contains(person)
+        }
+
+        then:
+        managed
+        entityManagerHandler.withEntityManager('people') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.contains(person)
+        }
+    }
+
+    void 'Outermost callbacks on another thread do not join a transaction in progress'() {
+        given:
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+
+        when:
+        Future<?> owner = executor.submit({
+            entityManagerHandler.withTransaction('people') { String persistenceUnitName, EntityManager entityManager ->
+                started.countDown()
+                release.await(10, TimeUnit.SECONDS)
+            }
+        } as Callable)
+        started.await(10, TimeUnit.SECONDS)
+        try {
+            entityManagerHandler.withTransaction('people') { String persistenceUnitName, EntityManager entityManager -> }
+        } finally {
+            release.countDown()
+            owner.get(10, TimeUnit.SECONDS)
+            executor.shutdown()
+        }
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    void 'Concurrent callers initialize a persistence unit only once'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+        int threads = 8
+        CountDownLatch start = new CountDownLatch(1)
+        ExecutorService executor = Executors.newFixedThreadPool(threads)
+
+        when:
+        List<Future<Boolean>> results = (1..threads).collect {
+            executor.submit({
+                start.await()
+                entityManagerHandler.withEntityManager('people') { String persistenceUnitName, EntityManager entityManager ->
+                    entityManager != null
+                }
+            } as Callable<Boolean>)
+        }
+        start.countDown()
+
+        then:
+        results*.get().every()
+        testEventHandler.events.count { it == 'JpaConnectStartEvent' } == 1
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    void 'withEntityManagerAsync runs the callback off the calling thread'() {
+        given:
+        Thread caller = Thread.currentThread()
+
+        when:
+        Map result = entityManagerHandler.withEntityManagerAsync('internal') { String persistenceUnitName, EntityManager entityManager ->
+            [name: persistenceUnitName, thread: Thread.currentThread()]
+        }.get(10, TimeUnit.SECONDS)
+
+        then:
+        result.name == 'internal'
+        !result.thread.is(caller)
+    }
+
+    void 'withTransactionAsync reports failures through the future'() {
+        when:
+        entityManagerHandler.withTransactionAsync('internal') { String persistenceUnitName, EntityManager entityManager ->
+            throw new IllegalStateException('boom')
+        }.get(10, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof IllegalStateException
+    }
+
+    void 'findAsync coalesces lookups by id into a single query'() {
+        given:
+        List<Long> ids = entityManagerHandler.withTransaction('internal') { String persistenceUnitName, EntityManager entityManager ->
+            (1..3).collect { int index ->
+                Person person = new Person(name: "Batched${index}", lastname: 'Loader')
+                entityManager.persist(person)
+                person
+            }
+        }*.id
+        EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit('internal')
+        long calls = statistics.calls
+
+        when:
+        List<CompletableFuture<Person>> lookups = (ids + ids[0] + -1L).collect { Long id ->
+            entityManagerHandler.findAsync('internal', Person, id)
+        }
+        CompletableFuture<Person> mistyped = entityManagerHandler.findAsync('internal', Person, 1)
+        List<Person> people = lookups*.get(10, TimeUnit.SECONDS)
+
+        then:
+        people[0..2]*.name == ['Batched1', 'Batched2', 'Batched3']
+        people[3].is(people[0])
+        people[4] == null
+        statistics.calls - calls == 1
+
+        when:
+        mistyped.get(10, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof IllegalArgumentException
+    }
+
+    void 'Pending lookups fail once their persistence unit is closed'() {
+        given:
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager -> }
+
+        when:
+        CompletableFuture<Person> lookup = entityManagerHandler.findAsync('internal', Person, 1L)
+        entityManagerHandler.closeEntityManager('internal')
+        lookup.get(10, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof IllegalStateException
+        !jpaSettingsStorage.get('internal')
+    }
+
+    void 'KeysetPagedList loads pages on demand and keeps a bounded window'() {
+        given:
+        entityManagerHandler.withTransaction('internal') { String persistenceUnitName, EntityManager entityManager ->
+            (1..25).each { int index ->
+                entityManager.persist(new Person(name: "K${index.toString().padLeft(2, '0')}", lastname: 'Keyset'))
+            }
+        }
+        PollingConditions conditions = new PollingConditions(timeout: 10)
+        List<String> events = [].asSynchronized()
+
+        when:
+        KeysetPagedList<Person> people = KeysetPagedList.builder(entityManagerHandler, Person)
+            .persistenceUnit('internal')
+            .where('e.lastname = :lastname')
+            .parameter('lastname', 'Keyset')
+            .orderBy('name', true)
+            .pageSize(10)
+            .maxPages(2)
+            .build()
+        people.addPropertyChangeListener { PropertyChangeEvent event -> events << event.propertyName }
+
+        then:
+        conditions.eventually {
+            assert people.size() == 25
+        }
+
+        when: 'the last page is reached without loading the previous ones'
+        Person missing = people.get(24)
+
+        then:
+        missing == null
+        conditions.eventually {
+            assert people.isLoaded(24)
+        }
+        people.get(24).name == 'K25'
+
+        when: 'scrolling past half of the first page'
+        people.get(5)
+
+        then: 'the next page is prefetched, evicting the least recently used one'
+        conditions.eventually {
+            assert people.isLoaded(5) && people.isLoaded(15)
+            assert events.count(KeysetPagedList.PROPERTY_PAGE) == 3
+        }
+        !people.isLoaded(24)
+        people[0..14]*.name == (1..15).collect { "K${it.toString().padLeft(2, '0')}".toString() }
+    }
+
+    void 'KeysetPagedList reads pages of a shared persistence unit on an entityManager of their own'() {
+        given:
+        entityManagerHandler.withTransaction('people') { String persistenceUnitName, EntityManager entityManager ->
+            (1..5).each { int index ->
+                entityManager.persist(new Person(name: "S${index}", lastname: 'SharedKeyset'))
+            }
+        }
+        PollingConditions conditions = new PollingConditions(timeout: 10)
+
+        when:
+        KeysetPagedList<Person> people = KeysetPagedList.builder(entityManagerHandler, Person)
+            .persistenceUnit('people')
+            .where('e.lastname = :lastname')
+            .parameter('lastname', 'SharedKeyset')
+            .orderBy('name', true)
+            .pageSize(2)
+            .build()
+        conditions.eventually {
+            assert people.size() == 5
+        }
+        people.get(0)
+
+        then:
+        conditions.eventually {
+            assert people.isLoaded(0)
+        }
+        people.get(0).name == 'S1'
+        !entityManagerHandler.withEntityManager('people') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.contains(people.get(0))
+        }
+    }
+
+    void 'Fetch profiles are registered as entity graphs'() {
+        when:
+        Map result = entityManagerHandler.withTransaction('people') { String persistenceUnitName, EntityManager entityManager ->
+            Person person = new Person(name: 'Fetch', lastname: 'Profile')
+            entityManager.persist(person)
+            entityManager.flush()
+            entityManager.clear()
+
+            EntityGraph<?> graph = FetchProfiles.getEntityGraph(entityManager, 'personNames')
+            Person found = entityManager.find(Person, person.id, FetchProfiles.loadGraph(entityManager, 'personNames'))
+            List<Person> people = FetchProfiles.withFetchGraph(entityManager.createQuery('select p from Person p where p.lastname = :lastname', Person), entityManager, 'personNames')
+                .setParameter('lastname', 'Profile')
+                .resultList
+            [attributes: graph.attributeNodes*.attributeName as Set, found: found.name, people: people*.name]
+        }
+
+        then:
+        result.attributes == ['name', 'lastname'] as Set
+        result.found == 'Fetch'
+        result.people == ['Fetch']
+
+        when:
+        entityManagerHandler.withEntityManager('people') { String persistenceUnitName, EntityManager entityManager ->
+            FetchProfiles.getEntityGraph(entityManager, 'missing')
+        }
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    void 'Callbacks are recorded per persistence unit'() {
+        when:
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager -> }
+        try {
+            entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager ->
+                throw new IllegalStateException('boom')
+            }
+        } catch (IllegalStateException ignored) {
+        }
+        EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit('internal')
+
+        then:
+        statistics.calls == 2
+        statistics.errors == 1
+        statistics.inFlight == 0
+        statistics.latency.count == 2
+    }
+
+    void 'Nested callbacks are recorded as part of their outermost callback'() {
+        given:
+        EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit('internal')
+        long calls = statistics.calls
+
+        when:
+        entityManagerHandler.withTransaction('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManagerHandler.withEntityManager('internal') { String n, EntityManager em -> }
+            entityManagerHandler.withTransaction('internal') { String n, EntityManager em -> }
+        }
+
+        then:
+        statistics.calls - calls == 1
+        statistics.inFlight == 0
+    }
+
+    void 'persistAll stores every entity in batches'() {
+        given:
+        List<Person> people = (1..25).collect { new Person(name: "Batch${it}", lastname: 'PersistAll') }
+
+        when:
+        long count = entityManagerHandler.persistAll('internal', people, 10, true)
+
+        then:
+        count == 25
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createQuery("select count(p) from Person p where p.lastname = 'PersistAll'").singleResult
+        } == 25L
+    }
+
+    void 'persistAll closes the stream of entities it consumes'() {
+        given:
+        boolean closed = false
+        Stream<Person> people = (1..5).collect { new Person(name: "Closed${it}", lastname: 'PersistAll') }.stream()
+            .onClose { closed = true }
+
+        when:
+        long count = entityManagerHandler.persistAll('internal', people, 2, false)
+
+        then:
+        count == 5
+        closed
+    }
+
+    void 'streamResults releases its entityManager once the stream is closed'() {
+        given:
+        entityManagerHandler.persistAll('internal', (1..10).collect { new Person(name: "Stream${it}", lastname: 'Streamed') })
+        EntityManager streamEntityManager = null
+
+        when:
+        List<String> names = []
+        entityManagerHandler.streamResults('internal') { String persistenceUnitName, EntityManager entityManager ->
+            streamEntityManager = entityManager
+            entityManager.createQuery("select p from Person p where p.lastname = 'Streamed' order by p.id", Person)
+        }.withCloseable { stream ->
+            stream.forEach { Person person -> names << person.name }
+        }
+
+        then:
+        names.size() == 10
+        !streamEntityManager.open
+    }
+
+    void 'streamResults reads rows from the database as the stream advances'() {
+        given:
+        entityManagerHandler.persistAll('instrumented', (1..200).collect { new Person(name: "Lazy${it}", lastname: 'Cursor') })
+        StatementStatistics.UnitStatistics statistics = statementStatistics.forUnit('instrumented')
+        long rows = statistics.rows
+
+        when:
+        List<String> names = entityManagerHandler.withEntityManager('instrumented') { String persistenceUnitName, EntityManager entityManager ->
+            entityManagerHandler.streamResults('instrumented') { String name, EntityManager em ->
+                em.createQuery("select p from Person p where p.lastname = 'Cursor' order by p.id", Person)
+            }.withCloseable { stream ->
+                stream.limit(3).collect(Collectors.toList())*.name
+            }
+        }
+
+        then:
+        names == ['Lazy1', 'Lazy2', 'Lazy3']
+        statistics.rows - rows < 10
+    }
+
+    void 'Cached query results are reused until a transaction commits'() {
+        given:
+        String query = 'select p.name from Person p where p.lastname = :lastname'
+        Map<String, Object> parameters = [lastname: 'Cached']
+
+        when:
+        List<String> first = entityManagerHandler.getCachedResultList('people', query, String, parameters)
+        List<String> second = entityManagerHandler.getCachedResultList('people', query, String, [lastname: 'Cached'])
+
+        then:
+        first.empty
+        second.is(first)
+        queryResultCaches.forUnit('people').hitCount == 1
+
+        when:
+        entityManagerHandler.withTransaction('people') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.persist(new Person(name: 'Query', lastname: 'Cached'))
+        }
+        List<String> third = entityManagerHandler.getCachedResultList('people', query, String, parameters)
+
+        then:
+        third == ['Query']
+        queryResultCaches.forUnit('people').invalidationCount == 1
+    }
+
+    void 'Query results holding entities are not cached'() {
+        given:
+        entityManagerHandler.withTransaction('people') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.persist(new Person(name: 'Live', lastname: 'Entity'))
+        }
+        String query = 'select p from Person p where p.lastname = :lastname'
+        QueryResultCache cache = queryResultCaches.forUnit('people')
+        int size = cache.size()
+
+        when:
+        List<Person> first = entityManagerHandler.getCachedResultList('people', query, Person, [lastname: 'Entity'])
+        List<Object[]> rows = entityManagerHandler.getCachedResultList('people', 'select p.name, p from Person p where p.lastname = :lastname', Object[], [lastname: 'Entity'])
+        List<Person> second = entityManagerHandler.getCachedResultList('people', query, Person, [lastname: 'Entity'])
+
+        then:
+        first*.name == ['Live']
+        rows.size() == 1
+        !second.is(first)
+        cache.size() == size
+    }
+
+    void 'Query results are not cached unless enabled for the persistence unit'() {
+        when:
+        entityManagerHandler.getCachedResultList('internal', 'select p from Person p', Person, [:])
+
+        then:
+        queryResultCaches.forUnit('internal') == null
+    }
+
+    void 'Static queries are registered as named queries'() {
+        when:
+        List<Person> people = entityManagerHandler.withTransaction('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.persist(new Person(name: 'Static', lastname: 'Query'))
+            entityManager.flush()
+            entityManager.createNamedQuery('People.byLastname', Person)
+                .setParameter('lastname', 'Query')
+                .resultList
+        }
+
+        then:
+        people*.name == ['Static']
+    }
+
+    void 'Static queries of classes or fields that no longer exist are not registered'() {
+        when:
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createNamedQuery(queryName)
+        }
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        queryName << ['People.byName', 'RemovedQueries.all']
+    }
+
+    void 'Warm-up time is reported when connecting'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+
+        when:
+        entityManagerHandler.withEntityManager('internal') { String persistenceUnitName, EntityManager entityManager -> }
+        entityManagerHandler.withEntityManager('people') { String persistenceUnitName, EntityManager entityManager -> }
+
+        then:
+        testEventHandler.warmupTimes.containsKey('internal')
+        testEventHandler.warmupTimes['internal'] >= 0
+        testEventHandler.warmupTimes['people'] == 0
+    }
+
+    void 'Pooled entityManagers are cleared and reused'() {
+        given:
+        Person person = new Person(name: 'Pooled', lastname: 'Pool')
+
+        when:
+        EntityManager first = entityManagerHandler.withTransaction('pooled') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.persist(person)
+            entityManager
+        }
+        EntityManager second = entityManagerHandler.withEntityManager('pooled') { String persistenceUnitName, EntityManager entityManager ->
+            assert entityManager.createQuery("select p from Person p where p.lastname = 'Pool'", Person).resultList.size() == 1
+            entityManager
+        }
+
+        then:
+        first.is(second)
+        first.open
+        !first.contains(person)
+    }
+
+    void 'Leasing from an exhausted pool times out'() {
+        given:
+        CountDownLatch leased = new CountDownLatch(1)
+        CountDownLatch done = new CountDownLatch(1)
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+        executor.submit({
+            entityManagerHandler.withEntityManager('pooled') { String persistenceUnitName, EntityManager entityManager ->
+                leased.countDown()
+                done.await()
+            }
+        } as Callable<Boolean>)
+        leased.await()
+
+        when:
+        entityManagerHandler.withEntityManager('pooled') { String persistenceUnitName, EntityManager entityManager -> }
+
+        then:
+        thrown(PersistenceException)
+
+        cleanup:
+        done.countDown()
+        executor.shutdown()
+    }
+
+    void 'Open result streams hold an entityManager of the pool'() {
+        given:
+        Stream<Person> people = entityManagerHandler.streamResults('pooled') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createQuery('select p from Person p', Person)
+        }
+
+        when:
+        entityManagerHandler.withEntityManager('pooled') { String persistenceUnitName, EntityManager entityManager -> }
+
+        then:
+        thrown(PersistenceException)
+
+        when:
+        people.close()
+        entityManagerHandler.withEntityManager('pooled') { String persistenceUnitName, EntityManager entityManager -> }
+
+        then:
+        notThrown(PersistenceException)
+    }
+
+    void 'Read-only callbacks on a group are routed to its readers'() {
+        when:
+        String reader = entityManagerHandler.withTransaction('peopleGroup', true) { String persistenceUnitName, EntityManager entityManager ->
+            persistenceUnitName
+        }
+        String writer = entityManagerHandler.withTransaction('peopleGroup') { String persistenceUnitName, EntityManager entityManager ->
+            persistenceUnitName
+        }
+        String nested = entityManagerHandler.withTransaction('peopleGroup') { String persistenceUnitName, EntityManager entityManager ->
+            entityManagerHandler.withTransaction('peopleGroup', true) { String name, EntityManager em -> name }
+        }
+
+        then:
+        reader == 'internal'
+        writer == 'people'
+        nested == 'people'
+    }
+
+    void 'Read-only callbacks fall back to the writer when readers fail'() {
+        expect:
+        entityManagerHandler.withTransaction('fallbackGroup', true) { String persistenceUnitName, EntityManager entityManager ->
+            persistenceUnitName
+        } == 'people'
+    }
+
+    void 'Callback failures on a reader are not retried on other members of the group'() {
+        given:
+        List<String> attempts = []
+
+        when:
+        entityManagerHandler.withTransaction('peopleGroup', true) { String persistenceUnitName, EntityManager entityManager ->
+            attempts << persistenceUnitName
+            throw new QueryTimeoutException('too slow')
+        }
+
+        then:
+        thrown(QueryTimeoutException)
+        attempts == ['internal']
+        entityManagerHandler.withTransaction('peopleGroup', true) { String persistenceUnitName, EntityManager entityManager ->
+            persistenceUnitName
+        } == 'internal'
+    }
+
+    void 'Shard keys are routed consistently across shards'() {
+        when:
+        Map<Integer, String> shards = (1..100).collectEntries { [(it): shardedEntityManagerHandler.shardFor('customers', it)] }
+        String used = shardedEntityManagerHandler.withEntityManager('customers', 42) { String persistenceUnitName, EntityManager entityManager ->
+            persistenceUnitName
+        }
+
+        then:
+        shards.values().toSet() == ['people', 'internal'] as Set
+        used == shards[42]
+        shardedEntityManagerHandler.shardFor('customers', 42) == shards[42]
+    }
+
+    void 'Callbacks run on every shard and results are merged'() {
+        when:
+        Map<String, String> results = shardedEntityManagerHandler.withEachShard('customers') { String persistenceUnitName, EntityManager entityManager ->
+            persistenceUnitName.toUpperCase()
+        }
+        Integer total = shardedEntityManagerHandler.withEachShard('customers', { String persistenceUnitName, EntityManager entityManager ->
+            1
+        }, Collectors.summingInt { it })
+
+        then:
+        results == [people: 'PEOPLE', internal: 'INTERNAL']
+        total == 2
+    }
+
+    void 'Scatter executors of shard groups are stopped on shutdown'() {
+        given:
+        shardedEntityManagerHandler.withEachShard('customers') { String persistenceUnitName, EntityManager entityManager -> 1 }
+        ExecutorService executorService = shardedEntityManagerHandler.asyncExecutors.executors['customers']
+
+        when:
+        shardedEntityManagerHandler.shutdown()
+
+        then:
+        executorService.shutdown
+        !shardedEntityManagerHandler.asyncExecutors.executors
+    }
+
+    void 'Idle persistence units are closed and reopened on demand'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+        PollingConditions conditions = new PollingConditions(timeout: 10)
+
+        when:
+        entityManagerHandler.withEntityManager('evictable') { String persistenceUnitName, EntityManager entityManager -> }
+        conditions.eventually {
+            assert jpaSettingsStorageStatistics.evictionCounts['evictable'] >= 1
+        }
+        boolean reopened = entityManagerHandler.withEntityManager('evictable') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.open
+        }
+
+        then:
+        reopened
+        testEventHandler.events.take(6) == [
+            'JpaConnectStartEvent', 'JpaConnectEndEvent',
+            'JpaDisconnectStartEvent', 'JpaDisconnectEndEvent',
+            'JpaConnectStartEvent', 'JpaConnectEndEvent'
+        ]
+        jpaSettingsStorageStatistics.evictionCounts['evictable'] >= 1
+    }
+
+    void 'Shared persistence contexts are cleared when crossing the configured size'() {
+        given:
+        EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit('guarded')
+
+        when:
+        List<Person> people = entityManagerHandler.withTransaction('guarded') { String persistenceUnitName, EntityManager entityManager ->
+            (1..3).collect { int id ->
+                Person person = new Person(name: "guarded${id}", lastname: 'Doe')
+                entityManager.persist(person)
+                person
+            }
+        }
+        boolean managed = entityManagerHandler.withEntityManager('guarded') { String persistenceUnitName, EntityManager entityManager ->
+            people.any { entityManager.contains(it) }
+        }
+
+        then:
+        !managed
+        statistics.contextClears == 1
+        statistics.contextSize == 0
+    }
+
+    void 'Persistence contexts are not measured unless guarded'() {
+        when:
+        entityManagerHandler.withEntityManager('people') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createQuery('select p from Person p').resultList
+        }
+
+        then:
+        entityManagerHandlerStatistics.forUnit('people').contextSize == -1
+    }
+
+    void 'Transactional callbacks are retried after transient failures'() {
+        given:
+        EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit('retrying')
+        int attempts = 0
+
+        when:
+        Person person = entityManagerHandler.withTransaction('retrying') { String persistenceUnitName, EntityManager entityManager ->
+            Person p = new Person(name: 'Retry', lastname: "Attempt${++attempts}")
+            entityManager.persist(p)
+            if (attempts < 3) {
+                throw new OptimisticLockException('conflict')
+            }
+            p
+        }
+        long persisted = entityManagerHandler.withEntityManager('retrying') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createQuery('select count(p) from Person p where p.name = :name')
+                .setParameter('name', 'Retry')
+                .singleResult
+        }
+
+        then:
+        attempts == 3
+        person.lastname == 'Attempt3'
+        persisted == 1
+        statistics.retries == 2
+        statistics.exhaustedRetries == 0
+    }
+
+    void 'Transactional callbacks are not retried after permanent failures or past the attempt limit'() {
+        given:
+        EntityManagerHandlerStatistics.UnitStatistics statistics = entityManagerHandlerStatistics.forUnit('retrying')
+        int permanentAttempts = 0
+        int transientAttempts = 0
+
+        when:
+        entityManagerHandler.withTransaction('retrying') { String persistenceUnitName, EntityManager entityManager ->
+            permanentAttempts++
+            throw new IllegalStateException('permanent')
+        }
+
+        then:
+        thrown(IllegalStateException)
+        permanentAttempts == 1
+
+        when:
+        entityManagerHandler.withTransaction('retrying') { String persistenceUnitName, EntityManager entityManager ->
+            transientAttempts++
+            throw new OptimisticLockException('conflict')
+        }
+
+        then:
+        thrown(OptimisticLockException)
+        transientAttempts == 3
+        statistics.retries == 2
+        statistics.exhaustedRetries == 1
+    }
+
+    void 'Repeated statements within a callback are reported'() {
+        given:
+        List<String> names = (1..5).collect { "Instrumented$it".toString() }
+        entityManagerHandler.withTransaction('instrumented') { String persistenceUnitName, EntityManager entityManager ->
+            names.each { entityManager.persist(new Person(name: it, lastname: 'N+1')) }
+        }
+        StatementStatistics.UnitStatistics statistics = statementStatistics.forUnit('instrumented')
+        long statements = statistics.statements
+        long rows = statistics.rows
+
+        when:
+        List<Person> people = entityManagerHandler.withEntityManager('instrumented') { String persistenceUnitName, EntityManager entityManager ->
+            names.collect { String name ->
+                entityManager.createQuery('select p from Person p where p.name = :name', Person)
+                    .setParameter('name', name)
+                    .singleResult
+            }
+        }
+        StatementStatistics.Offender offender = statementStatistics.getWorstOffenders(10)
+            .find { it.persistenceUnit == 'instrumented' && it.repeatedStatement.startsWith('select') }
+
+        then:
+        people.size() == 5
+        statistics.statements - statements >= 5
+        statistics.rows - rows >= 5
+        statistics.violations >= 1
+        offender
+        offender.maxRepetitions >= 5
+        !statementStatistics.forUnit('people').statements
+    }
+
+    void 'Persistence units with a dataSource block connect through a pooled DataSource'() {
+        when:
+        Person person = entityManagerHandler.withTransaction('jdbcPool') { String persistenceUnitName, EntityManager entityManager ->
+            Person p = new Person(name: 'Pooled', lastname: 'Connection')
+            entityManager.persist(p)
+            p
+        }
+        long count = entityManagerHandler.withEntityManager('jdbcPool') { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.createQuery('select count(p) from Person p where p.name = :name')
+                .setParameter('name', 'Pooled')
+                .singleResult
+        }
+
+        then:
+        person.id
+        count == 1
+        dataSourcePools.collect(DataSourcePool.&getMaxSize) == [jdbcPool: 2]
+        dataSourcePools.collect(DataSourcePool.&getSize)['jdbcPool'] >= 1
+        dataSourcePools.collect(DataSourcePool.&getActive)['jdbcPool'] == 0
+
+        when:
+        entityManagerHandler.closeEntityManager('jdbcPool')
+
+        then:
+        !dataSourcePools.collect(DataSourcePool.&getMaxSize).containsKey('jdbcPool')
+    }
+
+    void 'A failing bootstrap closes the pooled DataSource of its persistence unit'() {
+        given:
+        bootstrap.failOn = 'jdbcPool'
+
+        when:
+        entityManagerHandler.withEntityManager('jdbcPool') { String persistenceUnitName, EntityManager entityManager -> }
+
+        then:
+        thrown(IllegalStateException)
+        !dataSourcePools.collect(DataSourcePool.&getMaxSize).containsKey('jdbcPool')
+
+        when:
+        bootstrap.failOn = null
+        entityManagerHandler.withEntityManager('jdbcPool') { String persistenceUnitName, EntityManager entityManager -> }
+
+        then:
+        dataSourcePools.collect(DataSourcePool.&getMaxSize) == [jdbcPool: 2]
+    }
+
+    void 'Callbacks are recorded as flight recorder events'() {
+        given:
+        Recording recording = new Recording()
+        recording.enable('griffon.jpa.Callback').withoutThreshold()
+        Path file = Files.createTempFile('griffon-jpa', '.jfr')
+
+        when:
+        recording.start()
+        entityManagerHandler.withTransaction { String persistenceUnitName, EntityManager entityManager ->
+            entityManager.persist(new Person(name: 'Flight', lastname: 'Recorder'))
+        }
+        recording.stop()
+        recording.dump(file)
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).findAll { it.eventType.name == 'griffon.jpa.Callback' }
+
+        then:
+        events.size() == 1
+        events[0].getString('persistenceUnit') == 'default'
+        events[0].getString('transactionMode') == 'READ_WRITE'
+        events[0].getString('outcome') == 'committed'
+
+        cleanup:
+        recording.close()
+        Files.deleteIfExists(file)
+    }
+
     @BindTo(JpaBootstrap)
     private TestJpaBootstrap bootstrap = new TestJpaBootstrap()
 
     private class TestEventHandler {
-        List<String> events = []
+        List<String> events = [].asSynchronized()
+        Map<String, Long> warmupTimes = [:].asSynchronized()
 
         @EventHandler
         void handleJpaConnectStartEvent(JpaConnectStartEvent event) {
@@ -186,6 +1176,7 @@ class JpaSpec extends Specification {
         @EventHandler
         void handleJpaConnectEndEvent(JpaConnectEndEvent event) {
             events << event.class.simpleName
+            warmupTimes[event.name] = event.warmupTime
         }
 
         @EventHandler
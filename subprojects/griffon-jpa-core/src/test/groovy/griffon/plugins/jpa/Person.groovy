@@ -21,8 +21,10 @@ import javax.persistence.Entity
 import javax.persistence.GeneratedValue
 import javax.persistence.GenerationType
 import javax.persistence.Id
+import javax.persistence.NamedQuery
 
 @Entity
+@NamedQuery(name = 'Person.findAll', query = 'select p from Person p')
 class Person {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -23,10 +23,14 @@ import javax.persistence.EntityManager
 class TestJpaBootstrap implements JpaBootstrap {
     boolean initWitness
     boolean destroyWitness
+    String failOn
 
     @Override
     void init(@Nonnull String persistenceUnitName, @Nonnull EntityManager entityManager) {
         initWitness = true
+        if (persistenceUnitName == failOn) {
+            throw new IllegalStateException("Bootstrap of ${persistenceUnitName} failed")
+        }
     }
 
     @Override
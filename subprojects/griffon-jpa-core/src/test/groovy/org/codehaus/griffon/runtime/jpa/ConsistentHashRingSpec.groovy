@@ -0,0 +1,47 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa
+
+import spock.lang.Specification
+
+class ConsistentHashRingSpec extends Specification {
+    void 'Keys are spread across all nodes'() {
+        given:
+        ConsistentHashRing ring = new ConsistentHashRing(['a', 'b', 'c', 'd'], 160)
+
+        when:
+        Map<String, Integer> counts = (1..10_000).countBy { ring.nodeFor(it) }
+
+        then:
+        counts.keySet() == ['a', 'b', 'c', 'd'] as Set
+        counts.values().every { it > 1_500 && it < 3_500 }
+    }
+
+    void 'Adding a node only relocates keys onto the new node'() {
+        given:
+        ConsistentHashRing before = new ConsistentHashRing(['a', 'b', 'c'], 160)
+        ConsistentHashRing after = new ConsistentHashRing(['a', 'b', 'c', 'd'], 160)
+
+        when:
+        List<Integer> moved = (1..10_000).findAll { before.nodeFor(it) != after.nodeFor(it) }
+
+        then:
+        moved.every { after.nodeFor(it) == 'd' }
+        moved.size() < 4_000
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa
+
+import spock.lang.Specification
+
+class DefaultQueryResultCacheSpec extends Specification {
+    void 'Expired entries are reported as misses'() {
+        given:
+        DefaultQueryResultCache cache = new DefaultQueryResultCache(10, 1L)
+        cache.put('key', ['value'], ['Person'] as Set)
+
+        when:
+        Thread.sleep(1)
+        List<?> results = cache.get('key')
+
+        then:
+        results == null
+        cache.missCount == 1
+        cache.evictionCount == 1
+    }
+
+    void 'Frequently requested entries are not displaced by one-off queries'() {
+        given:
+        DefaultQueryResultCache cache = new DefaultQueryResultCache(1, 0L)
+        5.times { cache.get('popular') }
+        cache.put('popular', ['value'], ['Person'] as Set)
+
+        when:
+        cache.get('rare')
+        cache.put('rare', ['other'], ['Person'] as Set)
+
+        then:
+        cache.size() == 1
+        cache.get('popular') == ['value']
+        cache.get('rare') == null
+    }
+
+    void 'Invalidation only discards entries that depend on the given entities'() {
+        given:
+        DefaultQueryResultCache cache = new DefaultQueryResultCache(10, 0L)
+        cache.put('people', ['p'], ['Person'] as Set)
+        cache.put('orders', ['o'], ['Order', 'Item'] as Set)
+
+        when:
+        cache.invalidate(['Item'])
+
+        then:
+        cache.get('people') == ['p']
+        cache.get('orders') == null
+        cache.invalidationCount == 1
+    }
+}
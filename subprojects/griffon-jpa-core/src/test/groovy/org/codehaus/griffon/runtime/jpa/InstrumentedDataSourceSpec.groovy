@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa
+
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.Connection
+
+class InstrumentedDataSourceSpec extends Specification {
+    void 'Wrappers answer equals and hashCode by identity'() {
+        given:
+        Connection connection = Mock(Connection)
+        DataSource dataSource = Mock(DataSource) {
+            getConnection() >> connection
+        }
+        DataSource wrapper = InstrumentedDataSource.wrap('people', dataSource)
+        Connection wrappedConnection = wrapper.connection
+
+        expect:
+        wrapper.equals(wrapper)
+        !wrapper.equals(dataSource)
+        !wrapper.equals(InstrumentedDataSource.wrap('people', dataSource))
+        wrapper.hashCode() == System.identityHashCode(wrapper)
+        wrappedConnection.equals(wrappedConnection)
+        !wrappedConnection.equals(connection)
+        wrappedConnection.toString().startsWith('InstrumentedConnection[')
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa
+
+import griffon.core.Configuration
+import griffon.core.GriffonApplication
+import griffon.core.events.StartupStartEvent
+import griffon.plugins.jpa.EntityManagerCallback
+import griffon.plugins.jpa.EntityManagerHandler
+import griffon.plugins.jpa.JpaSettingsFactory
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class JpaAddonSpec extends Specification {
+    private final List<String> attempts = [].asSynchronized()
+    private final Map<String, String> connections = [:].asSynchronized()
+    private final JpaSettingsFactory jpaSettingsFactory = Stub(JpaSettingsFactory) {
+        getPersistenceUnitNames() >> (['default', 'people', 'internal', 'bogus'] as LinkedHashSet)
+        getConfigurationFor('default') >> [:]
+        getConfigurationFor(_ as String) >> [connect_on_startup: true]
+    }
+
+    void 'Flagged persistence units connect concurrently and a failing one does not affect the others'() {
+        given:
+        JpaAddon addon = createAddon(configuration(async: false)) { String persistenceUnitName ->
+            if (persistenceUnitName == 'bogus') {
+                throw new IllegalStateException('bogus')
+            }
+        }
+
+        when:
+        addon.handleStartupStartEvent(StartupStartEvent.of(Stub(GriffonApplication)))
+
+        then:
+        notThrown(Exception)
+        attempts as Set == ['people', 'internal', 'bogus'] as Set
+        connections.keySet() == ['people', 'internal'] as Set
+        connections.values().every { it.startsWith('jpa-startup-') }
+    }
+
+    void 'Flagged persistence units connect in the background when startup is asynchronous'() {
+        given:
+        CountDownLatch release = new CountDownLatch(1)
+        JpaAddon addon = createAddon(configuration(async: true)) { String persistenceUnitName ->
+            release.await(10, TimeUnit.SECONDS)
+        }
+
+        when:
+        addon.handleStartupStartEvent(StartupStartEvent.of(Stub(GriffonApplication)))
+
+        then:
+        connections.isEmpty()
+
+        when:
+        release.countDown()
+
+        then:
+        new PollingConditions(timeout: 10).eventually {
+            assert connections.keySet() == ['people', 'internal', 'bogus'] as Set
+        }
+    }
+
+    private Configuration configuration(Map<String, Boolean> settings) {
+        Stub(Configuration) {
+            getAsInt('connect_on_startup_threads', _ as Integer) >> 3
+            getAsBoolean('connect_on_startup_async', _ as Boolean) >> settings.async
+            getAsLong('connect_on_startup_timeout', _ as Long) >> 0L
+        }
+    }
+
+    private JpaAddon createAddon(Configuration configuration, Closure<?> connector) {
+        EntityManagerHandler entityManagerHandler = Stub(EntityManagerHandler) {
+            withEntityManager(_ as String, _ as EntityManagerCallback) >> { String persistenceUnitName, EntityManagerCallback callback ->
+                attempts << persistenceUnitName
+                connector.call(persistenceUnitName)
+                connections[persistenceUnitName] = Thread.currentThread().name
+                null
+            }
+        }
+
+        JpaAddon addon = new JpaAddon()
+        addon.@configuration = configuration
+        addon.@jpaSettingsFactory = jpaSettingsFactory
+        addon.@entityManagerHandler = entityManagerHandler
+        addon
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class LatencyHistogramSpec extends Specification {
+    void 'Value #value is reported within the bucket precision'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram()
+
+        when:
+        histogram.record(value)
+
+        then:
+        histogram.getPercentile(50d) >= value
+        histogram.getPercentile(50d) <= value * 1.125 + 1
+        histogram.max == value
+
+        where:
+        value << [0L, 7L, 100L, 1_000L, 123_456_789L]
+    }
+
+    void 'Percentiles follow the recorded distribution'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram()
+
+        when:
+        (1..1000).each { histogram.record(it * 1000L) }
+
+        then:
+        histogram.count == 1000
+        Math.abs(histogram.getPercentile(50d) - 500_000L) <= 500_000L * 0.125
+        Math.abs(histogram.getPercentile(99d) - 990_000L) <= 990_000L * 0.125
+        histogram.getPercentile(100d) == 1_000_000L
+        histogram.mean == 500_500d
+    }
+
+    void 'Reset clears all recorded values'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram()
+        histogram.record(42L)
+
+        when:
+        histogram.reset()
+
+        then:
+        histogram.count == 0
+        histogram.max == 0
+        histogram.getPercentile(99d) == 0
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa
+
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+
+class PersistenceContextGuardSpec extends Specification {
+    void 'Callbacks are counted per entityManager when the size is unknown'() {
+        given:
+        PersistenceContextGuard guard = new PersistenceContextGuard(0, 3)
+        EntityManager first = Mock(EntityManager)
+        EntityManager second = Mock(EntityManager)
+
+        expect:
+        !guard.shouldClear(first, -1)
+        !guard.shouldClear(first, -1)
+        !guard.shouldClear(second, -1)
+        guard.shouldClear(first, -1)
+
+        when:
+        guard.cleared(first)
+
+        then:
+        !guard.shouldClear(first, -1)
+        !guard.shouldClear(second, -1)
+        guard.shouldClear(second, -1)
+    }
+
+    void 'Measured contexts are cleared once they exceed their maximum size'() {
+        given:
+        PersistenceContextGuard guard = new PersistenceContextGuard(2, 0)
+        EntityManager entityManager = Mock(EntityManager)
+
+        expect:
+        !guard.shouldClear(entityManager, 2)
+        guard.shouldClear(entityManager, 3)
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa
+
+import spock.lang.Specification
+
+import javax.persistence.OptimisticLockException
+import javax.persistence.PersistenceException
+import java.sql.SQLException
+import java.sql.SQLRecoverableException
+
+class RetryPolicySpec extends Specification {
+    void 'Connection failures are not retried by default'() {
+        given:
+        RetryPolicy policy = RetryPolicy.of('people', [retry: [maxAttempts: 3]])
+
+        expect:
+        policy.isRetryable(new OptimisticLockException())
+        policy.isRetryable(new PersistenceException(new SQLException('deadlock', '40001')))
+        !policy.isRetryable(new PersistenceException(new SQLException('connection lost', '08006')))
+        !policy.isRetryable(new PersistenceException(new SQLRecoverableException('connection lost')))
+    }
+
+    void 'Connection failures are retried when configured'() {
+        given:
+        RetryPolicy policy = RetryPolicy.of('people', [retry: [maxAttempts: 3, sqlStates: ['08']]])
+
+        expect:
+        policy.isRetryable(new PersistenceException(new SQLException('connection lost', '08006')))
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jpa
+
+import spock.lang.Specification
+
+class UnitUsageSpec extends Specification {
+    void 'The evicting thread fails fast when it re-enters its persistence unit'() {
+        given:
+        UnitUsage usage = new UnitUsage('people')
+
+        when:
+        assert usage.tryEvict()
+        usage.enter()
+
+        then:
+        IllegalStateException e = thrown()
+        e.message == "Persistence unit 'people' cannot be used while it is being evicted"
+
+        when:
+        usage.evicted()
+        usage.enter()
+
+        then:
+        !usage.tryEvict()
+    }
+}
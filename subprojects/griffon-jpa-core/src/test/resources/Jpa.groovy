@@ -33,9 +33,96 @@ environments {
     }
 }
 
+// tag::persistenceUnits[]
 persistenceUnits {
     internal {
+        entityManagerScope = 'perCall'
+        warmup {
+            enabled = true
+            queries = ['select p from Person p']
+        }
+        batchLoader {
+            window = 100
+        }
     }
     people {
+        queryCache {
+            enabled = true
+            maxSize = 100
+        }
+        fetchProfiles {
+            personNames {
+                entity = 'Person'
+                attributes = ['name', 'lastname']
+            }
+        }
+    }
+}
+// end::persistenceUnits[]
+
+// persistence units exercised by the specs only
+persistenceUnits {
+    pooled {
+        entityManagerScope = 'pooled'
+        pool {
+            maxSize = 1
+            acquireTimeout = 200
+        }
+    }
+    evictable {
+        idleTimeout = 200
+    }
+    threaded {
+        entityManagerScope = 'perThread'
+    }
+    guarded {
+        persistenceContext {
+            maxSize = 2
+        }
+    }
+    retrying {
+        retry {
+            maxAttempts = 3
+            initialBackoff = 1
+        }
+    }
+    instrumented {
+        dataSource {
+            pool {
+                maximumPoolSize = 4
+            }
+        }
+        instrumentation {
+            enabled = true
+            maxRepetitions = 3
+        }
+    }
+    jdbcPool {
+        dataSource {
+            url = 'jdbc:h2:mem:jdbcPool'
+            pool {
+                maximumPoolSize = 2
+                minimumIdle = 1
+                leakDetectionThreshold = 10000
+            }
+        }
+    }
+}
+
+persistenceUnitGroups {
+    peopleGroup {
+        writer = 'people'
+        readers = ['internal']
+    }
+    fallbackGroup {
+        writer = 'people'
+        readers = ['missing']
+    }
+}
+
+shards {
+    customers {
+        units = ['people', 'internal']
+        virtualNodes = 64
     }
 }
\ No newline at end of file
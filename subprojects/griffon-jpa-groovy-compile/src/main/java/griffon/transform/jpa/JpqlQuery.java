@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.transform.jpa;
+
+import org.codehaus.groovy.transform.GroovyASTTransformationClass;
+
+import java.lang.annotation.*;
+
+/**
+ * <p>Annotates a field holding a JPQL statement. The statement is validated at compile time against the entity
+ * classes it refers to; unknown entities, attributes or identification variables fail the compilation. Valid
+ * statements are registered as named queries when the persistence unit is created, thus they are parsed once.</p>
+ * <p>Entities are looked up among the classes being compiled, the imports of the file and the {@link #entities()}
+ * member.</p>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.FIELD})
+@GroovyASTTransformationClass("org.codehaus.griffon.compile.jpa.ast.transform.JpqlQueryASTTransformation")
+public @interface JpqlQuery {
+    /**
+     * Name of the query, {@code <SimpleClassName>.<fieldName>} when left blank.
+     */
+    String name() default "";
+
+    /**
+     * Persistence unit the query is registered on. When left blank the query is registered on every persistence
+     * unit that manages all the entities it refers to.
+     */
+    String unit() default "";
+
+    /**
+     * Entity classes that are neither compiled alongside nor imported by the annotated class.
+     */
+    Class<?>[] entities() default {};
+}
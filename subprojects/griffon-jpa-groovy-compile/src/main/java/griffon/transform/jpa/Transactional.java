@@ -0,0 +1,47 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.transform.jpa;
+
+import org.codehaus.groovy.transform.GroovyASTTransformationClass;
+
+import java.lang.annotation.*;
+
+/**
+ * <p>Annotates a method. Its body runs inside a transaction of the given persistence unit, committed when the
+ * method returns and rolled back when it throws. The transaction is demarcated at compile time through
+ * {@link griffon.plugins.jpa.EntityManagerHandler#beginTransaction(String, boolean)}; the enclosing class
+ * receives an injected {@code EntityManagerHandler} as with {@code @EntityManagerAware} unless it already has one.</p>
+ * <p>An undeclared {@code entityManager} variable referenced in the body resolves to the {@code EntityManager} of the
+ * transaction.</p>
+ *
+ * @author Andres Almiray
+ * @see griffon.plugins.jpa.EntityManagerTransaction
+ * @since 3.0.0
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.METHOD})
+@GroovyASTTransformationClass("org.codehaus.griffon.compile.jpa.ast.transform.TransactionalASTTransformation")
+public @interface Transactional {
+    /**
+     * Name of the persistence unit or persistence unit group, the default persistence unit when left blank.
+     */
+    String unit() default "";
+
+    boolean readOnly() default false;
+}
@@ -36,11 +36,31 @@ public interface EntityManagerAwareConstants extends BaseConstants {
     String ENTITY_MANAGER_TYPE = "javax.persistence.EntityManager";
     String ENTITY_MANAGER_HANDLER_TYPE = "griffon.plugins.jpa.EntityManagerHandler";
     String ENTITY_MANAGER_CALLBACK_TYPE = "griffon.plugins.jpa.EntityManagerCallback";
+    String QUERY_CALLBACK_TYPE = "griffon.plugins.jpa.QueryCallback";
+    String ENTITY_MANAGER_TRANSACTION_TYPE = "griffon.plugins.jpa.EntityManagerTransaction";
     String ENTITY_MANAGER_HANDLER_PROPERTY = "entityManagerHandler";
     String ENTITY_MANAGER_HANDLER_FIELD_NAME = "this$" + ENTITY_MANAGER_HANDLER_PROPERTY;
 
     String METHOD_WITH_ENTITY_MANAGER = "withEntityManager";
     String METHOD_CLOSE_ENTITY_MANAGER = "closeEntityManager";
+    String METHOD_WITH_TRANSACTION = "withTransaction";
+    String METHOD_BEGIN_TRANSACTION = "beginTransaction";
+    String METHOD_WITH_ENTITY_MANAGER_ASYNC = "withEntityManagerAsync";
+    String METHOD_WITH_TRANSACTION_ASYNC = "withTransactionAsync";
+    String METHOD_PERSIST_ALL = "persistAll";
+    String METHOD_STREAM_RESULTS = "streamResults";
+    String METHOD_GET_CACHED_RESULT_LIST = "getCachedResultList";
+    String METHOD_FIND_ASYNC = "findAsync";
+    String BOOLEAN_TYPE = "boolean";
+    String INT_TYPE = "int";
+    String LONG_TYPE = "long";
+    String ITERABLE_TYPE = "java.lang.Iterable";
+    String STREAM_TYPE = "java.util.stream.Stream";
+    String LIST_TYPE = "java.util.List";
+    String MAP_TYPE = "java.util.Map";
+    String CLASS_TYPE = "java.lang.Class";
+    String OBJECT_TYPE = "java.lang.Object";
+    String COMPLETABLE_FUTURE_TYPE = "java.util.concurrent.CompletableFuture";
     String PERSISTENCE_UNIT_NAME = "persistenceUnitName";
     String CALLBACK = "callback";
 
@@ -55,6 +75,96 @@ public interface EntityManagerAwareConstants extends BaseConstants {
             args(annotatedType(types(type(ANNOTATION_NONNULL)), JAVA_LANG_STRING))
         ),
 
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, R),
+            typeParams(R),
+            METHOD_STREAM_RESULTS,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), QUERY_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, R),
+            typeParams(R),
+            METHOD_STREAM_RESULTS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), QUERY_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(LIST_TYPE, R),
+            typeParams(R),
+            METHOD_GET_CACHED_RESULT_LIST,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), MAP_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(LIST_TYPE, R),
+            typeParams(R),
+            METHOD_GET_CACHED_RESULT_LIST,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), MAP_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_FIND_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), OBJECT_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_FIND_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), OBJECT_TYPE))
+        ),
+
+        method(
+            type(LONG_TYPE),
+            METHOD_PERSIST_ALL,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), ITERABLE_TYPE))
+        ),
+        method(
+            type(LONG_TYPE),
+            METHOD_PERSIST_ALL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ITERABLE_TYPE))
+        ),
+        method(
+            type(LONG_TYPE),
+            METHOD_PERSIST_ALL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ITERABLE_TYPE),
+                type(INT_TYPE),
+                type(BOOLEAN_TYPE))
+        ),
+        method(
+            type(LONG_TYPE),
+            METHOD_PERSIST_ALL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), STREAM_TYPE),
+                type(INT_TYPE),
+                type(BOOLEAN_TYPE))
+        ),
+
         annotatedMethod(
             annotations(ANNOTATION_NONNULL),
             type(R),
@@ -70,6 +180,91 @@ public interface EntityManagerAwareConstants extends BaseConstants {
             args(
                 annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
                 annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(
+                type(BOOLEAN_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(BOOLEAN_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(ENTITY_MANAGER_TRANSACTION_TYPE),
+            METHOD_BEGIN_TRANSACTION,
+            args(type(BOOLEAN_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(ENTITY_MANAGER_TRANSACTION_TYPE),
+            METHOD_BEGIN_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(BOOLEAN_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_ENTITY_MANAGER_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_ENTITY_MANAGER_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ENTITY_MANAGER_CALLBACK_TYPE, R))
         )
     };
 }
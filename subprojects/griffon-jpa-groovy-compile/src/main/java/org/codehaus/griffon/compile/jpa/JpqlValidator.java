@@ -0,0 +1,368 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.jpa;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.GenericsType;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.PropertyNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Lightweight structural validation of JPQL statements. Statements are not fully parsed; instead the entity
+ * names, identification variables and path expressions they contain are checked against the entity classes.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class JpqlValidator {
+    private static final ClassNode COLLECTION_TYPE = ClassHelper.make(Collection.class);
+    private static final ClassNode MAP_TYPE = ClassHelper.make(Map.class);
+    private static final Set<String> STATEMENTS = new HashSet<>(Arrays.asList("SELECT", "UPDATE", "DELETE"));
+    private static final Set<String> CLAUSES = new HashSet<>(Arrays.asList("SELECT", "WHERE", "GROUP", "HAVING", "ORDER", "SET"));
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "SELECT", "UPDATE", "DELETE", "FROM", "WHERE", "SET", "AS", "JOIN", "LEFT", "INNER", "OUTER", "FETCH", "ON",
+        "GROUP", "BY", "HAVING", "ORDER", "ASC", "DESC", "AND", "OR", "NOT", "IN", "IS", "NULL", "EMPTY", "MEMBER",
+        "OF", "LIKE", "ESCAPE", "BETWEEN", "EXISTS", "ALL", "ANY", "SOME", "DISTINCT", "NEW", "CASE", "WHEN", "THEN",
+        "ELSE", "END", "TRUE", "FALSE", "TREAT", "KEY", "VALUE", "ENTRY", "OBJECT", "TYPE"));
+
+    private final Function<String, ClassNode> entityResolver;
+    private final Map<String, ClassNode> aliases = new HashMap<>();
+    private final Set<String> entityNames = new LinkedHashSet<>();
+    private final List<String> errors = new ArrayList<>();
+
+    private JpqlValidator(@Nonnull Function<String, ClassNode> entityResolver) {
+        this.entityResolver = entityResolver;
+    }
+
+    /**
+     * Validates a JPQL statement.
+     *
+     * @param jpql           the statement to validate.
+     * @param entityResolver resolves an entity name into its class, {@code null} if unknown.
+     * @return the outcome of the validation.
+     */
+    @Nonnull
+    public static Result validate(@Nonnull String jpql, @Nonnull Function<String, ClassNode> entityResolver) {
+        JpqlValidator validator = new JpqlValidator(entityResolver);
+        validator.validate(jpql);
+        return new Result(validator.errors, validator.entityNames);
+    }
+
+    private void validate(@Nonnull String jpql) {
+        List<Token> tokens = tokenize(jpql);
+        if (!errors.isEmpty()) {
+            return;
+        }
+        if (tokens.isEmpty() || !STATEMENTS.contains(tokens.get(0).keyword())) {
+            errors.add("Statement must start with SELECT, UPDATE or DELETE");
+            return;
+        }
+
+        declareVariables(tokens);
+        if (!errors.isEmpty()) {
+            return;
+        }
+        if ("SELECT".equals(tokens.get(0).keyword()) && entityNames.isEmpty()) {
+            errors.add("SELECT statement has no FROM clause");
+            return;
+        }
+
+        for (Token token : tokens) {
+            if (token.kind == Kind.IDENTIFIER && token.text.indexOf('.') > 0) {
+                validatePath(token.text);
+            }
+        }
+    }
+
+    /**
+     * Registers the identification variables declared by FROM, UPDATE and JOIN clauses.
+     */
+    private void declareVariables(@Nonnull List<Token> tokens) {
+        boolean inFrom = false;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            String keyword = token.keyword();
+            if ("FROM".equals(keyword)) {
+                inFrom = true;
+                i = declareRangeVariable(tokens, i + 1);
+            } else if ("UPDATE".equals(keyword) && i == 0) {
+                i = declareRangeVariable(tokens, i + 1);
+            } else if ("JOIN".equals(keyword)) {
+                int next = i + 1;
+                if (next < tokens.size() && "FETCH".equals(tokens.get(next).keyword())) {
+                    next++;
+                }
+                if (next < tokens.size() && tokens.get(next).kind == Kind.IDENTIFIER) {
+                    String path = tokens.get(next).text;
+                    i = declareVariable(tokens, next + 1, path.indexOf('.') > 0 ? resolvePath(path, false) : null);
+                }
+            } else if (inFrom && ",".equals(token.text)) {
+                if (i + 1 < tokens.size() && "IN".equals(tokens.get(i + 1).keyword())) {
+                    // collection member declaration: IN (path) variable
+                    int close = i + 1;
+                    while (close < tokens.size() && !")".equals(tokens.get(close).text)) {
+                        close++;
+                    }
+                    i = declareVariable(tokens, close + 1, null);
+                } else {
+                    i = declareRangeVariable(tokens, i + 1);
+                }
+            } else if (CLAUSES.contains(keyword) || ")".equals(token.text)) {
+                inFrom = false;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the last token consumed.
+     */
+    private int declareRangeVariable(@Nonnull List<Token> tokens, int index) {
+        if (index >= tokens.size() || tokens.get(index).kind != Kind.IDENTIFIER || tokens.get(index).isKeyword()) {
+            errors.add("Expected an entity name at position " + (index < tokens.size() ? tokens.get(index).position : -1));
+            return index;
+        }
+
+        String entityName = tokens.get(index).text;
+        ClassNode entity = entityResolver.apply(entityName);
+        if (entity == null) {
+            errors.add("Unknown entity '" + entityName + "'");
+        } else {
+            entityNames.add(entityName);
+        }
+        return declareVariable(tokens, index + 1, entity);
+    }
+
+    /**
+     * @return the index of the last token consumed.
+     */
+    private int declareVariable(@Nonnull List<Token> tokens, int index, @Nullable ClassNode type) {
+        if (index < tokens.size() && "AS".equals(tokens.get(index).keyword())) {
+            index++;
+        }
+        if (index < tokens.size() && tokens.get(index).kind == Kind.IDENTIFIER && !tokens.get(index).isKeyword()) {
+            aliases.put(tokens.get(index).text.toLowerCase(Locale.ENGLISH), type);
+            return index;
+        }
+        return index - 1;
+    }
+
+    private void validatePath(@Nonnull String path) {
+        String variable = path.substring(0, path.indexOf('.'));
+        if (aliases.containsKey(variable.toLowerCase(Locale.ENGLISH))) {
+            resolvePath(path, true);
+        } else if (Character.isLowerCase(variable.charAt(0)) && path.indexOf('.') == path.lastIndexOf('.')) {
+            // longer paths may be fully qualified names, such as enum literals
+            errors.add("Unknown identification variable '" + variable + "' in '" + path + "'");
+        }
+    }
+
+    /**
+     * Walks a path expression, one attribute at a time, for as long as the types involved are known.
+     *
+     * @return the type of the last attribute in the path, {@code null} if unknown.
+     */
+    @Nullable
+    private ClassNode resolvePath(@Nonnull String path, boolean report) {
+        String[] segments = path.split("\\.");
+        ClassNode type = aliases.get(segments[0].toLowerCase(Locale.ENGLISH));
+        for (int i = 1; i < segments.length && type != null; i++) {
+            ClassNode attributeType = findAttributeType(type, segments[i]);
+            if (attributeType == null) {
+                if (report) {
+                    errors.add("Unknown attribute '" + segments[i] + "' of '" + type.getNameWithoutPackage() + "' in '" + path + "'");
+                }
+                return null;
+            }
+            type = elementType(attributeType);
+        }
+        return type;
+    }
+
+    @Nullable
+    private static ClassNode findAttributeType(@Nonnull ClassNode type, @Nonnull String name) {
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (ClassNode current = type; current != null && !ClassHelper.OBJECT_TYPE.equals(current); current = current.getSuperClass()) {
+            PropertyNode property = current.getProperty(name);
+            if (property != null) {
+                return property.getType();
+            }
+            FieldNode field = current.getDeclaredField(name);
+            if (field != null) {
+                return field.getType();
+            }
+            MethodNode getter = current.getDeclaredMethod("get" + capitalized, Parameter.EMPTY_ARRAY);
+            if (getter == null) {
+                getter = current.getDeclaredMethod("is" + capitalized, Parameter.EMPTY_ARRAY);
+            }
+            if (getter != null) {
+                return getter.getReturnType();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the element type of collection and map attributes, the attribute type otherwise; {@code null}
+     * when the element type is not declared or is not worth walking into.
+     */
+    @Nullable
+    private static ClassNode elementType(@Nonnull ClassNode type) {
+        int index = -1;
+        if (type.implementsInterface(MAP_TYPE) || MAP_TYPE.equals(type)) {
+            index = 1;
+        } else if (type.implementsInterface(COLLECTION_TYPE) || COLLECTION_TYPE.equals(type)) {
+            index = 0;
+        }
+        if (index >= 0) {
+            GenericsType[] generics = type.getGenericsTypes();
+            return generics != null && generics.length > index && !generics[index].isPlaceholder() ? generics[index].getType() : null;
+        }
+        if (ClassHelper.isPrimitiveType(type) || type.getName().startsWith("java.")) {
+            return null;
+        }
+        return type;
+    }
+
+    @Nonnull
+    private List<Token> tokenize(@Nonnull String jpql) {
+        List<Token> tokens = new ArrayList<>();
+        int depth = 0;
+        int i = 0;
+        int length = jpql.length();
+        while (i < length) {
+            char c = jpql.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                i++;
+                while (i < length && (jpql.charAt(i) != '\'' || (i + 1 < length && jpql.charAt(i + 1) == '\''))) {
+                    i += jpql.charAt(i) == '\'' ? 2 : 1;
+                }
+                if (i >= length) {
+                    errors.add("Unterminated string literal at position " + start);
+                    return tokens;
+                }
+                i++;
+                tokens.add(new Token(Kind.LITERAL, jpql.substring(start, i), start));
+            } else if (c == ':' || c == '?') {
+                i++;
+                while (i < length && Character.isJavaIdentifierPart(jpql.charAt(i))) {
+                    i++;
+                }
+                if (i == start + 1) {
+                    errors.add("Missing parameter name at position " + start);
+                }
+                tokens.add(new Token(Kind.PARAMETER, jpql.substring(start, i), start));
+            } else if (Character.isJavaIdentifierStart(c)) {
+                while (i < length && (Character.isJavaIdentifierPart(jpql.charAt(i)) || jpql.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(Kind.IDENTIFIER, jpql.substring(start, i), start));
+            } else if (Character.isDigit(c)) {
+                while (i < length && (Character.isLetterOrDigit(jpql.charAt(i)) || jpql.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(Kind.LITERAL, jpql.substring(start, i), start));
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth < 0) {
+                    errors.add("Unbalanced ')' at position " + start);
+                    return tokens;
+                }
+                i++;
+                tokens.add(new Token(Kind.SYMBOL, String.valueOf(c), start));
+            }
+        }
+        if (depth > 0) {
+            errors.add("Unbalanced '(' in statement");
+        }
+        return tokens;
+    }
+
+    private enum Kind {
+        IDENTIFIER, PARAMETER, LITERAL, SYMBOL
+    }
+
+    private static final class Token {
+        private final Kind kind;
+        private final String text;
+        private final int position;
+
+        private Token(@Nonnull Kind kind, @Nonnull String text, int position) {
+            this.kind = kind;
+            this.text = text;
+            this.position = position;
+        }
+
+        @Nonnull
+        private String keyword() {
+            return kind == Kind.IDENTIFIER ? text.toUpperCase(Locale.ENGLISH) : "";
+        }
+
+        private boolean isKeyword() {
+            return KEYWORDS.contains(keyword());
+        }
+    }
+
+    public static final class Result {
+        private final List<String> errors;
+        private final Set<String> entityNames;
+
+        private Result(@Nonnull List<String> errors, @Nonnull Set<String> entityNames) {
+            this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+            this.entityNames = Collections.unmodifiableSet(new LinkedHashSet<>(entityNames));
+        }
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+
+        @Nonnull
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return the names of the entities the statement refers to.
+         */
+        @Nonnull
+        public Set<String> getEntityNames() {
+            return entityNames;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.jpa.ast.transform;
+
+import griffon.transform.jpa.JpqlQuery;
+import org.codehaus.griffon.compile.core.ast.transform.AbstractASTTransformation;
+import org.codehaus.griffon.compile.jpa.JpqlValidator;
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.FieldNode;
+import org.codehaus.groovy.ast.ImportNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.ClassExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.ListExpression;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.syntax.SyntaxException;
+import org.codehaus.groovy.transform.GroovyASTTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.Entity;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Handles the {@code @JpqlQuery} annotation. Statements held by annotated fields are validated with
+ * {@code JpqlValidator}; valid ones are written to a resource of their own class in {@value #QUERIES_DIRECTORY} of
+ * the output directory so that they can be registered as named queries at runtime. Every compilation of a class
+ * replaces its resource as a whole; {@value #QUERIES_INDEX} lists the classes that have one.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@GroovyASTTransformation(phase = CompilePhase.CANONICALIZATION)
+public class JpqlQueryASTTransformation extends AbstractASTTransformation {
+    public static final String QUERIES_DIRECTORY = "META-INF/griffon-jpa/queries/";
+    public static final String QUERIES_INDEX = "META-INF/griffon-jpa/queries.index";
+    private static final Logger LOG = LoggerFactory.getLogger(JpqlQueryASTTransformation.class);
+    private static final ClassNode JPQL_QUERY_CNODE = makeClassSafe(JpqlQuery.class);
+    private static final ClassNode ENTITY_CNODE = makeClassSafe(Entity.class);
+    private static final String PROCESSED = JpqlQueryASTTransformation.class.getName() + ".processed";
+    private static final String SUFFIX_QUERY = ".query";
+    private static final String SUFFIX_UNIT = ".unit";
+    private static final String SUFFIX_ENTITIES = ".entities";
+    private static final String SUFFIX_FIELD = ".field";
+    private static final String EXTENSION = ".properties";
+
+    /**
+     * Handles the bulk of the processing, mostly delegating to other methods.
+     *
+     * @param nodes  the ast nodes
+     * @param source the source unit for the nodes
+     */
+    public void visit(ASTNode[] nodes, SourceUnit source) {
+        if (!(nodes[0] instanceof AnnotationNode) || !(nodes[1] instanceof FieldNode)) {
+            throw new IllegalArgumentException("Internal error: wrong types: " + nodes[0].getClass() + " / " + nodes[1].getClass());
+        }
+
+        // every annotated field of a class is handled at once, the first time any of them is visited
+        ClassNode classNode = ((FieldNode) nodes[1]).getDeclaringClass();
+        if (classNode.getNodeMetaData(PROCESSED) != null) {
+            return;
+        }
+        classNode.setNodeMetaData(PROCESSED, Boolean.TRUE);
+
+        Map<String, Properties> queries = new LinkedHashMap<>();
+        for (FieldNode field : classNode.getFields()) {
+            for (AnnotationNode annotation : field.getAnnotations(JPQL_QUERY_CNODE)) {
+                Properties query = processQuery(classNode, field, annotation, source);
+                if (query != null) {
+                    String name = getMemberString(annotation, "name");
+                    name = name.isEmpty() ? classNode.getNameWithoutPackage() + "." + field.getName() : name;
+                    if (queries.put(name, query) != null) {
+                        addError("Duplicate query name '" + name + "'", field, source);
+                    }
+                }
+            }
+        }
+
+        if (source.getErrorCollector().hasErrors()) {
+            return;
+        }
+        writeQueries(classNode, queries, source);
+    }
+
+    private static Properties processQuery(ClassNode classNode, FieldNode field, AnnotationNode annotation, SourceUnit source) {
+        Expression value = field.getInitialExpression();
+        if (!field.isFinal() || !(value instanceof ConstantExpression) || !(((ConstantExpression) value).getValue() instanceof String)) {
+            addError("@JpqlQuery requires a final field initialized with a String constant", field, source);
+            return null;
+        }
+
+        String jpql = (String) ((ConstantExpression) value).getValue();
+        Map<String, ClassNode> entities = collectEntities(annotation);
+        JpqlValidator.Result result = JpqlValidator.validate(jpql, entityName -> resolveEntity(entityName, entities, source));
+        if (!result.isValid()) {
+            for (String error : result.getErrors()) {
+                addError("Invalid JPQL in " + classNode.getNameWithoutPackage() + "." + field.getName() + ": " + error, field, source);
+            }
+            return null;
+        }
+
+        Properties query = new Properties();
+        query.setProperty(SUFFIX_QUERY, jpql);
+        query.setProperty(SUFFIX_UNIT, getMemberString(annotation, "unit"));
+        query.setProperty(SUFFIX_ENTITIES, String.join(",", result.getEntityNames()));
+        query.setProperty(SUFFIX_FIELD, field.getName());
+        return query;
+    }
+
+    private static Map<String, ClassNode> collectEntities(AnnotationNode annotation) {
+        Expression member = annotation.getMember("entities");
+        if (member == null) {
+            return Collections.emptyMap();
+        }
+        List<Expression> expressions = member instanceof ListExpression ?
+            ((ListExpression) member).getExpressions() : Collections.singletonList(member);
+        Map<String, ClassNode> entities = new LinkedHashMap<>();
+        for (Expression expression : expressions) {
+            if (expression instanceof ClassExpression) {
+                ClassNode type = expression.getType();
+                entities.put(entityNameOf(type), type);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Looks up an entity among the explicit {@code entities}, the classes being compiled and the classes
+     * visible from the imports and package of the source unit.
+     */
+    private static ClassNode resolveEntity(String entityName, Map<String, ClassNode> entities, SourceUnit source) {
+        ClassNode entity = entities.get(entityName);
+        if (entity != null) {
+            return entity;
+        }
+
+        ModuleNode module = source.getAST();
+        for (ClassNode candidate : module.getUnit().getClasses()) {
+            if (isEntity(candidate) && entityName.equals(entityNameOf(candidate))) {
+                return candidate;
+            }
+        }
+
+        ImportNode imported = module.getImport(entityName);
+        if (imported != null && isEntity(imported.getType())) {
+            return imported.getType();
+        }
+        for (ImportNode starImport : module.getStarImports()) {
+            ClassNode candidate = loadEntity(starImport.getPackageName() + entityName, source);
+            if (candidate != null) {
+                return candidate;
+            }
+        }
+        String packageName = module.getPackageName();
+        return loadEntity((packageName != null ? packageName : "") + entityName, source);
+    }
+
+    private static ClassNode loadEntity(String className, SourceUnit source) {
+        try {
+            ClassNode candidate = ClassHelper.make(source.getClassLoader().loadClass(className));
+            return isEntity(candidate) ? candidate : null;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static boolean isEntity(ClassNode classNode) {
+        return !classNode.getAnnotations(ENTITY_CNODE).isEmpty();
+    }
+
+    private static String entityNameOf(ClassNode classNode) {
+        for (AnnotationNode annotation : classNode.getAnnotations(ENTITY_CNODE)) {
+            String name = getMemberString(annotation, "name");
+            if (!name.isEmpty()) {
+                return name;
+            }
+        }
+        return classNode.getNameWithoutPackage();
+    }
+
+    private static String getMemberString(AnnotationNode annotation, String name) {
+        Expression member = annotation.getMember(name);
+        return member instanceof ConstantExpression ? String.valueOf(((ConstantExpression) member).getValue()).trim() : "";
+    }
+
+    private static void writeQueries(ClassNode classNode, Map<String, Properties> queries, SourceUnit source) {
+        File targetDirectory = source.getConfiguration().getTargetDirectory();
+        if (targetDirectory == null) {
+            LOG.debug("No target directory, queries of {} will not be registered", classNode.getName());
+            return;
+        }
+
+        File directory = new File(targetDirectory, QUERIES_DIRECTORY);
+        File file = new File(directory, classNode.getName() + EXTENSION);
+        try {
+            Properties properties = new Properties();
+            for (Map.Entry<String, Properties> query : queries.entrySet()) {
+                String owner = findOwner(directory, file, query.getKey());
+                if (owner != null) {
+                    addError("Query '" + query.getKey() + "' is already declared by " + owner, classNode, source);
+                    return;
+                }
+                for (String suffix : query.getValue().stringPropertyNames()) {
+                    properties.setProperty(query.getKey() + suffix, query.getValue().getProperty(suffix));
+                }
+            }
+
+            if (properties.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+            } else {
+                Files.createDirectories(directory.toPath());
+                try (OutputStream out = Files.newOutputStream(file.toPath())) {
+                    properties.store(out, "JPQL queries of " + classNode.getName() + " validated by @JpqlQuery");
+                }
+            }
+            writeIndex(targetDirectory, directory);
+        } catch (IOException e) {
+            addError("Could not write " + file + ": " + e.getMessage(), classNode, source);
+        }
+    }
+
+    /**
+     * @return the name of the class other than the one being written that declares the given query, if any.
+     */
+    private static String findOwner(File directory, File file, String name) throws IOException {
+        File[] files = directory.listFiles((dir, fileName) -> fileName.endsWith(EXTENSION));
+        if (files == null) {
+            return null;
+        }
+        for (File other : files) {
+            if (other.equals(file)) {
+                continue;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(other.toPath())) {
+                properties.load(in);
+            }
+            if (properties.containsKey(name + SUFFIX_QUERY)) {
+                String fileName = other.getName();
+                return fileName.substring(0, fileName.length() - EXTENSION.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lists the classes that have a queries resource, one per line, as resources cannot be enumerated at runtime.
+     */
+    private static void writeIndex(File targetDirectory, File directory) throws IOException {
+        File index = new File(targetDirectory, QUERIES_INDEX);
+        String[] fileNames = directory.list((dir, fileName) -> fileName.endsWith(EXTENSION));
+        if (fileNames == null || fileNames.length == 0) {
+            Files.deleteIfExists(index.toPath());
+            return;
+        }
+
+        Arrays.sort(fileNames);
+        List<String> owners = new ArrayList<>();
+        for (String fileName : fileNames) {
+            owners.add(fileName.substring(0, fileName.length() - EXTENSION.length()));
+        }
+        Files.write(index.toPath(), owners, StandardCharsets.UTF_8);
+    }
+
+    private static void addError(String message, ASTNode node, SourceUnit source) {
+        source.getErrorCollector().addErrorAndContinue(new SyntaxErrorMessage(new SyntaxException(
+            message + '\n', node.getLineNumber(), node.getColumnNumber(), node.getLastLineNumber(), node.getLastColumnNumber()),
+            source));
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.jpa.ast.transform;
+
+import griffon.plugins.jpa.EntityManagerTransaction;
+import griffon.transform.jpa.Transactional;
+import org.codehaus.griffon.compile.core.ast.transform.AbstractASTTransformation;
+import org.codehaus.griffon.compile.jpa.EntityManagerAwareConstants;
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassCodeExpressionTransformer;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.DynamicVariable;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.VariableScope;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.CatchStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.ast.stmt.TryCatchStatement;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.syntax.SyntaxException;
+import org.codehaus.groovy.transform.GroovyASTTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.codehaus.groovy.ast.tools.GeneralUtils.args;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.block;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.callThisX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.callX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.constX;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.declS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.param;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.stmt;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.throwS;
+import static org.codehaus.groovy.ast.tools.GeneralUtils.varX;
+
+/**
+ * Handles generation of code for the {@code @Transactional} annotation. The body of the annotated method becomes
+ * <pre>
+ * EntityManagerTransaction $transaction = beginTransaction(unit, readOnly)
+ * try {
+ *     // original body
+ * } catch (Throwable $failure) {
+ *     $transaction.fail($failure)
+ *     throw $failure
+ * } finally {
+ *     $transaction.complete()
+ * }
+ * </pre>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@GroovyASTTransformation(phase = CompilePhase.CANONICALIZATION)
+public class TransactionalASTTransformation extends AbstractASTTransformation implements EntityManagerAwareConstants {
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionalASTTransformation.class);
+    private static final ClassNode TRANSACTIONAL_CNODE = makeClassSafe(Transactional.class);
+    private static final ClassNode ENTITY_MANAGER_TRANSACTION_CNODE = makeClassSafe(EntityManagerTransaction.class);
+    private static final ClassNode ENTITY_MANAGER_CNODE = makeClassSafe(EntityManager.class);
+    private static final ClassNode THROWABLE_CNODE = makeClassSafe(Throwable.class);
+    private static final String TRANSACTION_VARIABLE = "$transaction";
+    private static final String FAILURE_VARIABLE = "$failure";
+    private static final String ENTITY_MANAGER_VARIABLE = "entityManager";
+
+    /**
+     * Handles the bulk of the processing, mostly delegating to other methods.
+     *
+     * @param nodes  the ast nodes
+     * @param source the source unit for the nodes
+     */
+    public void visit(ASTNode[] nodes, SourceUnit source) {
+        if (!(nodes[0] instanceof AnnotationNode) || !(nodes[1] instanceof MethodNode)) {
+            throw new IllegalArgumentException("Internal error: wrong types: " + nodes[0].getClass() + " / " + nodes[1].getClass());
+        }
+
+        AnnotationNode annotation = (AnnotationNode) nodes[0];
+        MethodNode method = (MethodNode) nodes[1];
+        if (!TRANSACTIONAL_CNODE.equals(annotation.getClassNode())) {
+            return;
+        }
+        if (method.isAbstract() || method.getCode() == null) {
+            addError("@Transactional cannot be applied to abstract method " + method.getName(), method, source);
+            return;
+        }
+        if (method.isStatic()) {
+            addError("@Transactional cannot be applied to static method " + method.getName(), method, source);
+            return;
+        }
+
+        ClassNode classNode = method.getDeclaringClass();
+        EntityManagerAwareASTTransformation.addEntityManagerHandlerIfNeeded(source, annotation, classNode);
+        LOG.debug("Wrapping {}.{} in a transaction", classNode.getName(), method.getName());
+        apply(method, getUnit(annotation), isReadOnly(annotation), source);
+    }
+
+    /**
+     * Wraps the body of a method with a transaction.
+     *
+     * @param method   the method to be modified
+     * @param unit     the persistence unit, the default one if blank
+     * @param readOnly whether the transaction is read-only
+     * @param source   the source unit of the method
+     */
+    public static void apply(MethodNode method, String unit, boolean readOnly, SourceUnit source) {
+        VariableExpression transaction = new VariableExpression(TRANSACTION_VARIABLE, ENTITY_MANAGER_TRANSACTION_CNODE);
+        Expression begin = unit.isEmpty() ?
+            callThisX(METHOD_BEGIN_TRANSACTION, args(constX(readOnly))) :
+            callThisX(METHOD_BEGIN_TRANSACTION, args(constX(unit), constX(readOnly)));
+
+        BlockStatement body = new BlockStatement();
+        body.setSourcePosition(method.getCode());
+        body.addStatement(declS(transaction, begin));
+
+        BlockStatement guarded = new BlockStatement();
+        VariableExpression entityManager = new VariableExpression(ENTITY_MANAGER_VARIABLE, ENTITY_MANAGER_CNODE);
+        EntityManagerReferences references = new EntityManagerReferences(entityManager, source);
+        references.visitMethod(method);
+        if (references.isReferenced()) {
+            guarded.addStatement(declS(entityManager, callX(varX(transaction), "getEntityManager")));
+        }
+        guarded.addStatement(method.getCode());
+
+        Parameter failure = param(THROWABLE_CNODE, FAILURE_VARIABLE);
+        TryCatchStatement tryCatch = new TryCatchStatement(guarded, block(stmt(callX(varX(transaction), "complete"))));
+        tryCatch.addCatch(new CatchStatement(failure, block(
+            stmt(callX(varX(transaction), "fail", varX(failure))),
+            throwS(varX(failure)))));
+        body.addStatement(tryCatch);
+
+        method.setCode(body);
+    }
+
+    private static String getUnit(AnnotationNode annotation) {
+        Expression value = annotation.getMember("unit");
+        return value instanceof ConstantExpression ? String.valueOf(((ConstantExpression) value).getValue()).trim() : "";
+    }
+
+    private static boolean isReadOnly(AnnotationNode annotation) {
+        Expression value = annotation.getMember("readOnly");
+        return value instanceof ConstantExpression && Boolean.TRUE.equals(((ConstantExpression) value).getValue());
+    }
+
+    private static void addError(String message, ASTNode node, SourceUnit source) {
+        source.getErrorCollector().addErrorAndContinue(new SyntaxErrorMessage(new SyntaxException(
+            message + '\n', node.getLineNumber(), node.getColumnNumber(), node.getLastLineNumber(), node.getLastColumnNumber()),
+            source));
+    }
+
+    /**
+     * Binds undeclared {@code entityManager} references, including those made from closures, to the local variable
+     * holding the {@code EntityManager} of the transaction.
+     */
+    private static class EntityManagerReferences extends ClassCodeExpressionTransformer {
+        private final VariableExpression entityManager;
+        private final SourceUnit source;
+        private final Deque<VariableScope> scopes = new ArrayDeque<>();
+        private int closures;
+        private boolean referenced;
+
+        private EntityManagerReferences(VariableExpression entityManager, SourceUnit source) {
+            this.entityManager = entityManager;
+            this.source = source;
+        }
+
+        private boolean isReferenced() {
+            return referenced;
+        }
+
+        @Override
+        protected SourceUnit getSourceUnit() {
+            return source;
+        }
+
+        @Override
+        public void visitMethod(MethodNode node) {
+            scopes.push(node.getVariableScope());
+            try {
+                super.visitMethod(node);
+            } finally {
+                scopes.pop();
+            }
+        }
+
+        @Override
+        public void visitBlockStatement(BlockStatement block) {
+            scopes.push(block.getVariableScope());
+            try {
+                super.visitBlockStatement(block);
+            } finally {
+                scopes.pop();
+            }
+        }
+
+        @Override
+        public Expression transform(Expression expression) {
+            if (expression instanceof VariableExpression) {
+                VariableExpression variable = (VariableExpression) expression;
+                if (ENTITY_MANAGER_VARIABLE.equals(variable.getName()) && variable.getAccessedVariable() instanceof DynamicVariable) {
+                    return reference(variable);
+                }
+                return expression;
+            } else if (expression instanceof ClosureExpression) {
+                ClosureExpression closure = (ClosureExpression) expression;
+                scopes.push(closure.getVariableScope());
+                closures++;
+                try {
+                    Statement code = closure.getCode();
+                    if (code != null) {
+                        code.visit(this);
+                    }
+                } finally {
+                    closures--;
+                    scopes.pop();
+                }
+                return expression;
+            }
+            return super.transform(expression);
+        }
+
+        private Expression reference(VariableExpression variable) {
+            referenced = true;
+            VariableExpression reference = new VariableExpression(entityManager);
+            reference.setSourcePosition(variable);
+            if (closures > 0) {
+                entityManager.setClosureSharedVariable(true);
+                reference.setClosureSharedVariable(true);
+            }
+            // every enclosing scope must see a local variable instead of a dynamic property
+            for (VariableScope scope : scopes) {
+                if (scope != null) {
+                    scope.removeReferencedClassVariable(ENTITY_MANAGER_VARIABLE);
+                    scope.putReferencedLocalVariable(entityManager);
+                }
+            }
+            return reference;
+        }
+    }
+}
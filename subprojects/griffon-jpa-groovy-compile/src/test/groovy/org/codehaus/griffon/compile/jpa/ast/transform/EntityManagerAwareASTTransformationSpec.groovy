@@ -57,8 +57,12 @@ class EntityManagerAwareASTTransformationSpec extends Specification {
         def bean = shell.evaluate('''
         import griffon.plugins.jpa.EntityManagerCallback
         import griffon.plugins.jpa.EntityManagerHandler
+        import griffon.plugins.jpa.EntityManagerTransaction
+        import griffon.plugins.jpa.QueryCallback
         import griffon.annotations.core.Nonnull
         import griffon.annotations.core.Nullable
+        import java.util.concurrent.CompletableFuture
+        import java.util.stream.Stream
 
         @griffon.transform.jpa.EntityManagerAware
         class EntityManagerHandlerBean implements EntityManagerHandler {
@@ -73,6 +77,102 @@ class EntityManagerAwareASTTransformationSpec extends Specification {
                  return null
             }
             @Override
+            @Nullable
+            public <R> R withTransaction(@Nonnull EntityManagerCallback<R> callback)  {
+                return null
+            }
+            @Override
+            @Nullable
+            public <R> R withTransaction(boolean readOnly, @Nonnull EntityManagerCallback<R> callback)  {
+                return null
+            }
+            @Override
+            @Nullable
+            public <R> R withTransaction(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback)  {
+                return null
+            }
+            @Override
+            @Nullable
+            public <R> R withTransaction(@Nonnull String persistenceUnitName, boolean readOnly, @Nonnull EntityManagerCallback<R> callback)  {
+                return null
+            }
+            @Override
+            @Nonnull
+            public EntityManagerTransaction beginTransaction(boolean readOnly)  {
+                 return null
+            }
+            @Override
+            @Nonnull
+            public EntityManagerTransaction beginTransaction(@Nonnull String persistenceUnitName, boolean readOnly)  {
+                 return null
+            }
+            @Override
+            @Nonnull
+            public <R> CompletableFuture<R> withEntityManagerAsync(@Nonnull EntityManagerCallback<R> callback)  {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <R> CompletableFuture<R> withEntityManagerAsync(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback)  {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <R> CompletableFuture<R> withTransactionAsync(@Nonnull EntityManagerCallback<R> callback)  {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <R> CompletableFuture<R> withTransactionAsync(@Nonnull String persistenceUnitName, @Nonnull EntityManagerCallback<R> callback)  {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <T> Stream<T> streamResults(@Nonnull QueryCallback<T> callback) {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <T> Stream<T> streamResults(@Nonnull String persistenceUnitName, @Nonnull QueryCallback<T> callback) {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <T> List<T> getCachedResultList(@Nonnull String query, @Nonnull Class<T> resultType, @Nonnull Map<String, ?> parameters) {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <T> List<T> getCachedResultList(@Nonnull String persistenceUnitName, @Nonnull String query, @Nonnull Class<T> resultType, @Nonnull Map<String, ?> parameters) {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <T> CompletableFuture<T> findAsync(@Nonnull Class<T> type, @Nonnull Object id) {
+                return null
+            }
+            @Override
+            @Nonnull
+            public <T> CompletableFuture<T> findAsync(@Nonnull String persistenceUnitName, @Nonnull Class<T> type, @Nonnull Object id) {
+                return null
+            }
+            @Override
+            long persistAll(@Nonnull Iterable<?> entities) {
+                return 0L
+            }
+            @Override
+            long persistAll(@Nonnull String persistenceUnitName, @Nonnull Iterable<?> entities) {
+                return 0L
+            }
+            @Override
+            long persistAll(@Nonnull String persistenceUnitName, @Nonnull Iterable<?> entities, int batchSize, boolean commitEachBatch) {
+                return 0L
+            }
+            @Override
+            long persistAll(@Nonnull String persistenceUnitName, @Nonnull Stream<?> entities, int batchSize, boolean commitEachBatch) {
+                return 0L
+            }
+            @Override
             void closeEntityManager(){}
             @Override
             void closeEntityManager(@Nonnull String persistenceUnitName){}
@@ -0,0 +1,192 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.jpa.ast.transform
+
+import org.codehaus.groovy.control.CompilerConfiguration
+import org.codehaus.groovy.control.MultipleCompilationErrorsException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * @author Andres Almiray
+ */
+class JpqlQueryASTTransformationSpec extends Specification {
+    private static final String ENTITIES = '''
+        @javax.persistence.Entity
+        class Person {
+            Long id
+            String name
+            Address address
+            List<Phone> phones
+        }
+
+        class Address {
+            String city
+        }
+
+        @javax.persistence.Entity(name = 'Tel')
+        class Phone {
+            String number
+        }
+        '''
+
+    private Path targetDirectory
+
+    def setup() {
+        targetDirectory = Files.createTempDirectory('griffon-jpa')
+    }
+
+    def cleanup() {
+        targetDirectory.toFile().deleteDir()
+    }
+
+    def 'Valid queries are written to a resource of their class'() {
+        when:
+        compile(ENTITIES + '''
+        class Queries {
+            @griffon.transform.jpa.JpqlQuery
+            static final String BY_CITY = 'select p from Person p where p.address.city = :city'
+
+            @griffon.transform.jpa.JpqlQuery(name = 'phones', unit = 'people')
+            static final String PHONES = 'select t.number from Person p join p.phones t, Tel q order by t.number'
+        }
+        ''')
+        Properties queries = loadQueries('Queries')
+
+        then:
+        queries.getProperty('Queries.BY_CITY.query') == 'select p from Person p where p.address.city = :city'
+        queries.getProperty('Queries.BY_CITY.entities') == 'Person'
+        queries.getProperty('Queries.BY_CITY.field') == 'BY_CITY'
+        queries.getProperty('phones.unit') == 'people'
+        queries.getProperty('phones.entities') == 'Person,Tel'
+        targetDirectory.resolve(JpqlQueryASTTransformation.QUERIES_INDEX).readLines() == ['Queries']
+    }
+
+    def 'Recompiling a class replaces all of its queries'() {
+        given:
+        compile(ENTITIES + '''
+        class Queries {
+            @griffon.transform.jpa.JpqlQuery
+            static final String ALL = 'select p from Person p'
+
+            @griffon.transform.jpa.JpqlQuery
+            static final String PHONES = 'select t from Tel t'
+        }
+        ''')
+        compile('''
+        @javax.persistence.Entity
+        class Phone {
+            String number
+        }
+
+        class PhoneQueries {
+            @griffon.transform.jpa.JpqlQuery
+            static final String NUMBERS = 'select p.number from Phone p'
+        }
+        ''')
+
+        when:
+        compile(ENTITIES + '''
+        class Queries {
+            @griffon.transform.jpa.JpqlQuery
+            static final String ALL = 'select p from Person p'
+        }
+        ''')
+        Properties queries = loadQueries('Queries')
+
+        then:
+        queries.stringPropertyNames().every { it.startsWith('Queries.ALL.') }
+        loadQueries('PhoneQueries').getProperty('PhoneQueries.NUMBERS.query') == 'select p.number from Phone p'
+        targetDirectory.resolve(JpqlQueryASTTransformation.QUERIES_INDEX).readLines() == ['PhoneQueries', 'Queries']
+    }
+
+    def 'Query names must be unique across classes'() {
+        given:
+        compile(ENTITIES + '''
+        class Queries {
+            @griffon.transform.jpa.JpqlQuery(name = 'all')
+            static final String ALL = 'select p from Person p'
+        }
+        ''')
+
+        when:
+        compile(ENTITIES + '''
+        class OtherQueries {
+            @griffon.transform.jpa.JpqlQuery(name = 'all')
+            static final String ALL = 'select p from Person p'
+        }
+        ''')
+
+        then:
+        MultipleCompilationErrorsException e = thrown()
+        e.message.contains("Query 'all' is already declared by Queries")
+    }
+
+    @Unroll
+    def 'Invalid query "#jpql" fails the compilation with "#error"'() {
+        when:
+        compile(ENTITIES + """
+        class Queries {
+            @griffon.transform.jpa.JpqlQuery
+            static final String QUERY = '${jpql}'
+        }
+        """)
+
+        then:
+        MultipleCompilationErrorsException e = thrown()
+        e.message.contains(error)
+
+        where:
+        jpql                                                 || error
+        'select p from Persn p'                              || "Unknown entity 'Persn'"
+        'select p from Person p where p.nmae = 1'            || "Unknown attribute 'nmae' of 'Person'"
+        'select p from Person p where p.address.cty = 1'     || "Unknown attribute 'cty' of 'Address'"
+        'select t from Person p join p.phones t where t.x=1' || "Unknown attribute 'x' of 'Phone'"
+        'select p from Person p where x.name = 1'            || "Unknown identification variable 'x'"
+        'select p from Person p where (p.id = 1'             || "Unbalanced '('"
+        'fetch everything'                                   || 'Statement must start with SELECT, UPDATE or DELETE'
+    }
+
+    def 'Queries must be held by final fields'() {
+        when:
+        compile(ENTITIES + '''
+        class Queries {
+            @griffon.transform.jpa.JpqlQuery
+            static String QUERY = 'select p from Person p'
+        }
+        ''')
+
+        then:
+        MultipleCompilationErrorsException e = thrown()
+        e.message.contains('@JpqlQuery requires a final field initialized with a String constant')
+    }
+
+    private void compile(String code) {
+        CompilerConfiguration configuration = new CompilerConfiguration(targetDirectory: targetDirectory.toFile())
+        new GroovyShell(configuration).parse(code)
+    }
+
+    private Properties loadQueries(String owner) {
+        Properties properties = new Properties()
+        targetDirectory.resolve(JpqlQueryASTTransformation.QUERIES_DIRECTORY + owner + '.properties').withInputStream { properties.load(it) }
+        properties
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.jpa.ast.transform
+
+import griffon.plugins.jpa.EntityManagerHandler
+import griffon.plugins.jpa.EntityManagerTransaction
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+
+/**
+ * @author Andres Almiray
+ */
+class TransactionalASTTransformationSpec extends Specification {
+    private static final String BEAN = '''
+        import griffon.transform.jpa.Transactional
+
+        class Bean {
+            @Transactional(unit = 'people')
+            String save(String name) {
+                entityManager.persist(name)
+                name
+            }
+
+            @Transactional(readOnly = true)
+            void fail() {
+                throw new IllegalStateException('boom')
+            }
+
+            @Transactional
+            List<String> saveAll(List<String> names) {
+                names.each { entityManager.persist(it) }
+                names
+            }
+        }
+        new Bean()
+        '''
+
+    def 'TransactionalASTTransformation injects an EntityManagerHandler'() {
+        when:
+        def bean = new GroovyShell().evaluate(BEAN)
+
+        then:
+        bean instanceof EntityManagerHandler
+    }
+
+    def 'Transactional methods complete their transaction when they return'() {
+        given:
+        EntityManager entityManager = Mock(EntityManager)
+        EntityManagerTransaction transaction = Mock(EntityManagerTransaction)
+        EntityManagerHandler handler = Mock(EntityManagerHandler)
+        def bean = new GroovyShell().evaluate(BEAN)
+        bean.metaClass.setAttribute(bean, 'this$entityManagerHandler', handler)
+
+        when:
+        String result = bean.save('Duke')
+
+        then:
+        1 * handler.beginTransaction('people', false) >> transaction
+        1 * transaction.getEntityManager() >> entityManager
+        1 * entityManager.persist('Duke')
+        1 * transaction.complete()
+        0 * transaction.fail(_)
+        result == 'Duke'
+    }
+
+    def 'Transactional methods fail their transaction when they throw'() {
+        given:
+        EntityManagerTransaction transaction = Mock(EntityManagerTransaction)
+        EntityManagerHandler handler = Mock(EntityManagerHandler)
+        def bean = new GroovyShell().evaluate(BEAN)
+        bean.metaClass.setAttribute(bean, 'this$entityManagerHandler', handler)
+
+        when:
+        bean.fail()
+
+        then:
+        1 * handler.beginTransaction(true) >> transaction
+        1 * transaction.fail({ it instanceof IllegalStateException })
+        1 * transaction.complete()
+        thrown(IllegalStateException)
+    }
+
+    def 'Closures in transactional methods share the EntityManager of the transaction'() {
+        given:
+        EntityManager entityManager = Mock(EntityManager)
+        EntityManagerTransaction transaction = Mock(EntityManagerTransaction)
+        EntityManagerHandler handler = Mock(EntityManagerHandler)
+        def bean = new GroovyShell().evaluate(BEAN)
+        bean.metaClass.setAttribute(bean, 'this$entityManagerHandler', handler)
+
+        when:
+        bean.saveAll(['Duke', 'Groovy'])
+
+        then:
+        1 * handler.beginTransaction(false) >> transaction
+        1 * transaction.getEntityManager() >> entityManager
+        2 * entityManager.persist(_)
+        1 * transaction.complete()
+    }
+}